@@ -0,0 +1,81 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialCipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of decrypting inline encrypted {@code ENC:} values with the {@link CredentialCipher}, which
+ * keeps a {@link Cipher} per thread, against obtaining a new {@link Cipher} for every value. Run with {@code -t} to
+ * change the number of threads decrypting concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CipherBenchmark {
+
+    CredentialCipher cipher;
+
+    String encrypted;
+
+    SecretKey key;
+
+    @Benchmark
+    public String cipherPerValue() throws GeneralSecurityException {
+        final byte[] bytes = Base64.getDecoder().decode(encrypted.substring(CredentialCipher.PREFIX.length()));
+
+        final Cipher perValue = Cipher.getInstance("AES/GCM/NoPadding");
+        perValue.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, bytes, 0, 12));
+
+        return new String(perValue.doFinal(bytes, 12, bytes.length - 12), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String cipherPerThread() throws GeneralSecurityException {
+        return cipher.decrypt(encrypted);
+    }
+
+    @Setup
+    public void createCipher() throws GeneralSecurityException {
+        key = CredentialCipher.generateKey();
+        cipher = new CredentialCipher(key);
+        encrypted = cipher.encrypt("jdbc-password-0123456789");
+    }
+}
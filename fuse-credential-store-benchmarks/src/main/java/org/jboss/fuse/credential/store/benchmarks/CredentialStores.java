@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.ProviderHelper;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.source.CredentialSource;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+/**
+ * Generates Credential store files holding {@code alias0} to {@code alias<size - 1>}, the aliases referenced by the
+ * {@link PropertySets}, and opens them.
+ */
+final class CredentialStores {
+
+    /**
+     * Password protecting the generated Credential stores
+     */
+    static final String PASSWORD = "benchmark";
+
+    private static final String PKCS12_ITERATION_COUNT = "keystore.pkcs12.keyPbeIterationCount";
+
+    private CredentialStores() {
+        // utility class
+    }
+
+    /**
+     * Generates a Credential store file. Adds the WildFly Elytron provider to the {@link Security} providers, as the
+     * bundle does when resolving the references.
+     *
+     * @param location
+     *            path of the Credential store file to create
+     * @param keyStoreType
+     *            type of the key store backing the Credential store
+     * @param size
+     *            number of aliases to store
+     * @throws GeneralSecurityException
+     */
+    static void generate(final Path location, final String keyStoreType, final int size)
+            throws GeneralSecurityException {
+        Security.addProvider(ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+
+        final Map<String, String> attributes = attributes(location, keyStoreType);
+        attributes.put("create", "true");
+
+        final CredentialStore credentialStore = initialize(attributes,
+            IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential(PASSWORD)));
+        for (int i = 0; i < size; i++) {
+            credentialStore.store("alias" + i, CredentialStoreHelper.clearPasswordCredential("secret" + i));
+        }
+
+        credentialStore.flush();
+    }
+
+    /**
+     * Opens a generated Credential store file.
+     *
+     * @param location
+     *            path of the Credential store file
+     * @param keyStoreType
+     *            type of the key store backing the Credential store
+     * @return initialized Credential store
+     * @throws GeneralSecurityException
+     */
+    static CredentialStore open(final Path location, final String keyStoreType) throws GeneralSecurityException {
+        return open(location, keyStoreType, IdentityCredentials.NONE
+                .withCredential(CredentialStoreHelper.clearPasswordCredential(PASSWORD)));
+    }
+
+    /**
+     * Opens a generated Credential store file unlocked by the given credential source.
+     *
+     * @param location
+     *            path of the Credential store file
+     * @param keyStoreType
+     *            type of the key store backing the Credential store
+     * @param credentialSource
+     *            source of the {@link #PASSWORD}
+     * @return initialized Credential store
+     * @throws GeneralSecurityException
+     */
+    static CredentialStore open(final Path location, final String keyStoreType,
+            final CredentialSource credentialSource) throws GeneralSecurityException {
+        return initialize(attributes(location, keyStoreType), credentialSource);
+    }
+
+    /**
+     * The key stores protect each entry with a password based encryption, deriving the key anew for every entry stored
+     * or retrieved. With the default iteration count generating a store with 100k entries takes over ten minutes, so
+     * the stores generated after invoking this use a single iteration. This lowers the cost of retrieving an alias,
+     * but not of opening the store.
+     */
+    static void reduceEntryIterations() {
+        System.setProperty(PKCS12_ITERATION_COUNT, "1");
+    }
+
+    private static Map<String, String> attributes(final Path location, final String keyStoreType) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("keyStoreType", keyStoreType);
+
+        return attributes;
+    }
+
+    private static CredentialStore initialize(final Map<String, String> attributes,
+            final CredentialSource credentialSource) throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore.getInstance(
+            KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE,
+            ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+
+        credentialStore.initialize(attributes,
+            new CredentialStore.CredentialSourceProtectionParameter(credentialSource));
+
+        return credentialStore;
+    }
+}
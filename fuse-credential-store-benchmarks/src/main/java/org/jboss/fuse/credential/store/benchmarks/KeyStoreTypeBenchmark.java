@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * Compares the key store types backing the Credential store: opening the Credential store, which verifies the integrity
+ * of the whole key store, and retrieving a single alias, which decrypts the entry. The entries are stored with the
+ * default iteration counts of the JVM, so generating the larger stores takes a while. Run with {@code -prof gc} to
+ * report the allocation rate as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyStoreTypeBenchmark {
+
+    CredentialStore credentialStore;
+
+    Path directory;
+
+    @Param({"PKCS12", "JCEKS"})
+    String keyStoreType;
+
+    Path location;
+
+    @Param({"10", "100"})
+    int size;
+
+    @TearDown
+    public void deleteCredentialStore() throws IOException {
+        Files.deleteIfExists(location);
+        Files.deleteIfExists(directory);
+    }
+
+    @Setup
+    public void generateCredentialStore() throws GeneralSecurityException, IOException {
+        directory = Files.createTempDirectory("credential-store-benchmark");
+        location = directory.resolve("credential.store");
+
+        CredentialStores.generate(location, keyStoreType, size);
+
+        credentialStore = open();
+    }
+
+    @Benchmark
+    public CredentialStore open() throws GeneralSecurityException {
+        return CredentialStores.open(location, keyStoreType);
+    }
+
+    @Benchmark
+    public PasswordCredential retrieve() throws GeneralSecurityException {
+        return credentialStore.retrieve("alias0", PasswordCredential.class);
+    }
+}
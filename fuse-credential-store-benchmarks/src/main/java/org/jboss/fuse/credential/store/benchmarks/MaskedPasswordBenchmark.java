@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.fuse.credential.store.karaf.util.ProtectionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.security.credential.source.CredentialSource;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * Measures unlocking the Credential store protected by a masked password, for each masked password algorithm and a
+ * range of iteration counts: deriving the password from the configuration in the {@code CREDENTIAL_STORE_PROTECTION*}
+ * environment variables alone, and together with opening the Credential store. Run with {@code -prof gc} to report the
+ * allocation rate as well.
+ *
+ * The default algorithms are those WildFly Elytron can unmask on this JVM, the {@code masked-HMAC-*-AES-*} and
+ * {@code masked-PBKDF-*} algorithms can be configured by {@code credential-store:create}, but fail to unmask, add them
+ * with {@code -p algorithm=...} to check a newer WildFly Elytron version.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskedPasswordBenchmark {
+
+    private static final String KEY_STORE_TYPE = "PKCS12";
+
+    @Param({"masked-MD5-DES", "masked-MD5-DES-CBC-PKCS5", "masked-MD5-3DES", "masked-MD5-3DES-CBC-PKCS5",
+        "masked-SHA1-DES-EDE", "masked-SHA1-DES-EDE-CBC-PKCS5", "masked-SHA1-RC2-40", "masked-SHA1-RC2-40-CBC-PKCS5",
+        "masked-SHA1-RC2-128", "masked-SHA1-RC2-128-CBC-PKCS5", "masked-SHA1-RC4-40", "masked-SHA1-RC4-40-ECB",
+        "masked-SHA1-RC4-128", "masked-SHA1-RC4-128-ECB"})
+    String algorithm;
+
+    Map<String, String> configuration;
+
+    Path directory;
+
+    @Param({"1000", "10000", "100000"})
+    int iterations;
+
+    Path location;
+
+    @TearDown
+    public void deleteCredentialStore() throws IOException {
+        Files.deleteIfExists(location);
+        Files.deleteIfExists(directory);
+    }
+
+    @Setup
+    public void maskPassword() throws GeneralSecurityException, IOException {
+        directory = Files.createTempDirectory("credential-store-benchmark");
+        location = directory.resolve("credential.store");
+
+        CredentialStores.generate(location, KEY_STORE_TYPE, 1);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("algorithm", algorithm);
+        attributes.put("password", CredentialStores.PASSWORD);
+        attributes.put("iterations", String.valueOf(iterations));
+
+        configuration = ProtectionType.masked.createConfiguration(attributes);
+
+        // fail fast on the algorithms that cannot be unmasked
+        unmask();
+    }
+
+    @Benchmark
+    public CredentialStore unlock() throws GeneralSecurityException, IOException {
+        return CredentialStores.open(location, KEY_STORE_TYPE, unmask());
+    }
+
+    @Benchmark
+    public CredentialSource unmask() throws GeneralSecurityException, IOException {
+        return ProtectionType.masked.createCredentialSource(configuration);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Generates system property like property sets, where a given share of the values are Credential store references.
+ * Values are drawn from the kinds of values seen in Karaf system properties: paths, numbers, booleans, class names and
+ * URLs, so that the benchmarks do not measure an unrealistically uniform input.
+ */
+final class PropertySets {
+
+    private static final String[] VALUE_TEMPLATES = {"/opt/karaf/data/%d", "%d", "true", "false",
+        "org.apache.karaf.main.Main%d", "http://localhost:%d/cxf", "C:\\karaf\\etc\\%d.cfg", "UTF-8", "en_US",
+        "CSV-%d", "C%d"};
+
+    private PropertySets() {
+        // utility class
+    }
+
+    /**
+     * Generates a property set.
+     *
+     * @param size
+     *            number of properties
+     * @param referenceEvery
+     *            every n-th property value will be a Credential store reference
+     * @return generated properties
+     */
+    static Properties generate(final int size, final int referenceEvery) {
+        final Random random = new Random(size);
+
+        final Properties properties = new Properties();
+        for (int i = 0; i < size; i++) {
+            final String value;
+            if ((i % referenceEvery) == 0) {
+                value = "CS:alias" + i;
+            } else {
+                value = String.format(VALUE_TEMPLATES[random.nextInt(VALUE_TEMPLATES.length)], i);
+            }
+
+            properties.setProperty("property." + i, value);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Returns property values as an array of strings.
+     *
+     * @param properties
+     *            properties
+     * @return values of the properties
+     */
+    static String[] values(final Properties properties) {
+        return properties.values().toArray(new String[properties.size()]);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the hand written Credential store reference scanner in {@link CredentialStoreHelper} with the regular
+ * expression based detection and alias extraction it replaced. Run with {@code -prof gc} to compare the allocation
+ * rate as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceScannerBenchmark {
+
+    private static final Pattern STORE_REFERENCE_REGEX = Pattern.compile("CS:(.+)");
+
+    @Param({"10", "1000", "10000", "100000"})
+    int size;
+
+    @Param({"100"})
+    int referenceEvery;
+
+    String[] values;
+
+    @Benchmark
+    public void regexExtraction(final Blackhole blackhole) {
+        for (final String value : values) {
+            final Matcher matcher = STORE_REFERENCE_REGEX.matcher(value);
+
+            if (matcher.matches()) {
+                blackhole.consume(matcher.group(1));
+            }
+        }
+    }
+
+    @Benchmark
+    public int regexDetection() {
+        int references = 0;
+        for (final String value : values) {
+            if (STORE_REFERENCE_REGEX.matcher(value).matches()) {
+                references++;
+            }
+        }
+
+        return references;
+    }
+
+    @Benchmark
+    public void scannerExtraction(final Blackhole blackhole) {
+        for (final String value : values) {
+            if (CredentialStoreHelper.couldBeCredentialStoreAlias(value)) {
+                blackhole.consume(CredentialStoreHelper.toCredentialStoreAlias(value));
+            }
+        }
+    }
+
+    @Benchmark
+    public int scannerDetection() {
+        int references = 0;
+        for (final String value : values) {
+            if (CredentialStoreHelper.couldBeCredentialStoreAlias(value)) {
+                references++;
+            }
+        }
+
+        return references;
+    }
+
+    @Setup
+    public void generateValues() {
+        values = PropertySets.values(PropertySets.generate(size, referenceEvery));
+    }
+}
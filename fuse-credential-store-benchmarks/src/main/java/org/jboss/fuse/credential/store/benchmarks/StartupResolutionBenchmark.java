@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.fuse.credential.store.karaf.StartupPath;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * Measures the phases of resolving the Credential store references in the system properties when the bundle starts:
+ * finding the references, opening the Credential store, retrieving the referenced aliases, and the full pass replacing
+ * the references in a copy of the system properties. Each run generates a Credential store and a property set with the
+ * given number of entries, the store entries use a reduced iteration count (see
+ * {@link CredentialStores#reduceEntryIterations()}). Run with {@code -rf json} to keep the results for comparison with
+ * later releases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupResolutionBenchmark {
+
+    private static final String KEY_STORE_TYPE = "PKCS12";
+
+    CredentialStore credentialStore;
+
+    Path directory;
+
+    Path location;
+
+    Properties properties;
+
+    @Param({"10"})
+    int referenceEvery;
+
+    Map<String, String> references;
+
+    Set<String> referencedAliases;
+
+    CredentialStoreRegistry registry;
+
+    @Param({"10", "1000", "100000"})
+    int size;
+
+    @TearDown
+    public void deleteCredentialStore() throws IOException {
+        Files.deleteIfExists(location);
+        Files.deleteIfExists(directory);
+    }
+
+    @Setup
+    public void generateCredentialStore() throws GeneralSecurityException, IOException {
+        directory = Files.createTempDirectory("credential-store-benchmark");
+        location = directory.resolve("credential.store");
+
+        CredentialStores.reduceEntryIterations();
+        CredentialStores.generate(location, KEY_STORE_TYPE, size);
+
+        properties = PropertySets.generate(size, referenceEvery);
+        references = StartupPath.referencesIn(properties);
+        referencedAliases = new HashSet<>(references.values());
+
+        registry = registry();
+        credentialStore = registry.open(referencedAliases).get(CredentialStoreRegistry.DEFAULT_STORE_NAME);
+    }
+
+    @Benchmark
+    public Map<String, String> propertyReplacement() throws GeneralSecurityException, IOException {
+        final Properties copy = (Properties) properties.clone();
+
+        final Map<String, String> found = StartupPath.referencesIn(copy);
+        final Set<String> aliases = new HashSet<>(found.values());
+
+        final CredentialStoreRegistry fresh = registry();
+        final Map<String, String> values = StartupPath.resolve(fresh, fresh.open(aliases), aliases);
+
+        return StartupPath.replace(copy, found, values);
+    }
+
+    @Benchmark
+    public Map<String, String> referenceDetection() {
+        return StartupPath.referencesIn(properties);
+    }
+
+    @Benchmark
+    public Map<String, String> resolution() {
+        return StartupPath.resolve(registry,
+            Collections.singletonMap(CredentialStoreRegistry.DEFAULT_STORE_NAME, credentialStore),
+            referencedAliases);
+    }
+
+    @Benchmark
+    public Map<String, CredentialStore> storeOpen() throws GeneralSecurityException, IOException {
+        return registry().open(referencedAliases);
+    }
+
+    private CredentialStoreRegistry registry() {
+        return new CredentialStoreRegistry(
+            new SharedCredentialStore(location, () -> CredentialStores.open(location, KEY_STORE_TYPE)));
+    }
+}
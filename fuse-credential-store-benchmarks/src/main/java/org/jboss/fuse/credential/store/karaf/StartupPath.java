@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * Exposes the phases of the {@link Activator} startup resolution to the benchmarks, without widening their visibility
+ * in the bundle.
+ */
+public final class StartupPath {
+
+    private StartupPath() {
+        // utility class
+    }
+
+    /**
+     * @see Activator#referencesIn(Properties)
+     */
+    public static Map<String, String> referencesIn(final Properties properties) {
+        return Activator.referencesIn(properties);
+    }
+
+    /**
+     * @see Activator#replace(Properties, Map, Map)
+     */
+    public static Map<String, String> replace(final Properties properties, final Map<String, String> references,
+            final Map<String, String> values) {
+        return Activator.replace(properties, references, values);
+    }
+
+    /**
+     * @see Activator#resolve(CredentialStoreRegistry, Map, Set)
+     */
+    public static Map<String, String> resolve(final CredentialStoreRegistry registry,
+            final Map<String, CredentialStore> credentialStores, final Set<String> references) {
+        return Activator.resolve(registry, credentialStores, references);
+    }
+}
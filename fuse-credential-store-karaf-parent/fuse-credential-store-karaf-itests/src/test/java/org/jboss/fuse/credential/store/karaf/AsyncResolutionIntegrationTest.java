@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import javax.inject.Inject;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialStoreReady;
+import org.junit.Test;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.osgi.framework.BundleContext;
+import org.osgi.util.tracker.ServiceTracker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ops4j.pax.exam.CoreOptions.environment;
+
+public class AsyncResolutionIntegrationTest extends BaseWithCredentialStoreSetupTest {
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Configuration
+    public Option[] configuration() throws Exception {
+        return withSystemProperties(environment("CREDENTIAL_STORE_RESOLUTION=async"));
+    }
+
+    @Test
+    public void shouldProvideSystemPropertiesOnceReady() throws Exception {
+        final ServiceTracker<CredentialStoreReady, CredentialStoreReady> tracker = new ServiceTracker<>(bundleContext,
+                CredentialStoreReady.class, null);
+        tracker.open();
+
+        try {
+            final CredentialStoreReady ready = tracker.waitForService(30000);
+
+            assertThat(ready).isNotNull();
+            assertThat(ready.replacedProperties()).isPositive();
+            assertThat(System.getProperty("prop")).isEqualTo("this is a password");
+        } finally {
+            tracker.close();
+        }
+    }
+}
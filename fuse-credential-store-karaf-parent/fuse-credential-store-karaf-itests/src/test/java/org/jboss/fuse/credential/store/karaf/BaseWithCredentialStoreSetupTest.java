@@ -42,6 +42,12 @@ import static org.ops4j.pax.exam.karaf.options.KarafDistributionOption.features;
 
 public abstract class BaseWithCredentialStoreSetupTest extends BaseKarafTest {
 
+    static final String PROTECTION = "9KjAtKnaEnb3hgj+67wrS85IHABrZXBgG2gShcQ9kEGl4zjV9TLfyEwxBJ6836dI";
+
+    static final String PROTECTION_ALGORITHM = "masked-MD5-DES";
+
+    static final String PROTECTION_PARAMS = "MDkEKXNvbWVhcmJpdHJhcnljcmF6eXN0cmluZ3RoYXRkb2Vzbm90bWF0dGVyAgID6AQIQt//5Ifg0x8=";
+
     private static final File TEST_CREDENTIAL_STORE_DIRECTORY;
 
     static {
@@ -101,16 +107,19 @@ public abstract class BaseWithCredentialStoreSetupTest extends BaseKarafTest {
         fuseCredentialStoreBundle.start();
     }
 
-    public Option[] withSystemProperties(final Option... additional) throws Exception {
+    /**
+     * Configures the container with the Credential store, without any references to it in the system properties.
+     */
+    public Option[] withCredentialStore(final Option... additional) throws Exception {
         setupCredentialStore();
 
         final String[] environment = {
 
-                "CREDENTIAL_STORE_PROTECTION_ALGORITHM=masked-MD5-DES",
+                "CREDENTIAL_STORE_PROTECTION_ALGORITHM=" + PROTECTION_ALGORITHM,
 
-                "CREDENTIAL_STORE_PROTECTION_PARAMS=MDkEKXNvbWVhcmJpdHJhcnljcmF6eXN0cmluZ3RoYXRkb2Vzbm90bWF0dGVyAgID6AQIQt//5Ifg0x8=",
+                "CREDENTIAL_STORE_PROTECTION_PARAMS=" + PROTECTION_PARAMS,
 
-                "CREDENTIAL_STORE_PROTECTION=9KjAtKnaEnb3hgj+67wrS85IHABrZXBgG2gShcQ9kEGl4zjV9TLfyEwxBJ6836dI",
+                "CREDENTIAL_STORE_PROTECTION=" + PROTECTION,
 
                 "CREDENTIAL_STORE_ATTR_location=" + keyStorePath()
 
@@ -120,14 +129,19 @@ public abstract class BaseWithCredentialStoreSetupTest extends BaseKarafTest {
 
                 features(IntegrationTest.class.getResource("/feature.xml").toString(), "fuse-credential-store-karaf"),
 
-                vmOptions("-Dprop=CS:key", "-Dtest-dir=" + TEST_CREDENTIAL_STORE_DIRECTORY.getAbsolutePath())
+                vmOptions("-Dtest-dir=" + TEST_CREDENTIAL_STORE_DIRECTORY.getAbsolutePath())
 
         );
 
         return Stream.concat(Arrays.stream(withDefault(options)), Arrays.stream(additional)).toArray(Option[]::new);
     }
 
-    private Bundle findBundle(final String symbolicName) {
+    public Option[] withSystemProperties(final Option... additional) throws Exception {
+        return withCredentialStore(
+            Stream.concat(Stream.of(vmOptions("-Dprop=CS:key")), Arrays.stream(additional)).toArray(Option[]::new));
+    }
+
+    Bundle findBundle(final String symbolicName) {
         for (final Bundle bundle : bundleContext.getBundles()) {
             if (symbolicName.equals(bundle.getSymbolicName())) {
                 return bundle;
@@ -137,7 +151,7 @@ public abstract class BaseWithCredentialStoreSetupTest extends BaseKarafTest {
         throw new IllegalStateException("Unable to find bundle: " + symbolicName);
     }
 
-    private Path keyStorePath() {
+    Path keyStorePath() {
         return Paths.get(TEST_CREDENTIAL_STORE_DIRECTORY.getAbsolutePath(), "credential.store");
     }
 
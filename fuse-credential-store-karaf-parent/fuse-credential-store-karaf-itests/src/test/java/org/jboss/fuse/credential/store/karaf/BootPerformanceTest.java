@@ -0,0 +1,362 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.ProtectionType;
+import org.jboss.fuse.credential.store.karaf.util.ProviderHelper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.TestAddress;
+import org.ops4j.pax.exam.TestProbeBuilder;
+import org.ops4j.pax.exam.spi.ExamReactor;
+import org.ops4j.pax.exam.spi.StagedExamReactor;
+import org.ops4j.pax.exam.spi.reactors.ReactorManager;
+import org.osgi.framework.Bundle;
+import org.wildfly.security.credential.store.CredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.ops4j.pax.exam.CoreOptions.vmOptions;
+import static org.ops4j.pax.exam.karaf.options.KarafDistributionOption.editConfigurationFilePut;
+
+/**
+ * Boots the container with 0, 100 and 10k Credential store references in the system properties, against Credential
+ * stores of 100 and 10k entries, and measures the JVM uptime once the bundle is active, the time the bundle took to
+ * resolve the references and the heap retained by the bundle. Runs only with the {@code boot-performance} Maven
+ * profile, the number of runs of each scenario is set by the {@code boot-performance-runs} system property.
+ *
+ * The median of each measurement is written to {@code target/boot-performance/results.properties}. When the
+ * {@code boot-performance-baseline} system property points to the results of an earlier run, the test fails if any
+ * measurement exceeds the baseline by more than {@code boot-performance-tolerance} percent, by default 20.
+ *
+ * To keep generating the larger Credential stores fast, their entries are encrypted with a single iteration, so the
+ * measurements reflect the work done by the bundle rather than the key derivation of the key store.
+ */
+public class BootPerformanceTest {
+
+    /**
+     * Boots the container and records the measurements once the bundle has resolved the references.
+     */
+    public static class BootPerformanceProbe extends BaseWithCredentialStoreSetupTest {
+
+        private final Path credentialStore;
+
+        private final int references;
+
+        private final int storeSize;
+
+        private final String[] vmOptions;
+
+        public BootPerformanceProbe() {
+            this(null, 0, 0);
+        }
+
+        BootPerformanceProbe(final Path credentialStore, final int references, final int storeSize,
+                final String... vmOptions) {
+            this.credentialStore = credentialStore;
+            this.references = references;
+            this.storeSize = storeSize;
+            this.vmOptions = vmOptions;
+        }
+
+        static long usedHeapAfterGc() {
+            final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            for (int i = 0; i < 3; i++) {
+                memory.gc();
+            }
+
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+
+        @Configuration
+        public Option[] configuration() throws Exception {
+            final Option[] options = withCredentialStore(vmOptions(vmOptions));
+
+            Files.copy(credentialStore, keyStorePath(), StandardCopyOption.REPLACE_EXISTING);
+
+            final Stream<Option> systemProperties = Stream.iterate(0, i -> i + 1).limit(references)
+                    .map(i -> editConfigurationFilePut("etc/system.properties", "reference." + i,
+                        "CS:alias" + (i % storeSize)));
+
+            return Stream.concat(Arrays.stream(options), systemProperties).toArray(Option[]::new);
+        }
+
+        @Test
+        public void recordBootPerformance() throws Exception {
+            final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+            final Bundle bundle = findBundle("org.jboss.fuse.credential.store.fuse-credential-store-karaf");
+            assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+
+            if (Integer.getInteger(REFERENCES_PROPERTY) > 0) {
+                assertThat(System.getProperty("reference.0")).isEqualTo("secret0");
+            }
+
+            final long activation = activationMicros();
+
+            // the difference between the heap used with and without the bundle started approximates the heap the
+            // bundle retains: the resolved values, the original references and its caches
+            final long withBundle = usedHeapAfterGc();
+            bundle.stop();
+            final long withoutBundle = usedHeapAfterGc();
+
+            final Properties report = new Properties();
+            report.setProperty(UPTIME, Long.toString(uptime));
+            report.setProperty(ACTIVATION, Long.toString(activation));
+            report.setProperty(RETAINED_HEAP, Long.toString(Math.max(0, withBundle - withoutBundle)));
+
+            try (OutputStream out = Files.newOutputStream(Paths.get(System.getProperty(REPORT_PROPERTY)))) {
+                report.store(out, null);
+            }
+        }
+
+        @Override
+        public void resetCredentialStore() {
+            // restarting the bundle would load the classes again and make the uptime meaningless
+        }
+
+        /**
+         * Sums the startup phases reported by the metrics MBean of the bundle.
+         */
+        private static long activationMicros() throws Exception {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final TabularData phases = (TabularData) server.getAttribute(
+                new ObjectName("org.jboss.fuse.credential.store:type=CredentialStoreMetrics"), "StartupPhases");
+
+            long total = 0;
+            for (final Object row : phases.values()) {
+                total += (Long) ((CompositeData) row).get("value");
+            }
+
+            return total;
+        }
+    }
+
+    static final String ACTIVATION = "activation-micros";
+
+    static final String RETAINED_HEAP = "retained-heap-bytes";
+
+    static final String UPTIME = "uptime-millis";
+
+    private static final String BASELINE = System.getProperty("boot-performance-baseline");
+
+    private static final String REFERENCES_PROPERTY = "boot-performance-references";
+
+    private static final String REPORT_PROPERTY = "boot-performance-report";
+
+    private static final int RUNS = Integer.getInteger("boot-performance-runs", 3);
+
+    /**
+     * Scenarios as pairs of the number of references in the system properties and the number of Credential store
+     * entries.
+     */
+    private static final int[][] SCENARIOS = {{0, 100}, {100, 100}, {0, 10000}, {100, 10000}, {10000, 10000}};
+
+    private static final int TOLERANCE = Integer.getInteger("boot-performance-tolerance", 20);
+
+    @BeforeClass
+    public static void requireMeasurement() {
+        assumeTrue("Boot performance is measured only within the boot-performance profile",
+            Boolean.getBoolean("measure-boot-performance"));
+    }
+
+    /**
+     * Copies the Credential store used by the integration tests and adds entries {@code alias0} to
+     * {@code alias<size - 1>}, holding {@code secret0} to {@code secret<size - 1>}.
+     */
+    static void generateCredentialStore(final Path location, final int size)
+            throws GeneralSecurityException, IOException {
+        try (InputStream in = BootPerformanceTest.class.getResourceAsStream("/credential.store")) {
+            Files.copy(in, location, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        final Map<String, String> protection = new HashMap<>();
+        protection.put("CREDENTIAL_STORE_PROTECTION_ALGORITHM",
+            BaseWithCredentialStoreSetupTest.PROTECTION_ALGORITHM);
+        protection.put("CREDENTIAL_STORE_PROTECTION_PARAMS", BaseWithCredentialStoreSetupTest.PROTECTION_PARAMS);
+        protection.put("CREDENTIAL_STORE_PROTECTION", BaseWithCredentialStoreSetupTest.PROTECTION);
+
+        final Map<String, String> attributes = CredentialStoreHelper
+                .defaultCredentialStoreAttributesFor(Defaults.CREDENTIAL_STORE_ALGORITHM);
+        attributes.put("location", location.toString());
+
+        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreInstance(
+            Defaults.CREDENTIAL_STORE_ALGORITHM, ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+            ProtectionType.masked.createCredentialSource(protection)));
+
+        for (int i = 0; i < size; i++) {
+            credentialStore.store("alias" + i, CredentialStoreHelper.clearPasswordCredential("secret" + i));
+        }
+
+        credentialStore.flush();
+    }
+
+    static List<String> regressions(final Properties results, final Properties baseline, final int tolerance) {
+        final List<String> regressions = new ArrayList<>();
+
+        for (final String measurement : results.stringPropertyNames()) {
+            final String baselineValue = baseline.getProperty(measurement);
+            if (baselineValue == null) {
+                continue;
+            }
+
+            final long current = Long.parseLong(results.getProperty(measurement));
+            final long previous = Long.parseLong(baselineValue);
+
+            if (current > ((previous * (100 + tolerance)) / 100)) {
+                regressions.add(String.format("%s: %d, baseline %d", measurement, current, previous));
+            }
+        }
+
+        return regressions;
+    }
+
+    @Test
+    public void shouldNotRegressBootPerformance() throws Exception {
+        final Path directory = Files.createDirectories(Paths.get("target", "boot-performance").toAbsolutePath());
+
+        System.setProperty("keystore.pkcs12.keyPbeIterationCount", "1");
+        Security.addProvider(ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+
+        final Map<Integer, Path> credentialStores = new HashMap<>();
+        for (final int[] scenario : SCENARIOS) {
+            final int storeSize = scenario[1];
+
+            if (!credentialStores.containsKey(storeSize)) {
+                final Path location = directory.resolve("credential-" + storeSize + ".store");
+                generateCredentialStore(location, storeSize);
+                credentialStores.put(storeSize, location);
+            }
+        }
+
+        final Properties results = new Properties();
+
+        System.out.printf("Boot performance over %d runs, median%n", RUNS);
+        System.out.printf("  %10s %10s %12s %14s %16s%n", "references", "entries", "uptime ms", "activation us",
+            "retained bytes");
+
+        for (final int[] scenario : SCENARIOS) {
+            final int references = scenario[0];
+            final int storeSize = scenario[1];
+
+            final long[] uptime = new long[RUNS];
+            final long[] activation = new long[RUNS];
+            final long[] retained = new long[RUNS];
+
+            for (int i = 0; i < RUNS; i++) {
+                final Properties report = boot(directory, credentialStores.get(storeSize), references, storeSize);
+
+                uptime[i] = Long.parseLong(report.getProperty(UPTIME));
+                activation[i] = Long.parseLong(report.getProperty(ACTIVATION));
+                retained[i] = Long.parseLong(report.getProperty(RETAINED_HEAP));
+            }
+
+            final String prefix = "references-" + references + ".entries-" + storeSize + ".";
+            results.setProperty(prefix + UPTIME, Long.toString(ClassDataSharingBootTimeTest.median(uptime)));
+            results.setProperty(prefix + ACTIVATION, Long.toString(ClassDataSharingBootTimeTest.median(activation)));
+            results.setProperty(prefix + RETAINED_HEAP, Long.toString(ClassDataSharingBootTimeTest.median(retained)));
+
+            System.out.printf("  %10d %10d %12s %14s %16s%n", references, storeSize,
+                results.getProperty(prefix + UPTIME), results.getProperty(prefix + ACTIVATION),
+                results.getProperty(prefix + RETAINED_HEAP));
+        }
+
+        try (OutputStream out = Files.newOutputStream(directory.resolve("results.properties"))) {
+            results.store(out, "Boot performance, median of " + RUNS + " runs");
+        }
+
+        if (BASELINE == null) {
+            return;
+        }
+
+        final Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(BASELINE))) {
+            baseline.load(in);
+        }
+
+        assertThat(regressions(results, baseline, TOLERANCE))
+                .as("Measurements exceeding the baseline by more than %d%%", TOLERANCE).isEmpty();
+    }
+
+    private Properties boot(final Path directory, final Path credentialStore, final int references,
+            final int storeSize) throws Exception {
+        final Path reportPath = directory.resolve("report.properties");
+        Files.deleteIfExists(reportPath);
+
+        final BootPerformanceProbe probe = new BootPerformanceProbe(credentialStore, references, storeSize,
+            "-D" + REPORT_PROPERTY + "=" + reportPath, "-D" + REFERENCES_PROPERTY + "=" + references);
+
+        final ReactorManager manager = ReactorManager.getInstance();
+
+        final ExamReactor reactor = manager.prepareReactor(BootPerformanceProbe.class, probe);
+
+        final TestProbeBuilder probeBuilder = manager.createProbeBuilder(this);
+
+        final TestAddress address = probeBuilder.addTest(BootPerformanceProbe.class, "recordBootPerformance",
+            new Object[0]);
+
+        manager.storeTestMethod(address, null);
+
+        reactor.addProbe(probeBuilder);
+
+        final StagedExamReactor stagedReactor = manager.stageReactor();
+
+        try {
+            stagedReactor.invoke(stagedReactor.getTargets().iterator().next());
+        } finally {
+            stagedReactor.afterClass();
+            stagedReactor.afterSuite();
+
+            probe.delete();
+            probe.deleteTemporaryCredentialStoreDirectory();
+        }
+
+        final Properties report = new Properties();
+        try (InputStream in = Files.newInputStream(reportPath)) {
+            report.load(in);
+        }
+
+        return report;
+    }
+}
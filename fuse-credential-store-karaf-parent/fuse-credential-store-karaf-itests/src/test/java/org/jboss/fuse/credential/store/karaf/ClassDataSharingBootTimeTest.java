@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.TestAddress;
+import org.ops4j.pax.exam.TestProbeBuilder;
+import org.ops4j.pax.exam.spi.ExamReactor;
+import org.ops4j.pax.exam.spi.StagedExamReactor;
+import org.ops4j.pax.exam.spi.reactors.ReactorManager;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.ops4j.pax.exam.CoreOptions.vmOptions;
+
+/**
+ * Measures the time the container takes to boot with the Credential store bundle resolving references, without and
+ * with a dynamic class data sharing archive of the classes loaded while booting. The archive is created by a training
+ * run using {@code -XX:ArchiveClassesAtExit} and used by {@code -XX:SharedArchiveFile}. Only the JDK and class path
+ * classes end up in the archive, the bundle classes, including the embedded Elytron, are defined by the OSGi framework
+ * from the bundle bytes and are not archived. Runs only with the {@code boot-time} Maven profile, the number of runs
+ * measured in each setup is set by the {@code boot-time-runs} system property.
+ */
+public class ClassDataSharingBootTimeTest {
+
+    /**
+     * Boots the container and records the JVM uptime once the bundle has resolved the references.
+     */
+    public static class BootTimeProbe extends BaseWithCredentialStoreSetupTest {
+
+        private final String[] vmOptions;
+
+        public BootTimeProbe() {
+            this(new String[0]);
+        }
+
+        BootTimeProbe(final String... vmOptions) {
+            this.vmOptions = vmOptions;
+        }
+
+        @Configuration
+        public Option[] configuration() throws Exception {
+            return withSystemProperties(vmOptions(vmOptions));
+        }
+
+        @Test
+        public void recordBootTime() throws IOException {
+            final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+            assertThat(System.getProperty("prop")).isEqualTo("this is a password");
+
+            Files.write(Paths.get(System.getProperty(REPORT_PROPERTY)), Long.toString(uptime).getBytes(US_ASCII));
+        }
+
+        @Override
+        public void resetCredentialStore() {
+            // restarting the bundle would load the classes again and make the uptime meaningless
+        }
+    }
+
+    private static final String REPORT_PROPERTY = "boot-time-report";
+
+    private static final int RUNS = Integer.getInteger("boot-time-runs", 3);
+
+    @BeforeClass
+    public static void requireMeasurement() {
+        assumeTrue("Boot time is measured only within the boot-time profile", Boolean.getBoolean("measure-boot-time"));
+
+        assumeTrue("Dynamic class data sharing archives require Java 13 or newer", javaVersion() >= 13);
+    }
+
+    static int javaVersion() {
+        final String specification = System.getProperty("java.specification.version");
+
+        if (specification.startsWith("1.")) {
+            return Integer.parseInt(specification.substring(2));
+        }
+
+        return Integer.parseInt(specification);
+    }
+
+    static long median(final long[] times) {
+        final long[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+    @Test
+    public void shouldReportBootTimeWithClassDataSharingArchive() throws Exception {
+        final Path directory = Files.createDirectories(Paths.get("target", "boot-time").toAbsolutePath());
+        final Path archive = directory.resolve("credential-store.jsa");
+        Files.deleteIfExists(archive);
+
+        final long[] baseline = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            baseline[i] = boot(directory);
+        }
+
+        boot(directory, "-XX:ArchiveClassesAtExit=" + archive);
+
+        assertThat(archive).exists();
+
+        final long[] shared = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            shared[i] = boot(directory, "-XX:SharedArchiveFile=" + archive);
+        }
+
+        final long baselineMedian = median(baseline);
+        final long sharedMedian = median(shared);
+
+        System.out.printf("Boot time over %d runs, median (all runs)%n", RUNS);
+        System.out.printf("  without archive:   %5d ms %s%n", baselineMedian, Arrays.toString(baseline));
+        System.out.printf("  with CDS archive:  %5d ms %s%n", sharedMedian, Arrays.toString(shared));
+        System.out.printf("  difference:        %5d ms (%.1f%%)%n", baselineMedian - sharedMedian,
+            100.0 * (baselineMedian - sharedMedian) / baselineMedian);
+    }
+
+    private long boot(final Path directory, final String... vmOptions) throws Exception {
+        final Path report = directory.resolve("uptime");
+        Files.deleteIfExists(report);
+
+        final String[] options = Stream
+                .concat(Arrays.stream(vmOptions), Stream.of("-D" + REPORT_PROPERTY + "=" + report))
+                .toArray(String[]::new);
+
+        final BootTimeProbe probe = new BootTimeProbe(options);
+
+        final ReactorManager manager = ReactorManager.getInstance();
+
+        final ExamReactor reactor = manager.prepareReactor(BootTimeProbe.class, probe);
+
+        final TestProbeBuilder probeBuilder = manager.createProbeBuilder(this);
+
+        final TestAddress address = probeBuilder.addTest(BootTimeProbe.class, "recordBootTime", new Object[0]);
+
+        manager.storeTestMethod(address, null);
+
+        reactor.addProbe(probeBuilder);
+
+        final StagedExamReactor stagedReactor = manager.stageReactor();
+
+        try {
+            stagedReactor.invoke(stagedReactor.getTargets().iterator().next());
+        } finally {
+            stagedReactor.afterClass();
+            stagedReactor.afterSuite();
+
+            probe.delete();
+            probe.deleteTemporaryCredentialStoreDirectory();
+        }
+
+        return Long.parseLong(new String(Files.readAllBytes(report), US_ASCII));
+    }
+}
@@ -15,34 +15,64 @@
  */
 package org.jboss.fuse.credential.store.karaf;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
-import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.Security;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
-
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialCipherService;
+import org.jboss.fuse.credential.store.karaf.api.CredentialResolver;
+import org.jboss.fuse.credential.store.karaf.api.CredentialStoreKeystore;
+import org.jboss.fuse.credential.store.karaf.api.CredentialStoreReady;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.store.JournalCredentialStore;
+import org.jboss.fuse.credential.store.karaf.util.CachingCredentialResolver;
+import org.jboss.fuse.credential.store.karaf.util.CredentialCipher;
 import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreKeystores;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.ResolutionMode;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ConfigurationPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wildfly.security.WildFlyElytronProvider;
-import org.wildfly.security.credential.PasswordCredential;
 import org.wildfly.security.credential.store.CredentialStore;
-import org.wildfly.security.credential.store.CredentialStoreException;
-import org.wildfly.security.password.Password;
-import org.wildfly.security.password.interfaces.ClearPassword;
 
 /**
  * Standard OSGI {@link BundleActivator}: sets up the Credential Store from the environment variables, and replaces the
@@ -52,6 +82,38 @@ import org.wildfly.security.password.interfaces.ClearPassword;
  * On startup, installs the {@link WildFlyElytronProvider} provider and replaces the {@link RuntimeMXBean} to hide the
  * clear text values from viewing through JMX.
  *
+ * In the {@link ResolutionMode#lazy} resolution mode, instead of replacing the values, the system properties are
+ * replaced with {@link ResolvingProperties} that open the Credential store and resolve the values on first access. In
+ * the {@link ResolutionMode#async} resolution mode the values are replaced on a background thread, and the bundle start
+ * completes without waiting for the Credential store. An unsupported resolution mode is logged and the references are
+ * resolved in the {@link ResolutionMode#eager} resolution mode.
+ *
+ * Once the references are resolved the {@link CredentialStoreReady} service is registered.
+ *
+ * Registers the {@link CredentialStoreMetrics} MXBean with the counters and latencies of the Credential store
+ * operations and the duration of each start phase, and the {@link AuditLog} MXBean with the most recent secret
+ * resolution events.
+ *
+ * Registers the {@link CredentialStoreConfigurationPlugin} to replace the Credential store references given as values
+ * in the configurations delivered to the managed services.
+ *
+ * References in {@code CS:name/alias} format are resolved from the named Credential stores of the
+ * {@link CredentialStoreRegistry}, only the Credential stores referenced from the system properties are opened, and
+ * they are opened concurrently.
+ *
+ * Key stores kept in the Credential store, named by the {@code CREDENTIAL_STORE_KEYSTORES} environment variable, are
+ * registered as {@link CredentialStoreKeystore}, {@link SSLContext} and {@link KeyManagerFactory} services, and
+ * registered again when they change in the Credential store.
+ *
+ * With the {@code CREDENTIAL_STORE_CIPHER_KEY} environment variable set to the alias of a key held in the Credential
+ * store, registers the {@link CredentialCipherService} and decrypts the inline encrypted {@code ENC:} configuration
+ * values. The key is loaded before the {@link CredentialStoreConfigurationPlugin} is registered, in all resolution
+ * modes, so no configuration is delivered with the values still encrypted.
+ *
+ * With the {@code CREDENTIAL_STORE_WATCH} environment variable set to {@code true}, the referenced Credential store
+ * files are watched for changes and the changed values are applied to the system properties without restarting the
+ * container.
+ *
  * When stopping, removes the {@link WildFlyElytronProvider} and restores the original {@link RuntimeMXBean} and
  * original system property values.
  */
@@ -59,92 +121,233 @@ public final class Activator implements BundleActivator {
 
     private static final Logger LOG = LoggerFactory.getLogger(Activator.class);
 
+    private static final long RELOAD_DEBOUNCE_MILLIS = 500;
+
     private static final String SENSITIVE_VALUE_REPLACEMENT = "<sensitive>";
 
+    private Future<?> activation;
+
+    private volatile BundleContext bundleContext;
+
+    private CredentialCipher cipher;
+
+    private ServiceRegistration<CredentialCipherService> cipherRegistration;
+
+    private CredentialStoreConfigurationPlugin configurationPlugin;
+
+    private ServiceRegistration<ConfigurationPlugin> configurationPluginRegistration;
+
+    private CachingCredentialResolver credentialResolver;
+
+    private ServiceRegistration<CredentialResolver> credentialResolverRegistration;
+
+    private final Map<String, List<ServiceRegistration<?>>> keystoreRegistrations = new HashMap<>();
+
+    private CredentialStoreKeystores keystores;
+
+    private final List<ObjectName> managementBeanNames = new ArrayList<>();
+
     private ServiceReference<MBeanServer> mbeanServerReference;
 
     private RuntimeMXBean originalRuntimeBean;
 
     private String providerName;
 
-    private final Map<String, String> replacedProperties = new HashMap<>();
+    private Map<String, String> references = Collections.emptyMap();
+
+    private CredentialStoreRegistry registry;
+
+    private ServiceRegistration<CredentialStoreRegistry> registryRegistration;
+
+    private final Map<String, String> replacedProperties = new ConcurrentHashMap<>();
+
+    private ServiceRegistration<CredentialStoreReady> readyRegistration;
+
+    private volatile ResolvingProperties resolvingProperties;
 
     private ObjectName runtimeBeanName;
 
+    private ServiceRegistration<SharedCredentialStore> sharedCredentialStoreRegistration;
+
+    private final Set<String> watchedStores = new HashSet<>();
+
+    private final List<CredentialStoreWatcher> watchers = new ArrayList<>();
+
     /**
-     * If there are any Credential store references as values in the system properties, adds
-     * {@link WildFlyElytronProvider} to {@link Security} providers, replaces those values with the values from the
-     * Credential store and installs the JMX filter to prevent the clear text value leakage.
+     * Unless there are no Credential store references as values in the system properties and no Credential store is
+     * configured, registers the management beans, the default {@link SharedCredentialStore} service used by the shell
+     * commands, the {@link CredentialStoreConfigurationPlugin} and the {@link CredentialResolver} service. If there are
+     * any Credential store references, adds {@link WildFlyElytronProvider} to {@link Security} providers, opens the
+     * referenced Credential stores, replaces those values with the values from the Credential stores and installs the
+     * JMX filter to prevent the clear text value leakage. In the {@link ResolutionMode#async} resolution mode this is
+     * performed on a background thread. Registers the {@link CredentialStoreReady} service when done.
      *
      * @param context
      *            OSGI bundle context
      */
     @Override
     public void start(final BundleContext context) throws Exception {
+        final ResolutionMode resolutionMode = resolutionMode();
+
         final Properties properties = System.getProperties();
 
-        @SuppressWarnings("unchecked")
-        final Collection<String> values = (Collection) properties.values();
+        final long snapshotStart = System.nanoTime();
+        references = referencesIn(properties);
+        final long snapshotTime = System.nanoTime() - snapshotStart;
 
-        final boolean hasValuesFromCredentialStore = CredentialStoreHelper.containsStoreReferences(values);
+        if (references.isEmpty() && !CredentialStoreHelper.isCredentialStoreConfiguredFromEnvironment()) {
+            // nothing to resolve and no Credential store to provide, only signal the bundles waiting for the values
+            registerReady(context, resolutionMode);
 
-        if (!hasValuesFromCredentialStore) {
             return;
         }
 
-        final WildFlyElytronProvider elytronProvider = new WildFlyElytronProvider();
-        providerName = elytronProvider.getName();
+        CredentialStoreMetrics.metrics().reset();
+        registerManagementBeans(context);
 
-        Security.addProvider(elytronProvider);
+        bundleContext = context;
+        registry = new CredentialStoreRegistry();
+        sharedCredentialStoreRegistration = context.registerService(SharedCredentialStore.class,
+                registry.defaultStore(), null);
+        registryRegistration = context.registerService(CredentialStoreRegistry.class, registry, null);
 
-        CredentialStore credentialStore;
-        try {
-            credentialStore = CredentialStoreHelper.credentialStoreFromEnvironment();
-        } catch (final Exception e) {
-            final String message = e.getMessage();
-            System.err.println("\r\nUnable to initialize credential store, destroying container: " + message);
-            LOG.error("Unable to initialize credential store, destroying container: {}", message);
+        final String cipherKey = CredentialStoreHelper.cipherKeyFromEnvironment();
+        if (cipherKey != null) {
+            // loaded before the configuration plugin is registered, so the ENC: values are never delivered encrypted
+            addElytronProvider();
+            cipher = loadCipher(cipherKey);
+        }
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Logging exception stack trace", e);
-            }
+        final Hashtable<String, Object> pluginProperties = new Hashtable<>();
+        pluginProperties.put(ConfigurationPlugin.CM_RANKING, CredentialStoreConfigurationPlugin.RANKING);
+        configurationPlugin = new CredentialStoreConfigurationPlugin(registry);
+        if (cipher != null) {
+            configurationPlugin.cipher(cipher);
+        }
+        configurationPluginRegistration = context.registerService(ConfigurationPlugin.class, configurationPlugin,
+            pluginProperties);
 
-            final Bundle frameworkBundle = context.getBundle(0);
-            frameworkBundle.stop();
+        credentialResolver = CredentialStoreHelper.credentialResolverFromEnvironment(registry);
+        credentialResolverRegistration = context.registerService(CredentialResolver.class, credentialResolver, null);
+
+        if (resolutionMode != ResolutionMode.async) {
+            if (activate(context, properties, resolutionMode, snapshotTime)) {
+                registerReady(context, resolutionMode);
+            }
 
             return;
         }
 
-        @SuppressWarnings("unchecked")
-        final Hashtable<String, String> propertiesAsStringEntries = (Hashtable) properties;
+        final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "credential-store-activation");
+            thread.setDaemon(true);
 
-        for (final Entry<String, String> property : propertiesAsStringEntries.entrySet()) {
-            final String key = property.getKey();
-            final String value = property.getValue();
+            return thread;
+        });
 
-            if (replaced(credentialStore, key, value)) {
-                replacedProperties.put(key, value);
+        activation = executor.submit(() -> {
+            try {
+                if (activate(context, properties, resolutionMode, snapshotTime)) {
+                    registerReady(context, resolutionMode);
+                }
+            } catch (final Exception e) {
+                LOG.error("Unable to resolve credential store references: {}", e.getMessage());
+                LOG.debug("Logging exception stack trace", e);
             }
-        }
+        });
 
-        if (!replacedProperties.isEmpty()) {
-            installFilteringRuntimeBean(context);
-        }
+        executor.shutdown();
+
+        LOG.info("Resolving {} system properties referencing the credential store in the background",
+            references.size());
     }
 
     /**
      * Removes the addedd {@link WildFlyElytronProvider} and restores the original {@link RuntimeMXBean} and original
-     * system property values, possibly containing Credential store references for values.
+     * system property values, possibly containing Credential store references for values. Waits for the resolution in
+     * the {@link ResolutionMode#async} resolution mode to complete first.
      *
      * @param context
      *            OSGI bundle context
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        if (activation != null) {
+            try {
+                activation.get();
+            } catch (final ExecutionException ignored) {
+                // logged by the activation
+            }
+
+            activation = null;
+        }
+
+        if (readyRegistration != null) {
+            readyRegistration.unregister();
+            readyRegistration = null;
+        }
+
+        if (cipherRegistration != null) {
+            cipherRegistration.unregister();
+            cipherRegistration = null;
+        }
+        cipher = null;
+
+        if (!managementBeanNames.isEmpty()) {
+            final MBeanServer mbeanServer = context.getService(mbeanServerReference);
+
+            for (final ObjectName name : managementBeanNames) {
+                if ((mbeanServer != null) && mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            }
+
+            managementBeanNames.clear();
+        }
+
+        for (final CredentialStoreWatcher watcher : watchers) {
+            watcher.close();
+        }
+        watchers.clear();
+        watchedStores.clear();
+
+        synchronized (keystoreRegistrations) {
+            for (final List<ServiceRegistration<?>> registrations : keystoreRegistrations.values()) {
+                registrations.forEach(ServiceRegistration::unregister);
+            }
+            keystoreRegistrations.clear();
+        }
+        keystores = null;
+
+        if (credentialResolverRegistration != null) {
+            credentialResolverRegistration.unregister();
+            credentialResolverRegistration = null;
+            credentialResolver = null;
+        }
+
+        if (configurationPluginRegistration != null) {
+            configurationPluginRegistration.unregister();
+            configurationPluginRegistration = null;
+            configurationPlugin = null;
+        }
+
+        if (registryRegistration != null) {
+            registryRegistration.unregister();
+            registryRegistration = null;
+        }
+
+        if (sharedCredentialStoreRegistration != null) {
+            sharedCredentialStoreRegistration.unregister();
+            sharedCredentialStoreRegistration = null;
+        }
+
+        JournalCredentialStore.shutdownCompaction();
+
         // remove WildFlyElytronProvider, there could be a classloader leak if we do not remove it as we package it
         // within the bundle
         if (providerName != null) {
             Security.removeProvider(providerName);
+            providerName = null;
         }
 
         // if we've replaced the RuntimeMXBean
@@ -153,98 +356,518 @@ public final class Activator implements BundleActivator {
 
             // and the MBeanServer is still around
             if (mbeanServer != null) {
-                // remove our proxy
+                // remove our filtering bean
                 mbeanServer.unregisterMBean(runtimeBeanName);
                 // and restore the original
                 mbeanServer.registerMBean(originalRuntimeBean, runtimeBeanName);
             }
+
+            originalRuntimeBean = null;
         }
 
+        mbeanServerReference = null;
+
         if (!replacedProperties.isEmpty()) {
             // restore original value references
             replacedProperties.forEach((k, v) -> System.setProperty(k, v));
             replacedProperties.clear();
         }
+
+        if (resolvingProperties != null) {
+            // restore plain system properties, ResolvingProperties hold the original value references
+            final Properties restored = new Properties();
+            restored.putAll(resolvingProperties);
+            System.setProperties(restored);
+            resolvingProperties = null;
+        }
     }
 
     /**
      * Using the {@link MBeanServer} from the OSGI {@link BundleContext} finds the {@link RuntimeMXBean} and replaces it
-     * with a {@link Proxy} that filters access to replaced system property values from the Credential store. Values
-     * will be presented as {@link #SENSITIVE_VALUE_REPLACEMENT} instead of them being in the clear.
+     * with a {@link FilteringRuntimeMXBean} that filters access to replaced system property values from the Credential
+     * store. Values will be presented as {@link #SENSITIVE_VALUE_REPLACEMENT} instead of them being in the clear.
      *
      * @param context
      *            OSGI bundle context
      * @throws JMException
      */
     void installFilteringRuntimeBean(final BundleContext context) throws JMException {
-        mbeanServerReference = context.getServiceReference(MBeanServer.class);
+        if (mbeanServerReference == null) {
+            mbeanServerReference = context.getServiceReference(MBeanServer.class);
+        }
         final MBeanServer mbeanServer = context.getService(mbeanServerReference);
 
         runtimeBeanName = ObjectName.getInstance("java.lang", "type", "Runtime");
 
         originalRuntimeBean = ManagementFactory.getRuntimeMXBean();
 
-        final Object proxy = Proxy.newProxyInstance(runtimeBeanName.getClass().getClassLoader(),
-                new Class[] {RuntimeMXBean.class}, (proxy1, method, args) -> {
-                    final Object result = method.invoke(originalRuntimeBean, args);
+        final FilteringRuntimeMXBean filteringRuntimeBean = new FilteringRuntimeMXBean(originalRuntimeBean,
+            replacedProperties.keySet());
 
-                    // we map the values obtained through RuntimeMXBean::getSystemProperties in order to replace the
-                    // values with SENSITIVE_VALUE_REPLACEMENT
-                    if ("getSystemProperties".equals(method.getName())) {
-                        @SuppressWarnings("unchecked")
-                        final Map<Object, Object> originalValues = (Map) result;
+        mbeanServer.unregisterMBean(runtimeBeanName);
+        mbeanServer.registerMBean(filteringRuntimeBean, runtimeBeanName);
+    }
 
-                        final Map<Object, Object> copy = new HashMap<>(originalValues);
-                        for (final String replacedProperty : replacedProperties.keySet()) {
-                            copy.put(replacedProperty, SENSITIVE_VALUE_REPLACEMENT);
-                        }
+    /**
+     * Reloads the changed Credential stores and applies the values that changed to the system properties. Invoked from
+     * the {@link CredentialStoreWatcher} background thread after a Credential store file has changed.
+     */
+    void reload() {
+        final CachingCredentialResolver currentCredentialResolver = credentialResolver;
+        if (currentCredentialResolver != null) {
+            currentCredentialResolver.invalidate();
+        }
 
-                        return copy;
-                    }
+        if (keystores != null) {
+            refreshKeystores();
+        }
 
-                    return result;
-                });
+        if (references.isEmpty()) {
+            return;
+        }
 
-        mbeanServer.unregisterMBean(runtimeBeanName);
-        mbeanServer.registerMBean(proxy, runtimeBeanName);
+        final ResolvingProperties currentResolvingProperties = resolvingProperties;
+        if (currentResolvingProperties != null) {
+            currentResolvingProperties.reloaded();
+            LOG.info("Credential store changed, system properties will be resolved again on next access");
+
+            return;
+        }
+
+        final Map<String, CredentialStore> credentialStores;
+        try {
+            credentialStores = registry.open(references.values());
+        } catch (GeneralSecurityException | IOException e) {
+            LOG.warn("Unable to reload credential store, keeping the current values: {}", e.getMessage());
+            LOG.debug("Logging exception stack trace", e);
+
+            return;
+        }
+
+        final Map<String, String> values = resolve(registry, credentialStores, new HashSet<>(references.values()));
+
+        final Properties properties = System.getProperties();
+        final Map<String, String> changed = new HashMap<>();
+        references.forEach((key, alias) -> {
+            final String value = values.get(alias);
+
+            if ((value != null) && !value.equals(properties.getProperty(key))) {
+                changed.put(key, alias);
+            }
+        });
+
+        final Map<String, String> replaced = replace(properties, changed, values);
+        replaced.forEach(replacedProperties::putIfAbsent);
+        audit(replaced);
+
+        LOG.info("Reloaded credential store, {} system properties changed", changed.size());
     }
 
     /**
-     * Replaces any value that is given in Credential Store reference format with the value from the Credential Store by
-     * using {@link System#setProperty(String, String)}.
+     * Creates a copy of the given properties with the values of any replaced property, or any property whose value is
+     * given in Credential store reference format, replaced with {@link #SENSITIVE_VALUE_REPLACEMENT}. The values are
+     * read as set, i.e. without the resolution performed by {@link ResolvingProperties}.
      *
-     * @param credentialStore
-     *            {@link CredentialStore} containing the secret values
-     * @param key
-     *            property key
-     * @param value
-     *            property value, expected to be in Credential store reference format
-     * @return true if any replacement was done
-     */
-    boolean replaced(final CredentialStore credentialStore, final String key, final String value) {
-        if (!CredentialStoreHelper.couldBeCredentialStoreAlias(value)) {
-            return false;
+     * @param properties
+     *            properties to copy
+     * @param replaced
+     *            keys of the properties whose values were replaced with the values from the Credential store
+     * @return masked copy of the properties
+     */
+    static Map<String, String> maskedSystemProperties(final Properties properties, final Set<String> replaced) {
+        @SuppressWarnings("unchecked")
+        final Map<Object, Object> snapshot = (Map<Object, Object>) properties.clone();
+
+        final Map<String, String> masked = new HashMap<>();
+        for (final Entry<Object, Object> property : snapshot.entrySet()) {
+            final Object key = property.getKey();
+            final Object value = property.getValue();
+
+            if ((key instanceof String) && (value instanceof String)) {
+                final boolean sensitive = replaced.contains(key)
+                    || CredentialStoreHelper.couldBeCredentialStoreAlias((String) value);
+
+                masked.put((String) key, sensitive ? SENSITIVE_VALUE_REPLACEMENT : (String) value);
+            }
         }
 
-        final String alias = CredentialStoreHelper.toCredentialStoreAlias(value);
+        return masked;
+    }
 
-        final PasswordCredential passwordCredential;
-        try {
-            passwordCredential = credentialStore.retrieve(alias, PasswordCredential.class);
-        } catch (final CredentialStoreException e) {
-            return false;
+    /**
+     * Takes a snapshot of the given properties and returns the keys of those properties whose values are given in
+     * Credential store reference format, mapped to the Credential store alias they reference. The properties are
+     * copied once, so the (synchronized) properties are not locked while the references are collected.
+     *
+     * @param properties
+     *            properties to look for references in
+     * @return property keys mapped to the referenced alias, empty if there are no references
+     */
+    static Map<String, String> referencesIn(final Properties properties) {
+        @SuppressWarnings("unchecked")
+        final Map<Object, Object> snapshot = (Map<Object, Object>) properties.clone();
+
+        final Map<String, String> references = new HashMap<>();
+        for (final Entry<Object, Object> property : snapshot.entrySet()) {
+            final Object key = property.getKey();
+            final Object value = property.getValue();
+
+            if ((key instanceof String) && (value instanceof String)
+                && CredentialStoreHelper.couldBeCredentialStoreAlias((String) value)) {
+                references.put((String) key, CredentialStoreHelper.toCredentialStoreAlias((String) value));
+            }
         }
 
-        if (passwordCredential == null) {
+        return references;
+    }
+
+    /**
+     * Retrieves the clear text values of the given references from the Credential stores they reference. Each
+     * reference is retrieved only once, and the retrieval is performed in parallel using the common
+     * {@link ForkJoinPool}. References to aliases not found in the Credential store are not present in the returned
+     * map.
+     *
+     * @param registry
+     *            registry routing the references to the Credential stores
+     * @param credentialStores
+     *            opened Credential stores keyed by name, containing the secret values
+     * @param references
+     *            distinct references, without the {@code CS:} prefix, to retrieve
+     * @return references mapped to their clear text values
+     */
+    static Map<String, String> resolve(final CredentialStoreRegistry registry,
+            final Map<String, CredentialStore> credentialStores, final Set<String> references) {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+
+        references.parallelStream().forEach(reference -> {
+            final CredentialStore credentialStore = credentialStores.get(registry.storeNameOf(reference));
+
+            final long start = System.nanoTime();
+            final String value = CredentialStoreHelper.retrieve(credentialStore, registry.aliasOf(reference));
+            AuditLog.audit().recordSince(reference, null, value == null ? Outcome.missing : Outcome.retrieved,
+                start, AuditLog.SYSTEM_PROPERTIES);
+
+            if (value != null) {
+                values.put(reference, value);
+            }
+        });
+
+        return values;
+    }
+
+    /**
+     * Replaces the values of referencing properties with the resolved values in a single batch, so the properties are
+     * locked only once.
+     *
+     * @param properties
+     *            properties to replace the values within
+     * @param references
+     *            property keys mapped to the referenced alias
+     * @param values
+     *            aliases mapped to their clear text values
+     * @return the keys of the replaced properties mapped to the original, Credential store reference, values
+     */
+    static Map<String, String> replace(final Properties properties, final Map<String, String> references,
+            final Map<String, String> values) {
+        final Map<String, String> replacements = new HashMap<>();
+        final Map<String, String> originals = new HashMap<>();
+
+        references.forEach((key, alias) -> {
+            final String value = values.get(alias);
+
+            if (value != null) {
+                replacements.put(key, value);
+                originals.put(key, CredentialStoreHelper.referenceForAlias(alias));
+            }
+        });
+
+        properties.putAll(replacements);
+
+        return originals;
+    }
+
+    /**
+     * Adds the {@link WildFlyElytronProvider} the Credential stores are opened with, unless already added.
+     */
+    private void addElytronProvider() {
+        if (providerName != null) {
+            return;
+        }
+
+        final WildFlyElytronProvider elytronProvider = new WildFlyElytronProvider();
+        providerName = elytronProvider.getName();
+
+        Security.addProvider(elytronProvider);
+    }
+
+    /**
+     * Resolves the references in the system properties from the Credential store, replacing the values or installing
+     * the lazily {@link ResolvingProperties} depending on the given resolution mode.
+     *
+     * @return false if the Credential store could not be opened and the container is being destroyed
+     */
+    private boolean activate(final BundleContext context, final Properties properties,
+            final ResolutionMode resolutionMode, final long snapshotTime) throws Exception {
+        final List<String> keystoreNames = CredentialStoreHelper.keystoresFromEnvironment();
+        final String cipherKey = CredentialStoreHelper.cipherKeyFromEnvironment();
+        if (references.isEmpty() && keystoreNames.isEmpty() && (cipherKey == null)) {
+            return true;
+        }
+
+        addElytronProvider();
+
+        if (!keystoreNames.isEmpty()) {
+            keystores = new CredentialStoreKeystores(registry, keystoreNames);
+            refreshKeystores();
+
+            // key stores are rebuilt whenever their Credential stores change, regardless of CREDENTIAL_STORE_WATCH
+            watchForChanges(keystores.storeNames());
+        }
+
+        if (cipher != null) {
+            cipherRegistration = context.registerService(CredentialCipherService.class, cipher, null);
+        }
+
+        if (references.isEmpty()) {
+            return true;
+        }
+
+        if (resolutionMode == ResolutionMode.lazy) {
+            // the Credential stores are opened by the first access to a property referencing them
+            resolvingProperties = ResolvingProperties.install(properties, registry);
+
+            final Set<String> storeNames = references.values().stream().map(registry::storeNameOf)
+                .collect(Collectors.toSet());
+
+            LOG.info(
+                "Installed lazily resolving system properties, {} system properties reference {} credential stores"
+                    + " (snapshot: {} ms)",
+                references.size(), storeNames.size(), NANOSECONDS.toMillis(snapshotTime));
+
+            CredentialStoreMetrics.metrics().started(phases(snapshotTime), 0);
+
+            installFilteringRuntimeBean(context);
+
+            if (CredentialStoreHelper.isWatchEnabledFromEnvironment()) {
+                watchForChanges(storeNames);
+            }
+
+            return true;
+        }
+
+        final long openStart = System.nanoTime();
+        final Map<String, CredentialStore> credentialStores;
+        try {
+            credentialStores = registry.open(references.values());
+        } catch (final Exception e) {
+            final String message = e.getMessage();
+            System.err.println("\r\nUnable to initialize credential store, destroying container: " + message);
+            LOG.error("Unable to initialize credential store, destroying container: {}", message);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Logging exception stack trace", e);
+            }
+
+            final Bundle frameworkBundle = context.getBundle(0);
+            frameworkBundle.stop();
+
             return false;
         }
+        final long openTime = System.nanoTime() - openStart;
+
+        final long resolveStart = System.nanoTime();
+        final Map<String, String> values = resolve(registry, credentialStores, new HashSet<>(references.values()));
+        final long resolveTime = System.nanoTime() - resolveStart;
+
+        final long applyStart = System.nanoTime();
+        final Map<String, String> replaced = replace(properties, references, values);
+        replacedProperties.putAll(replaced);
+        final long applyTime = System.nanoTime() - applyStart;
+
+        audit(replaced);
 
-        final Password password = passwordCredential.getPassword();
-        final ClearPassword clearPassword = password.castAs(ClearPassword.class);
-        final char[] rawClearPassword = clearPassword.getPassword();
+        LOG.info(
+                "Replaced {} of {} system properties referencing {} distinct aliases in {} credential stores"
+                    + " (snapshot: {} ms, store open: {} ms, resolve: {} ms, apply: {} ms)",
+                replacedProperties.size(), references.size(), values.size(), credentialStores.size(),
+                NANOSECONDS.toMillis(snapshotTime), NANOSECONDS.toMillis(openTime), NANOSECONDS.toMillis(resolveTime),
+                NANOSECONDS.toMillis(applyTime));
 
-        System.setProperty(key, String.valueOf(rawClearPassword));
+        final Map<String, Long> phases = phases(snapshotTime);
+        phases.put("storeOpen", openTime);
+        phases.put("resolve", resolveTime);
+        phases.put("apply", applyTime);
+        CredentialStoreMetrics.metrics().started(phases, replacedProperties.size());
+
+        final boolean watch = CredentialStoreHelper.isWatchEnabledFromEnvironment();
+
+        // when watching, values can be replaced later on so the filter is needed regardless
+        if (!replacedProperties.isEmpty() || watch) {
+            installFilteringRuntimeBean(context);
+        }
+
+        if (watch) {
+            watchForChanges(credentialStores.keySet());
+        }
 
         return true;
     }
+
+    /**
+     * Records the replaced system properties in the {@link AuditLog}.
+     */
+    private static void audit(final Map<String, String> replaced) {
+        replaced.forEach((key, original) -> AuditLog.audit()
+                .record(CredentialStoreHelper.toCredentialStoreAlias(original), key, Outcome.replaced, 0,
+                    AuditLog.SYSTEM_PROPERTIES));
+    }
+
+    /**
+     * Registers the {@link CredentialStoreMetrics} and the {@link AuditLog} with the {@link MBeanServer} from the OSGI
+     * {@link BundleContext}, if there is one.
+     */
+    private void registerManagementBeans(final BundleContext context) throws JMException {
+        final ServiceReference<MBeanServer> reference = context.getServiceReference(MBeanServer.class);
+        if (reference == null) {
+            return;
+        }
+
+        final MBeanServer mbeanServer = context.getService(reference);
+        if (mbeanServer == null) {
+            return;
+        }
+
+        final Map<String, Object> beans = new LinkedHashMap<>();
+        beans.put(CredentialStoreMetrics.OBJECT_NAME, CredentialStoreMetrics.metrics());
+        beans.put(AuditLog.OBJECT_NAME, AuditLog.audit());
+
+        for (final Entry<String, Object> bean : beans.entrySet()) {
+            final ObjectName name = ObjectName.getInstance(bean.getKey());
+            if (mbeanServer.isRegistered(name)) {
+                mbeanServer.unregisterMBean(name);
+            }
+
+            mbeanServer.registerMBean(bean.getValue(), name);
+            managementBeanNames.add(name);
+        }
+
+        mbeanServerReference = reference;
+    }
+
+    /**
+     * Loads the changed key stores from the Credential store and registers their services again, replacing the
+     * services of the previously loaded key stores.
+     */
+    private void refreshKeystores() {
+        final Map<String, CredentialStoreKeystore> refreshed;
+        try {
+            refreshed = keystores.refresh();
+        } catch (GeneralSecurityException | IOException e) {
+            LOG.error("Unable to load key stores from the credential store: {}", e.getMessage());
+            LOG.debug("Logging exception stack trace", e);
+
+            return;
+        }
+
+        synchronized (keystoreRegistrations) {
+            for (final CredentialStoreKeystore keystore : refreshed.values()) {
+                final String name = keystore.getName();
+
+                final List<ServiceRegistration<?>> previous = keystoreRegistrations.remove(name);
+                if (previous != null) {
+                    previous.forEach(ServiceRegistration::unregister);
+                }
+
+                final Hashtable<String, Object> properties = new Hashtable<>();
+                properties.put(CredentialStoreKeystore.NAME, name);
+
+                final List<ServiceRegistration<?>> registrations = new ArrayList<>();
+                registrations.add(bundleContext.registerService(CredentialStoreKeystore.class, keystore, properties));
+                registrations
+                        .add(bundleContext.registerService(SSLContext.class, keystore.getSSLContext(), properties));
+                registrations.add(bundleContext.registerService(KeyManagerFactory.class,
+                    keystore.getKeyManagerFactory(), properties));
+                keystoreRegistrations.put(name, registrations);
+
+                LOG.info("Registered key store {} from the credential store", name);
+            }
+        }
+    }
+
+    /**
+     * Loads the key decrypting the inline encrypted values from the Credential store, used by the
+     * {@link CredentialStoreConfigurationPlugin} and registered as the {@link CredentialCipherService}.
+     *
+     * @return the cipher or {@code null} if the key could not be loaded
+     */
+    private CredentialCipher loadCipher(final String cipherKey) {
+        try {
+            final CredentialStore credentialStore = registry.store(registry.storeNameOf(cipherKey)).credentialStore();
+
+            return CredentialCipher.load(credentialStore, registry.aliasOf(cipherKey));
+        } catch (GeneralSecurityException | IOException e) {
+            LOG.error("Unable to load the encryption key from the credential store: {}", e.getMessage());
+            LOG.debug("Logging exception stack trace", e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Registers the {@link CredentialStoreReady} service signaling the references have been resolved.
+     */
+    private void registerReady(final BundleContext context, final ResolutionMode resolutionMode) {
+        final Hashtable<String, Object> readyProperties = new Hashtable<>();
+        readyProperties.put(CredentialStoreReady.RESOLUTION_MODE, resolutionMode.name());
+
+        readyRegistration = context.registerService(CredentialStoreReady.class, replacedProperties::size,
+            readyProperties);
+    }
+
+    /**
+     * Starts the startup phase breakdown with the phases performed in every resolution mode.
+     */
+    private static Map<String, Long> phases(final long snapshotTime) {
+        final Map<String, Long> phases = new LinkedHashMap<>();
+        phases.put("snapshot", snapshotTime);
+
+        return phases;
+    }
+
+    /**
+     * Determines the resolution mode from the environment variables, falling back to the {@link ResolutionMode#eager}
+     * resolution mode if the configured resolution mode is not supported.
+     */
+    private static ResolutionMode resolutionMode() {
+        try {
+            return CredentialStoreHelper.resolutionModeFromEnvironment();
+        } catch (final IllegalArgumentException e) {
+            LOG.error("Unsupported credential store resolution mode, resolving eagerly: {}", e.getMessage());
+
+            return ResolutionMode.eager;
+        }
+    }
+
+    /**
+     * Starts watching the files of the given Credential stores for changes, for those Credential stores kept in a
+     * file.
+     */
+    private void watchForChanges(final Set<String> storeNames) throws IOException {
+        for (final String storeName : storeNames) {
+            if (!watchedStores.add(storeName)) {
+                continue;
+            }
+
+            final Path location = registry.store(storeName).location();
+            if (location == null) {
+                LOG.warn("Credential store location is not known, not watching for changes");
+
+                continue;
+            }
+
+            watchers.add(new CredentialStoreWatcher(location, RELOAD_DEBOUNCE_MILLIS, this::reload));
+
+            LOG.info("Watching {} for changes", location);
+        }
+    }
 }
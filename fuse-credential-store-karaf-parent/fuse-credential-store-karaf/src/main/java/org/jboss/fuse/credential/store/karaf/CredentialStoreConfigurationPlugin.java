@@ -0,0 +1,212 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialCipherService;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.util.CredentialCipher;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.ConfigurationPlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * {@link ConfigurationPlugin} that replaces the Credential store references given as configuration values with the
+ * values from the Credential store before the configuration is delivered to the managed services. A Credential store
+ * is opened only when the first reference to it is encountered, and the values are cached per reference so many
+ * configurations referencing the same alias retrieve it from the Credential store only once. The cached values of a
+ * Credential store are discarded when it is reloaded, configurations delivered before that keep the values they were
+ * given. Inline encrypted {@code ENC:} values are decrypted with the {@link CredentialCipherService} set before the
+ * plugin is registered.
+ */
+final class CredentialStoreConfigurationPlugin implements ConfigurationPlugin {
+
+    /**
+     * Invoked last, within the range of plugins allowed to modify the configuration, so the references introduced by
+     * other plugins are also resolved.
+     */
+    static final int RANKING = 1000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialStoreConfigurationPlugin.class);
+
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    private final Map<String, CredentialStore> cachedFrom = new ConcurrentHashMap<>();
+
+    private volatile CredentialCipherService cipher;
+
+    private final CredentialStoreRegistry registry;
+
+    CredentialStoreConfigurationPlugin(final CredentialStoreRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Sets the cipher decrypting the inline encrypted {@code ENC:} values, until set those values are left as they
+     * are.
+     *
+     * @param cipher
+     *            cipher using the key from the Credential store
+     */
+    void cipher(final CredentialCipherService cipher) {
+        this.cipher = cipher;
+    }
+
+    /**
+     * Replaces the values of the configuration given in Credential store reference format with the values from the
+     * Credential store. References to aliases not present in the Credential store, or to Credential stores that cannot
+     * be opened, are left as they are.
+     *
+     * @param reference
+     *            reference to the managed service the configuration is delivered to
+     * @param properties
+     *            configuration properties, modified in place
+     */
+    @Override
+    public void modifyConfiguration(final ServiceReference<?> reference, final Dictionary<String, Object> properties) {
+        // Credential stores used by this configuration, null if the Credential store could not be opened
+        final Map<String, CredentialStore> credentialStores = new HashMap<>();
+
+        for (final String key : Collections.list(properties.keys())) {
+            final Object value = properties.get(key);
+
+            if ((value instanceof String) && CredentialCipher.isEncrypted((String) value)) {
+                decrypt(properties, key, (String) value);
+
+                continue;
+            }
+
+            if (!(value instanceof String) || !CredentialStoreHelper.couldBeCredentialStoreAlias((String) value)) {
+                continue;
+            }
+
+            final String storeReference = CredentialStoreHelper.toCredentialStoreAlias((String) value);
+            final String storeName = registry.storeNameOf(storeReference);
+
+            if (!credentialStores.containsKey(storeName)) {
+                credentialStores.put(storeName, currentCredentialStore(storeName));
+            }
+
+            final CredentialStore credentialStore = credentialStores.get(storeName);
+            if (credentialStore == null) {
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            final String resolved = resolve(credentialStore, storeName, storeReference);
+            AuditLog.audit().recordSince(storeReference, subjectOf(reference, key),
+                resolved == null ? Outcome.missing : Outcome.retrieved, start, callerOf(reference));
+
+            if (resolved == null) {
+                LOG.warn("Configuration property {} references alias {} not found in the credential store", key,
+                    storeReference);
+            } else {
+                properties.put(key, resolved);
+            }
+        }
+    }
+
+    /**
+     * Returns the symbolic name of the bundle that registered the managed service.
+     */
+    private static String callerOf(final ServiceReference<?> reference) {
+        final Bundle bundle = reference == null ? null : reference.getBundle();
+
+        return bundle == null ? null : bundle.getSymbolicName();
+    }
+
+    /**
+     * Returns the configuration PID and key of the configuration property.
+     */
+    private static String subjectOf(final ServiceReference<?> reference, final String key) {
+        final Object pid = reference == null ? null : reference.getProperty(Constants.SERVICE_PID);
+
+        return pid == null ? key : pid + "/" + key;
+    }
+
+    private void decrypt(final Dictionary<String, Object> properties, final String key, final String value) {
+        final CredentialCipherService currentCipher = cipher;
+        if (currentCipher == null) {
+            return;
+        }
+
+        try {
+            properties.put(key, currentCipher.decrypt(value));
+        } catch (final GeneralSecurityException | IllegalArgumentException e) {
+            LOG.warn("Unable to decrypt the value of configuration property {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the current Credential store with the given name, discarding its cached values if it has been reloaded.
+     */
+    private CredentialStore currentCredentialStore(final String storeName) {
+        final CredentialStore credentialStore;
+        try {
+            credentialStore = registry.store(storeName).credentialStore();
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+            // IllegalArgumentException signals invalid Credential store configuration in the environment variables
+            LOG.warn("Unable to open credential store, configuration values referencing it will not be replaced: {}",
+                e.getMessage());
+            LOG.debug("Logging exception stack trace", e);
+
+            return null;
+        }
+
+        synchronized (cache) {
+            if (credentialStore != cachedFrom.get(storeName)) {
+                cache.keySet().removeIf(reference -> storeName.equals(registry.storeNameOf(reference)));
+                cachedFrom.put(storeName, credentialStore);
+            }
+        }
+
+        return credentialStore;
+    }
+
+    private String resolve(final CredentialStore credentialStore, final String storeName, final String reference) {
+        final String cached = cache.get(reference);
+        if (cached != null) {
+            CredentialStoreMetrics.metrics().cacheHit();
+
+            return cached;
+        }
+
+        CredentialStoreMetrics.metrics().cacheMiss();
+
+        // missing aliases are not cached, they might be added to the Credential store later on
+        final String value = CredentialStoreHelper.retrieve(credentialStore, registry.aliasOf(reference));
+        if ((value != null) && (credentialStore == cachedFrom.get(storeName))) {
+            cache.putIfAbsent(reference, value);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the Credential store file for changes using the {@link WatchService} of the directory containing it. As
+ * writing the Credential store can produce several file system events in short succession, the given action is invoked
+ * on a background thread only after no further changes were observed for the debounce period. The shard files of the
+ * {@code ShardedCredentialStore}, named by appending the shard number to the Credential store file name, are watched
+ * as well.
+ */
+final class CredentialStoreWatcher implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialStoreWatcher.class);
+
+    private final long debounceMillis;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "credential-store-reload");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final Path fileName;
+
+    private final Runnable onChange;
+
+    private ScheduledFuture<?> pending;
+
+    private final WatchService watchService;
+
+    CredentialStoreWatcher(final Path location, final long debounceMillis, final Runnable onChange)
+            throws IOException {
+        final Path absoluteLocation = location.toAbsolutePath();
+        final Path directory = absoluteLocation.getParent();
+
+        fileName = absoluteLocation.getFileName();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+        final Thread watcher = new Thread(this::watch, "credential-store-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Determines if the changed file is the Credential store file or one of its shard files.
+     *
+     * @param fileName
+     *            file name of the Credential store file
+     * @param changed
+     *            relative path of the changed file
+     * @return true if the changed file belongs to the Credential store
+     */
+    static boolean isCredentialStoreFile(final Path fileName, final Object changed) {
+        if (fileName.equals(changed)) {
+            return true;
+        }
+
+        final String name = String.valueOf(changed);
+        final String shardPrefix = fileName + ".";
+        if ((name.length() == shardPrefix.length()) || !name.startsWith(shardPrefix)) {
+            return false;
+        }
+
+        return name.substring(shardPrefix.length()).chars().allMatch(Character::isDigit);
+    }
+
+    private synchronized void changed() {
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        if (pending != null) {
+            pending.cancel(false);
+        }
+
+        pending = executor.schedule(() -> {
+            try {
+                onChange.run();
+            } catch (final RuntimeException e) {
+                LOG.warn("Unable to reload credential store: {}", e.getMessage());
+                LOG.debug("Logging exception stack trace", e);
+            }
+        }, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if ((event.kind() == OVERFLOW) || isCredentialStoreFile(fileName, event.context())) {
+                        changed();
+                    }
+                }
+
+                if (!key.reset()) {
+                    LOG.warn("Credential store directory is no longer accessible, no longer watching for changes");
+                    return;
+                }
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException e) {
+            // closed, stop watching
+        }
+    }
+}
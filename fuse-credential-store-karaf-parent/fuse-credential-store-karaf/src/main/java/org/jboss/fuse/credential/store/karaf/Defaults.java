@@ -24,12 +24,32 @@ import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
  */
 public final class Defaults {
 
+    /**
+     * Alias of the key encrypting the inline encrypted {@code ENC:} values
+     */
+    public static final String CIPHER_KEY_ALIAS = "cipher.key";
+
     public static final String CREDENTIAL_STORE_ALGORITHM = KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE;
 
     public static final ProtectionType CREDENTIAL_TYPE = ProtectionType.masked;
 
     public static final String PROVIDER = ProviderHelper.WILDFLY_PROVIDER;
 
+    /**
+     * Maximum number of secrets cached by the {@code CredentialResolver} service
+     */
+    public static final int RESOLVER_CACHE_SIZE = 1000;
+
+    /**
+     * Seconds the {@code CredentialResolver} service caches the resolved secrets
+     */
+    public static final long RESOLVER_CACHE_TTL = 300;
+
+    /**
+     * Seconds the {@code CredentialResolver} service caches the aliases found missing
+     */
+    public static final long RESOLVER_NEGATIVE_CACHE_TTL = 30;
+
     private Defaults() {
         // constant holder
     }
@@ -0,0 +1,191 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.lang.management.RuntimeMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.management.ObjectName;
+
+/**
+ * {@link RuntimeMXBean} that delegates to the original, platform, {@link RuntimeMXBean} except for the system
+ * properties, which are presented with the values from the Credential store masked. When the system properties are the
+ * {@link ResolvingProperties} installed by the lazy resolution mode, which count their modifications, the masked system
+ * properties are kept as an immutable snapshot, so frequent polling of the system properties through JMX does not copy
+ * them each time, rebuilt whenever the system properties are replaced or modified. Changes to other system properties
+ * can not be detected without going through all of them, so those are masked on each access.
+ */
+final class FilteringRuntimeMXBean implements RuntimeMXBean {
+
+    /**
+     * Masked system properties along with the system properties they were built from and the number of their
+     * modifications at that time, used to detect changes.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, String> masked;
+
+        private final long modifications;
+
+        private final ResolvingProperties source;
+
+        private Snapshot(final ResolvingProperties source, final long modifications,
+                final Map<String, String> masked) {
+            this.source = source;
+            this.modifications = modifications;
+            this.masked = masked;
+        }
+
+        private boolean isOf(final Properties properties, final long currentModifications) {
+            return (source == properties) && (modifications == currentModifications);
+        }
+    }
+
+    private final RuntimeMXBean delegate;
+
+    private final Set<String> replaced;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates the filtering bean.
+     *
+     * @param delegate
+     *            the original {@link RuntimeMXBean}
+     * @param replaced
+     *            live view of the keys of the system properties whose values were replaced with the values from the
+     *            Credential store
+     */
+    FilteringRuntimeMXBean(final RuntimeMXBean delegate, final Set<String> replaced) {
+        this.delegate = delegate;
+        this.replaced = replaced;
+    }
+
+    @Override
+    public String getBootClassPath() {
+        return delegate.getBootClassPath();
+    }
+
+    @Override
+    public String getClassPath() {
+        return delegate.getClassPath();
+    }
+
+    @Override
+    public List<String> getInputArguments() {
+        return delegate.getInputArguments();
+    }
+
+    @Override
+    public String getLibraryPath() {
+        return delegate.getLibraryPath();
+    }
+
+    @Override
+    public String getManagementSpecVersion() {
+        return delegate.getManagementSpecVersion();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public ObjectName getObjectName() {
+        return delegate.getObjectName();
+    }
+
+    @Override
+    public String getSpecName() {
+        return delegate.getSpecName();
+    }
+
+    @Override
+    public String getSpecVendor() {
+        return delegate.getSpecVendor();
+    }
+
+    @Override
+    public String getSpecVersion() {
+        return delegate.getSpecVersion();
+    }
+
+    @Override
+    public long getStartTime() {
+        return delegate.getStartTime();
+    }
+
+    /**
+     * Returns the system properties with the values from the Credential store masked. The values are read as set, i.e.
+     * without the resolution performed by {@link ResolvingProperties}.
+     *
+     * @return immutable masked system properties
+     */
+    @Override
+    public Map<String, String> getSystemProperties() {
+        final Properties properties = System.getProperties();
+
+        if (!(properties instanceof ResolvingProperties)) {
+            return Collections.unmodifiableMap(Activator.maskedSystemProperties(properties, replaced));
+        }
+
+        final ResolvingProperties resolvingProperties = (ResolvingProperties) properties;
+        // read before the properties are masked, so properties modified meanwhile cause another rebuild
+        final long modifications = resolvingProperties.modifications();
+
+        final Snapshot current = snapshot;
+        if ((current != null) && current.isOf(properties, modifications)) {
+            return current.masked;
+        }
+
+        // concurrent readers might rebuild the snapshot at the same time, they build the same snapshot
+        final Snapshot rebuilt = new Snapshot(resolvingProperties, modifications,
+            Collections.unmodifiableMap(Activator.maskedSystemProperties(properties, replaced)));
+        snapshot = rebuilt;
+
+        return rebuilt.masked;
+    }
+
+    @Override
+    public long getUptime() {
+        return delegate.getUptime();
+    }
+
+    @Override
+    public String getVmName() {
+        return delegate.getVmName();
+    }
+
+    @Override
+    public String getVmVendor() {
+        return delegate.getVmVendor();
+    }
+
+    @Override
+    public String getVmVersion() {
+        return delegate.getVmVersion();
+    }
+
+    @Override
+    public boolean isBootClassPathSupported() {
+        return delegate.isBootClassPathSupported();
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * {@link Properties} that keep the Credential store references as values and resolve them from the Credential store
+ * the first time they are accessed via {@link #getProperty(String)} or {@link #get(Object)}. Resolved values are cached
+ * per reference, so each secret is retrieved from the Credential store only once. A Credential store is opened by the
+ * first access to a property referencing it, so Credential stores are not opened when the properties are installed.
+ * Credential stores that could not be opened and references to missing aliases are remembered as well, and left
+ * unresolved without trying again until the Credential stores are {@link #reloaded()}.
+ * As the references are kept, any property set to a Credential store reference after this has been installed is
+ * resolved as well.
+ *
+ * Iterating over the properties, for instance via {@link #entrySet()}, yields the references, not the resolved values.
+ *
+ * Modifications through the methods of the properties, not through the views such as {@link #entrySet()}, are counted,
+ * so the {@link FilteringRuntimeMXBean} can tell cheaply whether they changed.
+ */
+final class ResolvingProperties extends Properties {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResolvingProperties.class);
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<String, CredentialStore> credentialStores = new ConcurrentHashMap<>();
+
+    private final transient Set<String> failedStores = ConcurrentHashMap.newKeySet();
+
+    private final transient Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    private final transient AtomicLong modifications = new AtomicLong();
+
+    private final transient CredentialStoreRegistry registry;
+
+    private final transient Map<String, String> resolved = new ConcurrentHashMap<>();
+
+    ResolvingProperties(final Map<?, ?> properties, final CredentialStoreRegistry registry) {
+        this.registry = registry;
+
+        putAll(properties);
+    }
+
+    /**
+     * Replaces the given system properties with {@link ResolvingProperties} holding the same properties. The given
+     * properties are locked while being copied and replaced, so no property set concurrently is lost. Properties set
+     * through the replaced properties afterwards, by threads that obtained them before the replacement, are carried
+     * over once more.
+     *
+     * @param properties
+     *            current system properties
+     * @param registry
+     *            registry of the Credential stores to resolve the references from
+     * @return the installed properties
+     */
+    static ResolvingProperties install(final Properties properties, final CredentialStoreRegistry registry) {
+        final Map<Object, Object> copied;
+        final ResolvingProperties resolvingProperties;
+        synchronized (properties) {
+            copied = new HashMap<>(properties);
+            resolvingProperties = new ResolvingProperties(copied, registry);
+            System.setProperties(resolvingProperties);
+        }
+
+        synchronized (properties) {
+            properties.forEach((key, value) -> {
+                if (!value.equals(copied.get(key))) {
+                    resolvingProperties.put(key, value);
+                }
+            });
+
+            copied.keySet().stream().filter(key -> !properties.containsKey(key))
+                .forEach(resolvingProperties::remove);
+        }
+
+        return resolvingProperties;
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            super.clear();
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object compute(final Object key,
+            final BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+        try {
+            return super.compute(key, remappingFunction);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object computeIfAbsent(final Object key,
+            final Function<? super Object, ? extends Object> mappingFunction) {
+        try {
+            return super.computeIfAbsent(key, mappingFunction);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object computeIfPresent(final Object key,
+            final BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+        try {
+            return super.computeIfPresent(key, remappingFunction);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final Object value = super.get(key);
+
+        if (value instanceof String) {
+            return resolve(key, (String) value);
+        }
+
+        return value;
+    }
+
+    @Override
+    public String getProperty(final String key) {
+        return resolve(key, super.getProperty(key));
+    }
+
+    @Override
+    public synchronized Object merge(final Object key, final Object value,
+            final BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+        try {
+            return super.merge(key, value, remappingFunction);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object put(final Object key, final Object value) {
+        try {
+            return super.put(key, value);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void putAll(final Map<?, ?> map) {
+        try {
+            super.putAll(map);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object putIfAbsent(final Object key, final Object value) {
+        try {
+            return super.putIfAbsent(key, value);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object remove(final Object key) {
+        try {
+            return super.remove(key);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(final Object key, final Object value) {
+        try {
+            return super.remove(key, value);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Object replace(final Object key, final Object value) {
+        try {
+            return super.replace(key, value);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized boolean replace(final Object key, final Object oldValue, final Object newValue) {
+        try {
+            return super.replace(key, oldValue, newValue);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void replaceAll(
+            final BiFunction<? super Object, ? super Object, ? extends Object> function) {
+        try {
+            super.replaceAll(function);
+        } finally {
+            modifications.incrementAndGet();
+        }
+    }
+
+    /**
+     * Number of modifications made so far, increases with each modification.
+     *
+     * @return the number of modifications
+     */
+    long modifications() {
+        return modifications.get();
+    }
+
+    /**
+     * Discards the Credential stores, any values resolved so far and the remembered failures, so the properties are
+     * resolved again from the reloaded Credential stores on next access.
+     */
+    void reloaded() {
+        credentialStores.clear();
+        failedStores.clear();
+        missing.clear();
+        resolved.clear();
+    }
+
+    private CredentialStore credentialStoreFor(final String storeName) {
+        final CredentialStore opened = credentialStores.get(storeName);
+        if ((opened != null) || failedStores.contains(storeName)) {
+            return opened;
+        }
+
+        try {
+            final CredentialStore credentialStore = registry.store(storeName).credentialStore();
+            credentialStores.putIfAbsent(storeName, credentialStore);
+
+            return credentialStore;
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+            // IllegalArgumentException signals invalid Credential store configuration in the environment variables
+            if (failedStores.add(storeName)) {
+                LOG.warn("Unable to open credential store, system properties referencing it will not be resolved: {}",
+                    e.getMessage());
+                LOG.debug("Logging exception stack trace", e);
+            }
+
+            return null;
+        }
+    }
+
+    private String resolve(final Object key, final String value) {
+        if (!CredentialStoreHelper.couldBeCredentialStoreAlias(value)) {
+            return value;
+        }
+
+        final String reference = CredentialStoreHelper.toCredentialStoreAlias(value);
+
+        final String cached = resolved.get(reference);
+        if (cached != null) {
+            CredentialStoreMetrics.metrics().cacheHit();
+
+            return cached;
+        }
+
+        if (missing.contains(reference)) {
+            CredentialStoreMetrics.metrics().cacheHit();
+
+            return value;
+        }
+
+        CredentialStoreMetrics.metrics().cacheMiss();
+
+        final CredentialStore credentialStore = credentialStoreFor(registry.storeNameOf(reference));
+        if (credentialStore == null) {
+            // the Credential store could not be opened, the reference is left as is
+            return value;
+        }
+
+        final long start = System.nanoTime();
+        final String retrieved = CredentialStoreHelper.retrieve(credentialStore, registry.aliasOf(reference));
+        AuditLog.audit().recordSince(reference, String.valueOf(key),
+            retrieved == null ? Outcome.missing : Outcome.retrieved, start, AuditLog.SYSTEM_PROPERTIES);
+
+        if (retrieved == null) {
+            // not in the Credential store, the reference is left as is
+            missing.add(reference);
+
+            return value;
+        }
+
+        resolved.putIfAbsent(reference, retrieved);
+
+        return retrieved;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.api;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * OSGI service encrypting and decrypting inline encrypted values, given as {@code ENC:<base64>}, with the secret key
+ * held in the Credential store. The key is loaded once and the initialized ciphers are reused, so the service can be
+ * invoked whenever an encrypted value is read.
+ */
+public interface CredentialCipherService {
+
+    /**
+     * Prefix of the inline encrypted values.
+     */
+    String PREFIX = "ENC:";
+
+    /**
+     * Decrypts the given inline encrypted value.
+     *
+     * @param value
+     *            value in {@code ENC:<base64>} format
+     * @return the clear text value
+     * @throws GeneralSecurityException
+     *             if the value was not encrypted with the key held in the Credential store or is corrupt
+     * @throws IllegalArgumentException
+     *             if the value is not in {@code ENC:<base64>} format
+     */
+    String decrypt(String value) throws GeneralSecurityException;
+
+    /**
+     * Encrypts the given value.
+     *
+     * @param value
+     *            clear text value
+     * @return inline encrypted value in {@code ENC:<base64>} format
+     * @throws GeneralSecurityException
+     */
+    String encrypt(String value) throws GeneralSecurityException;
+
+}
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.api;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * OSGI service resolving secrets from the Credential stores at runtime. The resolved values, and the aliases found
+ * missing, are cached for a limited time, so the service can be invoked whenever a secret is needed without reading
+ * the Credential store each time.
+ */
+public interface CredentialResolver {
+
+    /**
+     * Discards all cached values, so the secrets are resolved from the Credential stores on next access.
+     */
+    void invalidate();
+
+    /**
+     * Resolves the secret stored under the given alias.
+     *
+     * @param reference
+     *            alias of the secret, optionally prefixed by {@code CS:} and by the name of the Credential store, i.e.
+     *            {@code CS:name/alias}
+     * @return the secret or {@code null} if there is no such alias in the Credential store
+     * @throws GeneralSecurityException
+     *             if the Credential store could not be opened
+     * @throws IOException
+     */
+    String resolve(String reference) throws GeneralSecurityException, IOException;
+
+}
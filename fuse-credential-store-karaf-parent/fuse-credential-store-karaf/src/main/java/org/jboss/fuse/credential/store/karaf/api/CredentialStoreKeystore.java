@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.api;
+
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * OSGI service holding a key store whose content and passwords are kept in the Credential store, loaded once and
+ * reloaded only when the Credential store changes. Along with it the {@link SSLContext} and {@link KeyManagerFactory}
+ * initialized from the key store are registered as services, all with the {@value #NAME} service property set to the
+ * name of the key store. When the key store changes in the Credential store the services are registered again, so
+ * consumers should track them.
+ */
+public interface CredentialStoreKeystore {
+
+    /**
+     * Service property holding the name of the key store.
+     */
+    String NAME = "credential.store.keystore";
+
+    /**
+     * Returns the {@link KeyManagerFactory} of the default algorithm initialized with the key store and key password.
+     *
+     * @return the key manager factory
+     */
+    KeyManagerFactory getKeyManagerFactory();
+
+    /**
+     * Returns the loaded key store, it must not be modified.
+     *
+     * @return the key store
+     */
+    KeyStore getKeystore();
+
+    String getName();
+
+    /**
+     * Returns the {@code TLS} {@link SSLContext} initialized with the key and trust managers of the key store.
+     *
+     * @return the SSL context
+     */
+    SSLContext getSSLContext();
+
+    /**
+     * Returns the {@link TrustManagerFactory} of the default algorithm initialized with the key store.
+     *
+     * @return the trust manager factory
+     */
+    TrustManagerFactory getTrustManagerFactory();
+
+}
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.api;
+
+/**
+ * OSGI service registered once the Credential store references in the system properties have been resolved. In the
+ * {@code async} resolution mode the references are resolved in the background while the other bundles keep starting,
+ * bundles reading secrets from the system properties should depend on this service so they start only once the
+ * values are available.
+ */
+public interface CredentialStoreReady {
+
+    /**
+     * Service property holding the name of the resolution mode the references were resolved in.
+     */
+    String RESOLUTION_MODE = "credential.store.resolution";
+
+    /**
+     * Returns the number of system properties whose values were replaced with the values from the Credential store. In
+     * the {@code lazy} resolution mode the values are resolved on access and no properties are replaced.
+     *
+     * @return number of replaced system properties
+     */
+    int replacedProperties();
+
+}
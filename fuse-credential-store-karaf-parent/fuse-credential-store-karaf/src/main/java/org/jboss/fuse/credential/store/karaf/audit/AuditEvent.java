@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.audit;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable record of a secret being looked up in, replaced from, stored in or removed from the Credential store. The
+ * secret value is never part of the event.
+ */
+public final class AuditEvent {
+
+    /**
+     * What happened to the secret.
+     */
+    public enum Outcome {
+        /**
+         * The alias was not found in the Credential store
+         */
+        missing,
+
+        /**
+         * The alias was removed from the Credential store
+         */
+        removed,
+
+        /**
+         * The value of a system property was replaced with the secret
+         */
+        replaced,
+
+        /**
+         * The secret was retrieved from the Credential store
+         */
+        retrieved,
+
+        /**
+         * The secret was stored in the Credential store
+         */
+        stored
+    }
+
+    private final String alias;
+
+    private final String caller;
+
+    private final long durationMicros;
+
+    private final Outcome outcome;
+
+    private final long sequence;
+
+    private final String subject;
+
+    private final long time;
+
+    @ConstructorProperties({"sequence", "time", "alias", "subject", "outcome", "durationMicros", "caller"})
+    public AuditEvent(final long sequence, final long time, final String alias, final String subject,
+            final Outcome outcome, final long durationMicros, final String caller) {
+        this.sequence = sequence;
+        this.time = time;
+        this.alias = alias;
+        this.subject = subject;
+        this.outcome = outcome;
+        this.durationMicros = durationMicros;
+        this.caller = caller;
+    }
+
+    /**
+     * The Credential store reference, without the {@code CS:} prefix, i.e. the alias optionally prefixed by the name of
+     * the Credential store.
+     *
+     * @return the alias
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Who asked for the secret: {@code system-properties}, the symbolic name of the bundle the configuration was
+     * delivered to or the shell command.
+     *
+     * @return the caller
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    /**
+     * Time taken by the Credential store operation, zero for events not performing any.
+     *
+     * @return duration in microseconds
+     */
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Position of the event in the sequence of all recorded events.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * What the secret was used for: the system property key, the configuration PID and property key, or {@code null}.
+     *
+     * @return the subject
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * When the event was recorded.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+}
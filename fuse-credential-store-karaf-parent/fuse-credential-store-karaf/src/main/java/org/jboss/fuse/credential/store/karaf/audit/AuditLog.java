@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+
+/**
+ * Fixed size log of the most recent {@link AuditEvent}s, kept in memory instead of being logged so recording does not
+ * slow down the resolution and no secret can end up in the log files. The events are kept in a ring buffer: recording
+ * claims the next sequence number with a single atomic increment and publishes the event into the slot of that
+ * sequence, overwriting the oldest event, without taking any locks. An event only replaces an older one, so a writer
+ * delayed between claiming its sequence number and publishing cannot overwrite a newer event sharing its slot. Readers
+ * copy the events whose sequence number still matches their slot, so events overwritten or not yet published while
+ * reading are skipped.
+ */
+public final class AuditLog implements AuditLogMXBean {
+
+    /**
+     * JMX object name the audit log is registered under.
+     */
+    public static final String OBJECT_NAME = "org.jboss.fuse.credential.store:type=AuditLog";
+
+    /**
+     * Caller of the events recorded while resolving the system properties.
+     */
+    public static final String SYSTEM_PROPERTIES = "system-properties";
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final AuditLog INSTANCE = new AuditLog(DEFAULT_CAPACITY);
+
+    private final int mask;
+
+    private final AtomicLong next = new AtomicLong();
+
+    private final AtomicReferenceArray<AuditEvent> slots;
+
+    /**
+     * Creates the audit log retaining the given number of events, rounded up to the next power of two.
+     *
+     * @param capacity
+     *            number of events to retain
+     */
+    AuditLog(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public static AuditLog audit() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    @Override
+    public List<AuditEvent> getEvents() {
+        final long end = next.get();
+        final long start = Math.max(0, end - slots.length());
+
+        final List<AuditEvent> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            final AuditEvent event = slots.get((int) (sequence & mask));
+
+            if ((event != null) && (event.getSequence() == sequence)) {
+                events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    @Override
+    public long getRecordedEvents() {
+        return next.get();
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param alias
+     *            the Credential store reference, without the {@code CS:} prefix
+     * @param subject
+     *            what the secret was used for, can be {@code null}
+     * @param outcome
+     *            what happened to the secret
+     * @param durationMicros
+     *            time taken by the Credential store operation, zero if none was performed
+     * @param caller
+     *            who asked for the secret
+     */
+    public void record(final String alias, final String subject, final Outcome outcome, final long durationMicros,
+            final String caller) {
+        final long sequence = next.getAndIncrement();
+
+        publish(new AuditEvent(sequence, System.currentTimeMillis(), alias, subject, outcome, durationMicros, caller));
+    }
+
+    /**
+     * Records an event of a Credential store operation that started at the given time.
+     *
+     * @param alias
+     *            the Credential store reference, without the {@code CS:} prefix
+     * @param subject
+     *            what the secret was used for, can be {@code null}
+     * @param outcome
+     *            what happened to the secret
+     * @param startNanos
+     *            the {@link System#nanoTime()} when the operation started
+     * @param caller
+     *            who asked for the secret
+     */
+    public void recordSince(final String alias, final String subject, final Outcome outcome, final long startNanos,
+            final String caller) {
+        record(alias, subject, outcome, NANOSECONDS.toMicros(System.nanoTime() - startNanos), caller);
+    }
+
+    /**
+     * Publishes the event into the slot of its sequence number, unless a newer event already took the slot.
+     */
+    void publish(final AuditEvent event) {
+        final int slot = (int) (event.getSequence() & mask);
+
+        AuditEvent current = slots.get(slot);
+        while ((current == null) || (current.getSequence() < event.getSequence())) {
+            if (slots.compareAndSet(slot, current, event)) {
+                return;
+            }
+
+            current = slots.get(slot);
+        }
+    }
+}
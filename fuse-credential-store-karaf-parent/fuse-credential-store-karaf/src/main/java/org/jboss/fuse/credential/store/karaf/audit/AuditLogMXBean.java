@@ -0,0 +1,41 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.audit;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link AuditLog}, registered under {@value AuditLog#OBJECT_NAME}.
+ */
+public interface AuditLogMXBean {
+
+    int getCapacity();
+
+    /**
+     * Returns the retained events, oldest first.
+     *
+     * @return the events
+     */
+    List<AuditEvent> getEvents();
+
+    /**
+     * Returns the number of events recorded since the start, including those no longer retained.
+     *
+     * @return number of recorded events
+     */
+    long getRecordedEvents();
+
+}
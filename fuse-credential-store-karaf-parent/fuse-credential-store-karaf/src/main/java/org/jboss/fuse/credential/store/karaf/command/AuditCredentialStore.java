@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.table.Col;
+import org.apache.karaf.shell.support.table.ShellTable;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+
+/**
+ * Displays the most recent secret resolution events from the {@link AuditLog}, oldest first. The events can be
+ * filtered by alias and outcome.
+ */
+@Command(scope = "credential-store", name = "audit",
+        description = "Show the most recent lookups and changes of the secrets in the credential store")
+@Service
+public class AuditCredentialStore implements Action {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    @Option(name = "-a", aliases = {"--alias"},
+            description = "Show only the events of aliases matching the glob pattern, * matches any characters,"
+                + " ? a single character",
+            multiValued = false)
+    String alias;
+
+    @Option(name = "-n", aliases = {"--limit"}, description = "Show only the given number of most recent events",
+            multiValued = false)
+    int limit = -1;
+
+    @Option(name = "-o", aliases = {"--outcome"},
+            description = "Show only the events with the outcome: missing, removed, replaced, retrieved or stored",
+            multiValued = false)
+    Outcome outcome;
+
+    @Override
+    public Object execute() throws Exception {
+        final ShellTable table = new ShellTable();
+        table.column(new Col("Time"));
+        table.column(new Col("Outcome"));
+        table.column(new Col("Alias"));
+        table.column(new Col("Subject"));
+        table.column(new Col("Caller"));
+        table.column(new Col("Duration (us)").alignRight());
+
+        for (final AuditEvent event : select(AuditLog.audit().getEvents(), alias, outcome, limit)) {
+            table.addRow().addContent(TIME_FORMAT.format(Instant.ofEpochMilli(event.getTime())), event.getOutcome(),
+                event.getAlias(), event.getSubject() == null ? "" : event.getSubject(),
+                event.getCaller() == null ? "" : event.getCaller(), event.getDurationMicros());
+        }
+
+        table.print(System.out);
+
+        return null;
+    }
+
+    /**
+     * Selects the events matching the alias pattern and outcome, keeping the given number of most recent ones.
+     *
+     * @param events
+     *            events, oldest first
+     * @param glob
+     *            glob pattern the aliases must match, {@code null} to match all
+     * @param outcome
+     *            outcome to select, {@code null} to select all
+     * @param limit
+     *            maximum number of events, negative for no limit
+     * @return the selected events, oldest first
+     */
+    static List<AuditEvent> select(final List<AuditEvent> events, final String glob, final Outcome outcome,
+            final int limit) {
+        final Predicate<String> aliasFilter = ListCredentialStore.filter(glob, null);
+
+        final List<AuditEvent> selected = events.stream()
+                .filter(e -> ((outcome == null) || (e.getOutcome() == outcome)) && aliasFilter.test(e.getAlias()))
+                .collect(Collectors.toList());
+
+        if ((limit < 0) || (selected.size() <= limit)) {
+            return selected;
+        }
+
+        return selected.subList(selected.size() - limit, selected.size());
+    }
+}
@@ -114,7 +114,7 @@ public final class CreateCredentialStore implements Action {
      */
     static void createCredentialStore(final String algorithm, final Map<String, String> givenAttributes,
             final CredentialSource credentialSource, final Provider provider) throws GeneralSecurityException {
-        final CredentialStore credentialStore = CredentialStore.getInstance(algorithm, provider);
+        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreInstance(algorithm, provider);
 
         final CredentialStore.ProtectionParameter protectionParameter = new CredentialStore.CredentialSourceProtectionParameter(
                 credentialSource);
@@ -154,6 +154,11 @@ public final class CreateCredentialStore implements Action {
                     table, buffy);
         }
 
+        if (!Defaults.CREDENTIAL_STORE_ALGORITHM.equals(storeAlgorithm)) {
+            appendConfigurationTo(Collections.singletonMap("CREDENTIAL_STORE_ALGORITHM", storeAlgorithm), table,
+                    buffy);
+        }
+
         appendConfigurationTo(credentialSourceConfiguration, table, buffy);
         appendConfigurationTo(attributes.entrySet().stream()
                 .collect(Collectors.toMap(e -> "CREDENTIAL_STORE_ATTR_" + e.getKey(), Entry::getValue)), table, buffy);
@@ -17,31 +17,27 @@ package org.jboss.fuse.credential.store.karaf.command;
 
 import java.security.Provider.Service;
 import java.security.Security;
-import java.util.Arrays;
 import java.util.List;
 
 import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Completer;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.jboss.fuse.credential.store.karaf.util.ProviderCatalog;
 import org.wildfly.security.credential.store.CredentialStore;
 
 /**
  * A {@link Completer} that auto completes Credential store algorithms. Looks for all implementations of
- * {@link CredentialStore} in the providers registered at {@link Security} and auto completes with the
- * {@link Service#getAlgorithm()}.
+ * {@link CredentialStore} in the providers registered at {@link Security} and the bundled providers, as indexed by the
+ * {@link ProviderCatalog}, and auto completes with the {@link Service#getAlgorithm()}.
  */
 @org.apache.karaf.shell.api.action.lifecycle.Service
 public class CredentialStoreAlgorithmCompletionSupport implements Completer {
 
-    private final String credentialStoreType = CredentialStore.class.getSimpleName();
-
     @Override
     public int complete(final Session session, final CommandLine commandLine, final List<String> candidates) {
-        final String[] algorithms = Arrays.stream(Security.getProviders()).flatMap(p -> p.getServices().stream())
-                .filter(s -> credentialStoreType.equals(s.getType())).map(Service::getAlgorithm).toArray(String[]::new);
-
-        return new StringsCompleter(algorithms).complete(session, commandLine, candidates);
+        return new StringsCompleter(ProviderCatalog.algorithms(CredentialStore.CREDENTIAL_STORE_TYPE)).complete(session,
+                commandLine, candidates);
     }
 
 }
@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.util.Optional;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.jboss.fuse.credential.store.karaf.Defaults;
+import org.jboss.fuse.credential.store.karaf.util.CredentialCipher;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+
+/**
+ * Encrypts a value with the key held in the Credential store configured by the environment variables, producing the
+ * inline encrypted {@code ENC:<base64>} value. A {@code name/alias} key alias refers to the key in the named Credential
+ * store. The key can be generated and stored in the Credential store if it does not exist yet.
+ */
+@Command(scope = "credential-store", name = "encrypt",
+        description = "Encrypt a value with the key held in the credential store")
+@Service
+public class EncryptWithCredentialStore implements Action {
+
+    @Option(name = "-c", aliases = {"--create-key"},
+            description = "Generate the key and store it in the credential store if it does not exist",
+            multiValued = false)
+    boolean createKey;
+
+    @Option(name = "-k", aliases = {"--key"},
+            description = "Alias of the key, `name/alias` for a named credential store, by default given by"
+                + " CREDENTIAL_STORE_CIPHER_KEY or `cipher.key`",
+            multiValued = false)
+    String key;
+
+    @Option(name = "-s", aliases = {"--secret"}, description = "Value to encrypt", required = true,
+            multiValued = false)
+    String secret;
+
+    @Reference
+    private CredentialStoreRegistry registry;
+
+    @Override
+    public Object execute() throws Exception {
+        final String cipherKey = Optional.ofNullable(key).orElse(
+            Optional.ofNullable(CredentialStoreHelper.cipherKeyFromEnvironment()).orElse(Defaults.CIPHER_KEY_ALIAS));
+
+        final SharedCredentialStore sharedCredentialStore = registry.store(registry.storeNameOf(cipherKey));
+        final String keyAlias = registry.aliasOf(cipherKey);
+
+        CredentialCipher cipher;
+        try {
+            cipher = CredentialCipher.load(sharedCredentialStore.credentialStore(), keyAlias);
+        } catch (final CredentialStoreException e) {
+            if (!createKey) {
+                throw e;
+            }
+
+            sharedCredentialStore.update(
+                credentialStore -> CredentialCipher.store(credentialStore, keyAlias, CredentialCipher.generateKey()));
+            cipher = CredentialCipher.load(sharedCredentialStore.credentialStore(), keyAlias);
+
+            System.out.println("Generated the key and stored it in the credential store under: " + cipherKey);
+        }
+
+        System.out.println(cipher.encrypt(secret));
+
+        return null;
+    }
+
+}
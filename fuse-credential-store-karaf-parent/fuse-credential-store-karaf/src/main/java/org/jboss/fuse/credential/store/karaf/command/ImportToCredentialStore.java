@@ -0,0 +1,208 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.CommandException;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore.UpdateTimes;
+
+/**
+ * Places many secret values in the Credential store configured by the environment variables. The aliases and secrets
+ * are read from a file, or from the standard input if no file is specified, all secrets are stored and the Credential
+ * store is written out once at the end, holding the lock that excludes other writers.
+ */
+@Command(scope = "credential-store", name = "import",
+        description = "Store secrets read from a properties or CSV file, or standard input, in the credential store")
+@Service
+public class ImportToCredentialStore implements Action {
+
+    /**
+     * Supported input formats.
+     */
+    enum Format {
+        /**
+         * {@code alias,secret} lines, the secret is everything after the first comma, lines starting with {@code #}
+         * and empty lines are ignored
+         */
+        csv,
+
+        /**
+         * Java properties format, {@code alias=secret}
+         */
+        properties
+    }
+
+    @Option(name = "-f", aliases = {"--file"},
+            description = "File to read the aliases and secrets from, if not specified standard input is read",
+            multiValued = false)
+    String file;
+
+    @Option(name = "--format",
+            description = "Format of the input, by default csv for files ending with .csv and properties otherwise",
+            multiValued = false)
+    Format format;
+
+    @Reference
+    private SharedCredentialStore sharedCredentialStore;
+
+    /**
+     * Opens the input of the bulk commands, the given file or the given standard input if no file is specified.
+     * Closing the returned reader closes the file, but leaves the standard input, belonging to the shell session, open.
+     *
+     * @param file
+     *            path to the file to read, can be {@code null}
+     * @param stdin
+     *            standard input
+     * @return reader of the input
+     * @throws IOException
+     */
+    static Reader input(final String file, final InputStream stdin) throws IOException {
+        if (file != null) {
+            return Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+        }
+
+        return new InputStreamReader(new FilterInputStream(stdin) {
+            @Override
+            public void close() {
+                // the standard input belongs to the shell session
+            }
+        }, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the aliases and secrets from the given reader in the specified format.
+     *
+     * @param reader
+     *            input
+     * @param format
+     *            format of the input
+     * @return aliases mapped to secrets, in the order they were read
+     * @throws IOException
+     * @throws CommandException
+     *             if the input is not in the specified format
+     */
+    static Map<String, String> read(final Reader reader, final Format format) throws IOException, CommandException {
+        final Map<String, String> secrets = new LinkedHashMap<>();
+
+        if (format == Format.properties) {
+            final Properties properties = new Properties();
+            properties.load(reader);
+
+            properties.stringPropertyNames().forEach(alias -> secrets.put(alias, properties.getProperty(alias)));
+
+            return secrets;
+        }
+
+        final BufferedReader lines = new BufferedReader(reader);
+
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final int split = line.indexOf(',');
+            if (split < 1) {
+                throw new CommandException("Line " + lineNumber + " is not using the syntax alias,secret");
+            }
+
+            secrets.put(line.substring(0, split).trim(), line.substring(split + 1));
+        }
+
+        return secrets;
+    }
+
+    @Override
+    public Object execute() throws Exception {
+        final long readStart = System.nanoTime();
+        final Map<String, String> secrets;
+        try (Reader reader = input(file, System.in)) {
+            secrets = read(reader, formatToUse());
+        }
+        final long readTime = System.nanoTime() - readStart;
+
+        final long[] durations = new long[secrets.size()];
+        final UpdateTimes times = sharedCredentialStore.update(credentialStore -> {
+            int i = 0;
+            for (final Map.Entry<String, String> secret : secrets.entrySet()) {
+                final long start = System.nanoTime();
+                credentialStore.store(secret.getKey(),
+                    CredentialStoreHelper.clearPasswordCredential(secret.getValue()));
+                durations[i++] = System.nanoTime() - start;
+            }
+        });
+
+        int i = 0;
+        for (final String alias : secrets.keySet()) {
+            AuditLog.audit().record(alias, null, Outcome.stored, NANOSECONDS.toMicros(durations[i++]),
+                "credential-store:import");
+        }
+
+        printSummary("Stored", "store", secrets.size(), readTime, times);
+
+        return null;
+    }
+
+    /**
+     * Prints the number of processed aliases, throughput and the time taken by each phase, including the time spent
+     * waiting for other writers to the Credential store.
+     */
+    static void printSummary(final String operation, final String phase, final int count, final long readTime,
+            final UpdateTimes times) {
+        final long totalTime = readTime + times.lockWaitTime() + times.applyTime() + times.flushTime();
+        final long perSecond = totalTime == 0 ? count : (count * 1_000_000_000L) / totalTime;
+
+        System.out.println(operation + " " + count + " aliases in " + NANOSECONDS.toMillis(totalTime) + " ms ("
+            + perSecond + " aliases/s), read: " + NANOSECONDS.toMillis(readTime) + " ms, lock wait: "
+            + NANOSECONDS.toMillis(times.lockWaitTime()) + " ms, " + phase + ": "
+            + NANOSECONDS.toMillis(times.applyTime()) + " ms, flush: " + NANOSECONDS.toMillis(times.flushTime())
+            + " ms");
+    }
+
+    private Format formatToUse() {
+        if (format != null) {
+            return format;
+        }
+
+        return (file != null) && file.endsWith(".csv") ? Format.csv : Format.properties;
+    }
+}
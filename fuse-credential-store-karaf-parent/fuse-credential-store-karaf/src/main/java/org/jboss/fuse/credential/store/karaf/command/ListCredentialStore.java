@@ -15,34 +15,306 @@
  */
 package org.jboss.fuse.credential.store.karaf.command;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.apache.karaf.shell.support.table.Col;
-import org.apache.karaf.shell.support.table.ShellTable;
 import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
 import org.wildfly.security.credential.store.CredentialStore;
 
 /**
- * Lists the content of the Credential store configured by the environment variables.
+ * Lists the content of the Credential store configured by the environment variables. The aliases can be filtered by
+ * glob or regular expression patterns and paged through, and are written directly to the output without building a
+ * table of all aliases first, as a table or in CSV or JSON format.
  */
 @Command(scope = "credential-store", name = "list", description = "List the content of the credential store")
 @Service
 public class ListCredentialStore implements Action {
 
-    @Override
-    public Object execute() throws Exception {
-        final ShellTable table = new ShellTable();
-        table.column(new Col("Alias"));
-        table.column(new Col("Reference"));
+    /**
+     * Supported output formats.
+     */
+    enum Format {
+        /**
+         * {@code alias,reference} lines, preceded by the header line
+         */
+        csv,
+
+        /**
+         * JSON array of objects with {@code alias} and {@code reference} properties
+         */
+        json,
+
+        /**
+         * Table with the {@code Alias} and {@code Reference} columns
+         */
+        table
+    }
+
+    private static final String ALIAS_HEADER = "Alias";
+
+    private static final String REFERENCE_HEADER = "Reference";
+
+    @Option(name = "--format", description = "Output format: table (default), csv or json", multiValued = false)
+    Format format = Format.table;
 
-        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreFromEnvironment();
+    @Option(name = "-g", aliases = {"--glob"},
+            description = "List only aliases matching the glob pattern, * matches any characters, ? a single character",
+            multiValued = false)
+    String glob;
 
-        for (final String alias : credentialStore.getAliases()) {
-            table.addRow().addContent(alias, CredentialStoreHelper.referenceForAlias(alias));
+    @Option(name = "--limit", description = "Maximum number of aliases to list", multiValued = false)
+    int limit = -1;
+
+    @Option(name = "--offset", description = "Number of matching aliases to skip", multiValued = false)
+    int offset;
+
+    @Option(name = "-r", aliases = {"--regex"}, description = "List only aliases matching the regular expression",
+            multiValued = false)
+    String regex;
+
+    @Reference
+    private SharedCredentialStore sharedCredentialStore;
+
+    /**
+     * Creates the filter matching the aliases to both of the given patterns, if given.
+     *
+     * @param glob
+     *            glob pattern, can be {@code null}
+     * @param regex
+     *            regular expression, can be {@code null}
+     * @return filter of the aliases
+     */
+    static Predicate<String> filter(final String glob, final String regex) {
+        Predicate<String> filter = alias -> true;
+
+        if (glob != null) {
+            filter = filter.and(matchesWhole(globToRegex(glob)));
         }
 
-        table.print(System.out);
+        if (regex != null) {
+            filter = filter.and(matchesWhole(regex));
+        }
+
+        return filter;
+    }
+
+    /**
+     * Converts the glob pattern to a regular expression, {@code *} matches any sequence of characters and {@code ?} a
+     * single character, all other characters match themselves.
+     *
+     * @param glob
+     *            glob pattern
+     * @return equivalent regular expression
+     */
+    static String globToRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+
+        for (final char ch : glob.toCharArray()) {
+            if ((ch == '*') || (ch == '?')) {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+
+                regex.append(ch == '*' ? ".*" : ".");
+            } else {
+                literal.append(ch);
+            }
+        }
+
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * Selects the aliases passing the filter, in alphabetical order so the pages are stable, skipping the first
+     * {@code offset} and returning at most {@code limit} aliases.
+     *
+     * @param aliases
+     *            all aliases
+     * @param filter
+     *            filter of the aliases
+     * @param offset
+     *            number of matching aliases to skip
+     * @param limit
+     *            maximum number of aliases, negative for no limit
+     * @return the selected aliases
+     */
+    static Stream<String> select(final Stream<String> aliases, final Predicate<String> filter, final int offset,
+            final int limit) {
+        final Stream<String> page = aliases.filter(filter).sorted().skip(Math.max(offset, 0));
+
+        return limit < 0 ? page : page.limit(limit);
+    }
+
+    /**
+     * Writes the given aliases and their references in the given format.
+     *
+     * @param aliases
+     *            aliases to write
+     * @param format
+     *            output format
+     * @param out
+     *            output
+     * @throws IOException
+     */
+    static void write(final Stream<String> aliases, final Format format, final Writer out) throws IOException {
+        switch (format) {
+            case csv:
+                writeCsv(aliases.iterator(), out);
+                break;
+            case json:
+                writeJson(aliases.iterator(), out);
+                break;
+            default:
+                writeTable(aliases.collect(Collectors.toList()), out);
+        }
+    }
+
+    private static String csvValue(final String value) {
+        if ((value.indexOf(',') < 0) && (value.indexOf('"') < 0) && (value.indexOf('\n') < 0)
+            && (value.indexOf('\r') < 0)) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonValue(final String value) {
+        final StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+
+        for (final char ch : value.toCharArray()) {
+            switch (ch) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        json.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        json.append(ch);
+                    }
+            }
+        }
+
+        return json.append('"').toString();
+    }
+
+    private static Predicate<String> matchesWhole(final String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+
+        return alias -> pattern.matcher(alias).matches();
+    }
+
+    private static void writeCsv(final Iterator<String> aliases, final Writer out) throws IOException {
+        out.write("alias,reference\n");
+
+        while (aliases.hasNext()) {
+            final String alias = aliases.next();
+
+            out.write(csvValue(alias));
+            out.write(',');
+            out.write(csvValue(CredentialStoreHelper.referenceForAlias(alias)));
+            out.write('\n');
+        }
+    }
+
+    private static void writeJson(final Iterator<String> aliases, final Writer out) throws IOException {
+        out.write('[');
+
+        boolean first = true;
+        while (aliases.hasNext()) {
+            final String alias = aliases.next();
+
+            out.write(first ? "\n" : ",\n");
+            first = false;
+
+            out.write("  {\"alias\": ");
+            out.write(jsonValue(alias));
+            out.write(", \"reference\": ");
+            out.write(jsonValue(CredentialStoreHelper.referenceForAlias(alias)));
+            out.write('}');
+        }
+
+        out.write(first ? "]\n" : "\n]\n");
+    }
+
+    /**
+     * Writes the table in the same layout as {@code ShellTable}, the column width is determined from the aliases
+     * without creating the table rows.
+     */
+    private static void writeTable(final List<String> aliases, final Writer out) throws IOException {
+        final int longestAlias = aliases.stream().mapToInt(String::length).max().orElse(0);
+        final int aliasWidth = Math.max(ALIAS_HEADER.length(), longestAlias);
+        final int referenceWidth = Math.max(REFERENCE_HEADER.length(),
+            CredentialStoreHelper.referenceForAlias("").length() + longestAlias);
+
+        writeRow(ALIAS_HEADER, REFERENCE_HEADER, aliasWidth, out);
+
+        final char[] separator = new char[aliasWidth + 3 + referenceWidth];
+        Arrays.fill(separator, '-');
+        out.write(separator);
+        out.write('\n');
+
+        for (final String alias : aliases) {
+            writeRow(alias, CredentialStoreHelper.referenceForAlias(alias), aliasWidth, out);
+        }
+    }
+
+    private static void writeRow(final String alias, final String reference, final int aliasWidth, final Writer out)
+            throws IOException {
+        out.write(alias);
+        for (int i = alias.length(); i < aliasWidth; i++) {
+            out.write(' ');
+        }
+        out.write(" | ");
+        out.write(reference);
+        out.write('\n');
+    }
+
+    @Override
+    public Object execute() throws Exception {
+        final CredentialStore credentialStore = sharedCredentialStore.credentialStore();
+
+        final Stream<String> aliases = select(credentialStore.getAliases().stream(), filter(glob, regex), offset,
+            limit);
+
+        // System.out is not closed, only flushed
+        final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        write(aliases, format, out);
+        out.flush();
 
         return null;
     }
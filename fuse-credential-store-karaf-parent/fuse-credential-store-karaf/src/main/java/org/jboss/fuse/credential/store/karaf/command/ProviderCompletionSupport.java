@@ -15,9 +15,7 @@
  */
 package org.jboss.fuse.credential.store.karaf.command;
 
-import java.security.Provider;
 import java.security.Security;
-import java.util.Arrays;
 import java.util.List;
 
 import org.apache.karaf.shell.api.action.lifecycle.Service;
@@ -25,19 +23,18 @@ import org.apache.karaf.shell.api.console.CommandLine;
 import org.apache.karaf.shell.api.console.Completer;
 import org.apache.karaf.shell.api.console.Session;
 import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.jboss.fuse.credential.store.karaf.util.ProviderCatalog;
 
 /**
- * A {@link Completer} that auto completes installed security providers.
+ * A {@link Completer} that auto completes the security providers installed in {@link Security}, as indexed by the
+ * {@link ProviderCatalog}.
  */
 @Service
 public class ProviderCompletionSupport implements Completer {
 
     @Override
     public int complete(final Session session, final CommandLine commandLine, final List<String> candidates) {
-        final String[] providerNames = Arrays.stream(Security.getProviders()).map(Provider::getName)
-                .toArray(String[]::new);
-
-        return new StringsCompleter(providerNames).complete(session, commandLine, candidates);
+        return new StringsCompleter(ProviderCatalog.providerNames()).complete(session, commandLine, candidates);
     }
 
 }
@@ -15,32 +15,82 @@
  */
 package org.jboss.fuse.credential.store.karaf.command;
 
+import java.io.BufferedReader;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
-import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.apache.karaf.shell.support.CommandException;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore.UpdateTimes;
 import org.wildfly.security.credential.Credential;
-import org.wildfly.security.credential.store.CredentialStore;
 
 /**
- * Removes a value from the Credential store configured by the environment variables.
+ * Removes values from the Credential store configured by the environment variables. Aliases can be given on the command
+ * line or read from a file, or from the standard input if neither is specified, one alias per line, all aliases are
+ * removed and the Credential store is written out once at the end.
  */
-@Command(scope = "credential-store", name = "remove", description = "Remove secret from the credential store")
+@Command(scope = "credential-store", name = "remove", description = "Remove secrets from the credential store")
 @Service
 public class RemoveFromCredentialStore implements Action {
 
-    @Option(name = "-a", aliases = {"--alias"}, description = "Alias of the secret to remove", required = true,
+    @Option(name = "-a", aliases = {"--alias"}, description = "Alias of the secret to remove", multiValued = true)
+    private List<String> aliases = Collections.emptyList();
+
+    @Option(name = "-f", aliases = {"--file"},
+            description = "File with aliases of the secrets to remove, one per line, if neither aliases nor file are"
+                + " specified standard input is read",
             multiValued = false)
-    private String alias;
+    private String file;
+
+    @Reference
+    private SharedCredentialStore sharedCredentialStore;
 
     @Override
     public Object execute() throws Exception {
-        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreFromEnvironment();
+        final long readStart = System.nanoTime();
+        final Set<String> toRemove = new LinkedHashSet<>(aliases);
+        if ((file != null) || aliases.isEmpty()) {
+            try (BufferedReader reader = new BufferedReader(ImportToCredentialStore.input(file, System.in))) {
+                reader.lines().map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                        .forEach(toRemove::add);
+            }
+        }
+        final long readTime = System.nanoTime() - readStart;
+
+        if (toRemove.isEmpty()) {
+            throw new CommandException("Specify the aliases to remove using -a or -f options, or on standard input");
+        }
+
+        final long[] durations = new long[toRemove.size()];
+        final UpdateTimes times = sharedCredentialStore.update(credentialStore -> {
+            int i = 0;
+            for (final String alias : toRemove) {
+                final long start = System.nanoTime();
+                credentialStore.remove(alias, Credential.class);
+                durations[i++] = System.nanoTime() - start;
+            }
+        });
 
-        credentialStore.remove(alias, Credential.class);
+        int i = 0;
+        for (final String alias : toRemove) {
+            AuditLog.audit().record(alias, null, Outcome.removed, NANOSECONDS.toMicros(durations[i++]),
+                "credential-store:remove");
+        }
 
-        credentialStore.flush();
+        if (toRemove.size() > 1) {
+            ImportToCredentialStore.printSummary("Removed", "remove", toRemove.size(), readTime, times);
+        }
 
         return null;
     }
@@ -15,20 +15,22 @@
  */
 package org.jboss.fuse.credential.store.karaf.command;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
 import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
-import org.jboss.fuse.credential.store.karaf.util.ProviderHelper;
-import org.wildfly.security.credential.PasswordCredential;
-import org.wildfly.security.credential.store.CredentialStore;
-import org.wildfly.security.password.Password;
-import org.wildfly.security.password.PasswordFactory;
-import org.wildfly.security.password.spec.ClearPasswordSpec;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore.UpdateTimes;
 
 /**
- * Places a secret value in the Credential store under the specified alias configured by the environment variables.
+ * Places a secret value in the Credential store under the specified alias configured by the environment variables. To
+ * store many secrets at once use {@link ImportToCredentialStore}.
  */
 @Command(scope = "credential-store", name = "store", description = "Store secret in the credential store")
 @Service
@@ -41,16 +43,21 @@ public class StoreInCredentialStore implements Action {
     @Option(name = "-s", aliases = {"--secret"}, description = "Secret value", required = true, multiValued = false)
     private String secret;
 
+    @Reference
+    private SharedCredentialStore sharedCredentialStore;
+
     @Override
     public Object execute() throws Exception {
-        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreFromEnvironment();
-        final PasswordFactory passwordFactory = PasswordFactory.getInstance("clear",
-                ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
-        final Password password = passwordFactory.generatePassword(new ClearPasswordSpec(secret.toCharArray()));
+        final UpdateTimes times = sharedCredentialStore.update(
+            credentialStore -> credentialStore.store(alias, CredentialStoreHelper.clearPasswordCredential(secret)));
 
-        credentialStore.store(alias, new PasswordCredential(password));
+        AuditLog.audit().record(alias, null, Outcome.stored, NANOSECONDS.toMicros(times.applyTime()),
+            "credential-store:store");
 
-        credentialStore.flush();
+        if (NANOSECONDS.toMillis(times.lockWaitTime()) > 0) {
+            System.out.println("Waited " + NANOSECONDS.toMillis(times.lockWaitTime())
+                + " ms for other writers to the credential store");
+        }
 
         System.out.println("Value stored in the credential store to reference it use: "
             + CredentialStoreHelper.referenceForAlias(alias));
@@ -0,0 +1,169 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.jboss.fuse.credential.store.karaf.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * Counters and latency histograms of the Credential store operations, and the duration of the bundle start phases.
+ * There is a single instance, shared by the code recording the operations, that is registered as an MXBean by the
+ * {@code Activator}. Recording uses only {@link LongAdder}s and atomic increments, so it is lock-free and cheap enough
+ * to be performed on every operation.
+ */
+public final class CredentialStoreMetrics implements CredentialStoreMetricsMXBean {
+
+    /**
+     * JMX object name the metrics are registered under.
+     */
+    public static final String OBJECT_NAME = "org.jboss.fuse.credential.store:type=CredentialStoreMetrics";
+
+    private static final CredentialStoreMetrics INSTANCE = new CredentialStoreMetrics();
+
+    private final LatencyHistogram aliasRetrieval = new LatencyHistogram();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private final LatencyHistogram flush = new LatencyHistogram();
+
+    private final LatencyHistogram maskedPasswordDerivation = new LatencyHistogram();
+
+    private final LongAdder missingAliases = new LongAdder();
+
+    private volatile long resolvedReferences;
+
+    private volatile Map<String, Long> startupPhases = Collections.emptyMap();
+
+    private final LatencyHistogram storeOpen = new LatencyHistogram();
+
+    CredentialStoreMetrics() {
+        // single instance
+    }
+
+    public static CredentialStoreMetrics metrics() {
+        return INSTANCE;
+    }
+
+    public LatencyHistogram aliasRetrieval() {
+        return aliasRetrieval;
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public LatencyHistogram flush() {
+        return flush;
+    }
+
+    @Override
+    public Snapshot getAliasRetrieval() {
+        return aliasRetrieval.snapshot();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public Snapshot getFlush() {
+        return flush.snapshot();
+    }
+
+    @Override
+    public Snapshot getMaskedPasswordDerivation() {
+        return maskedPasswordDerivation.snapshot();
+    }
+
+    @Override
+    public long getMissingAliases() {
+        return missingAliases.sum();
+    }
+
+    @Override
+    public long getResolvedReferences() {
+        return resolvedReferences;
+    }
+
+    @Override
+    public Map<String, Long> getStartupPhases() {
+        return startupPhases;
+    }
+
+    @Override
+    public Snapshot getStoreOpen() {
+        return storeOpen.snapshot();
+    }
+
+    public LatencyHistogram maskedPasswordDerivation() {
+        return maskedPasswordDerivation;
+    }
+
+    public void missingAlias() {
+        missingAliases.increment();
+    }
+
+    @Override
+    public void reset() {
+        aliasRetrieval.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        flush.reset();
+        maskedPasswordDerivation.reset();
+        missingAliases.reset();
+        resolvedReferences = 0;
+        startupPhases = Collections.emptyMap();
+        storeOpen.reset();
+    }
+
+    /**
+     * Records the outcome of the bundle start.
+     *
+     * @param phases
+     *            phase names mapped to their duration in nanoseconds, in the order they were performed
+     * @param resolved
+     *            number of system properties whose references were resolved
+     */
+    public void started(final Map<String, Long> phases, final long resolved) {
+        final Map<String, Long> micros = new LinkedHashMap<>();
+        phases.forEach((phase, nanos) -> micros.put(phase, NANOSECONDS.toMicros(nanos)));
+
+        startupPhases = Collections.unmodifiableMap(micros);
+        resolvedReferences = resolved;
+    }
+
+    public LatencyHistogram storeOpen() {
+        return storeOpen;
+    }
+}
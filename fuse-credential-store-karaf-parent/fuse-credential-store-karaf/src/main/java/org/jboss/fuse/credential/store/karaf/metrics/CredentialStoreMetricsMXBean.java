@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.metrics;
+
+import java.util.Map;
+
+import org.jboss.fuse.credential.store.karaf.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * Management interface of the {@link CredentialStoreMetrics}, registered under
+ * {@value CredentialStoreMetrics#OBJECT_NAME}.
+ */
+public interface CredentialStoreMetricsMXBean {
+
+    Snapshot getAliasRetrieval();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    Snapshot getFlush();
+
+    Snapshot getMaskedPasswordDerivation();
+
+    long getMissingAliases();
+
+    long getResolvedReferences();
+
+    /**
+     * Returns the time, in microseconds, taken by each phase of the last bundle start.
+     *
+     * @return phase names mapped to their duration in microseconds
+     */
+    Map<String, Long> getStartupPhases();
+
+    Snapshot getStoreOpen();
+
+    /**
+     * Resets all counters, histograms and the recorded startup phases.
+     */
+    void reset();
+
+}
@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Lock-free histogram of latencies, recorded in nanoseconds into power of two buckets. Recording performs a handful of
+ * atomic increments and never blocks, the percentiles are approximated by the upper bound of the bucket they fall in,
+ * so they are at most twice the actual value.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Point in time view of the histogram, with the times in microseconds.
+     */
+    public static final class Snapshot {
+
+        private final long count;
+
+        private final long maxMicros;
+
+        private final long p50Micros;
+
+        private final long p90Micros;
+
+        private final long p99Micros;
+
+        private final long totalMicros;
+
+        Snapshot(final long count, final long totalMicros, final long p50Micros, final long p90Micros,
+                final long p99Micros, final long maxMicros) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+    }
+
+    /**
+     * Bucket {@code i} counts the latencies of {@code i} significant bits, i.e. between {@code 2^(i-1)} and
+     * {@code 2^i - 1} nanoseconds.
+     */
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    private final LongAdder total = new LongAdder();
+
+    static int bucketOf(final long nanos) {
+        return BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+
+    static long upperBoundOf(final int bucket) {
+        return bucket == 0 ? 0 : (bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1);
+    }
+
+    /**
+     * Records the latency of an operation that started at the given time.
+     *
+     * @param startNanos
+     *            the {@link System#nanoTime()} when the operation started
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the given latency.
+     *
+     * @param nanos
+     *            latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(final long nanos) {
+        final long latency = Math.max(nanos, 0);
+
+        buckets.incrementAndGet(bucketOf(latency));
+        total.add(latency);
+        max.accumulate(latency);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Takes a snapshot of the histogram. Operations recorded while the snapshot is taken might be counted only in some
+     * of the values.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+
+        return new Snapshot(recorded, NANOSECONDS.toMicros(total.sum()), percentile(counts, recorded, 0.5),
+            percentile(counts, recorded, 0.9), percentile(counts, recorded, 0.99), NANOSECONDS.toMicros(max.get()));
+    }
+
+    private static long percentile(final long[] counts, final long recorded, final double percentile) {
+        if (recorded == 0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(percentile * recorded);
+
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return NANOSECONDS.toMicros(upperBoundOf(i));
+            }
+        }
+
+        return NANOSECONDS.toMicros(upperBoundOf(BUCKETS - 1));
+    }
+}
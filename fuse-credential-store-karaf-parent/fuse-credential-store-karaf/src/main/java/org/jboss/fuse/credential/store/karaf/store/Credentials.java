@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.IOException;
+
+import org.wildfly.security.credential.Credential;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.source.CredentialSource;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.UnsupportedCredentialTypeException;
+import org.wildfly.security.password.Password;
+import org.wildfly.security.password.interfaces.ClearPassword;
+
+/**
+ * Utility class for converting between the credentials and their clear text values within the Credential store
+ * implementations.
+ */
+final class Credentials {
+
+    private Credentials() {
+        // utility class
+    }
+
+    /**
+     * Determines if the credential of the given type and algorithm can be retrieved from a Credential store holding
+     * clear passwords.
+     *
+     * @param credentialType
+     *            requested credential type
+     * @param credentialAlgorithm
+     *            requested credential algorithm, can be {@code null}
+     * @return true if a clear password can be returned
+     */
+    static boolean isClearPasswordRequested(final Class<? extends Credential> credentialType,
+            final String credentialAlgorithm) {
+        return credentialType.isAssignableFrom(PasswordCredential.class)
+            && ((credentialAlgorithm == null) || ClearPassword.ALGORITHM_CLEAR.equals(credentialAlgorithm));
+    }
+
+    /**
+     * Creates the {@link PasswordCredential} holding the given clear text value.
+     *
+     * @param value
+     *            the clear text value
+     * @return the password credential
+     */
+    static PasswordCredential passwordCredential(final char[] value) {
+        return new PasswordCredential(ClearPassword.createRaw(ClearPassword.ALGORITHM_CLEAR, value));
+    }
+
+    /**
+     * Extracts the Credential store password from the given protection parameter.
+     *
+     * @param protectionParameter
+     *            the Credential store protection parameter
+     * @return the Credential store password
+     * @throws CredentialStoreException
+     *             if the protection parameter does not provide a clear password
+     */
+    static char[] passwordFrom(final ProtectionParameter protectionParameter) throws CredentialStoreException {
+        if (!(protectionParameter instanceof CredentialStore.CredentialSourceProtectionParameter)) {
+            throw new CredentialStoreException("Credential store protection parameter must provide a credential source");
+        }
+
+        final CredentialSource credentialSource = ((CredentialStore.CredentialSourceProtectionParameter) protectionParameter)
+                .getCredentialSource();
+
+        final PasswordCredential credential;
+        try {
+            credential = credentialSource.getCredential(PasswordCredential.class);
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to obtain the credential store password", e);
+        }
+
+        if (credential == null) {
+            throw new CredentialStoreException("Credential store protection parameter does not provide a password");
+        }
+
+        return valueOf(credential);
+    }
+
+    /**
+     * Returns the clear text value of the given credential.
+     *
+     * @param credential
+     *            the credential to store
+     * @return the clear text value
+     * @throws UnsupportedCredentialTypeException
+     *             if the credential is not a clear password
+     */
+    static char[] valueOf(final Credential credential) throws UnsupportedCredentialTypeException {
+        if (!(credential instanceof PasswordCredential)) {
+            throw new UnsupportedCredentialTypeException("Only password credentials are supported, given: "
+                + credential.getClass().getName());
+        }
+
+        final Password password = ((PasswordCredential) credential).getPassword();
+        if (!(password instanceof ClearPassword)) {
+            throw new UnsupportedCredentialTypeException("Only clear passwords are supported, given: "
+                + password.getAlgorithm());
+        }
+
+        return ((ClearPassword) password).getPassword();
+    }
+}
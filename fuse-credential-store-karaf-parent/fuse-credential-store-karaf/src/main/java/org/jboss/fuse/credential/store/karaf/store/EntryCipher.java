@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts and decrypts individual Credential store entries using AES in GCM mode with the key derived from the
+ * Credential store password using PBKDF2. Each entry is encrypted with its own random IV and authenticated together
+ * with its alias, so entries cannot be swapped between aliases. Sealed entries consist of the IV followed by the
+ * cipher text and authentication tag.
+ */
+final class EntryCipher {
+
+    static final int DEFAULT_ITERATIONS = 100_000;
+
+    static final int SALT_LENGTH = 16;
+
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final String KEY_DERIVATION_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final int KEY_LENGTH = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int TAG_LENGTH = 128;
+
+    private static final byte[] VERIFIER_AAD = "verifier".getBytes(StandardCharsets.UTF_8);
+
+    private static final char[] VERIFIER_VALUE = "fuse-credential-store".toCharArray();
+
+    private final SecretKey key;
+
+    /**
+     * Derives the entry encryption key from the given password.
+     *
+     * @param password
+     *            the Credential store password
+     * @param salt
+     *            salt used for the key derivation, kept with the Credential store
+     * @param iterations
+     *            number of PBKDF2 iterations
+     * @throws GeneralSecurityException
+     */
+    EntryCipher(final char[] password, final byte[] salt, final int iterations) throws GeneralSecurityException {
+        final SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM);
+        final KeySpec keySpec = new PBEKeySpec(password, salt, iterations, KEY_LENGTH);
+        final byte[] encoded = keyFactory.generateSecret(keySpec).getEncoded();
+
+        key = new SecretKeySpec(encoded, "AES");
+        Arrays.fill(encoded, (byte) 0);
+    }
+
+    static byte[] newSalt() {
+        final byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+
+        return salt;
+    }
+
+    /**
+     * Creates the verifier, a sealed well known value, stored with the Credential store to check if the password is
+     * correct when opening it.
+     *
+     * @return the sealed verifier
+     * @throws GeneralSecurityException
+     */
+    byte[] createVerifier() throws GeneralSecurityException {
+        return seal(VERIFIER_AAD, VERIFIER_VALUE);
+    }
+
+    /**
+     * Decrypts the sealed secret.
+     *
+     * @param aad
+     *            additional authenticated data the secret was sealed with, i.e. the alias
+     * @param sealed
+     *            the IV, cipher text and authentication tag
+     * @return the secret
+     * @throws GeneralSecurityException
+     *             if the secret could not be decrypted or authenticated
+     */
+    char[] open(final byte[] aad, final byte[] sealed) throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, sealed, 0, IV_LENGTH));
+        cipher.updateAAD(aad);
+
+        final byte[] plain = cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+        try {
+            final CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(plain));
+            final char[] secret = new char[chars.remaining()];
+            chars.get(secret);
+
+            return secret;
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts the given secret with a new random IV.
+     *
+     * @param aad
+     *            additional authenticated data to seal the secret with, i.e. the alias
+     * @param secret
+     *            the secret
+     * @return the IV, cipher text and authentication tag
+     * @throws GeneralSecurityException
+     */
+    byte[] seal(final byte[] aad, final char[] secret) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(aad);
+
+        final ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(secret));
+        final byte[] plain = new byte[encoded.remaining()];
+        encoded.get(plain);
+
+        try {
+            final byte[] sealed = new byte[IV_LENGTH + cipher.getOutputSize(plain.length)];
+            System.arraycopy(iv, 0, sealed, 0, IV_LENGTH);
+            cipher.doFinal(plain, 0, plain.length, sealed, IV_LENGTH);
+
+            return sealed;
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+            if (encoded.hasArray()) {
+                Arrays.fill(encoded.array(), (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Checks that the given verifier was sealed with the same key.
+     *
+     * @param verifier
+     *            the sealed verifier
+     * @return true if the key, i.e. the password, matches
+     */
+    boolean verify(final byte[] verifier) {
+        try {
+            return Arrays.equals(open(VERIFIER_AAD, verifier), VERIFIER_VALUE);
+        } catch (final GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
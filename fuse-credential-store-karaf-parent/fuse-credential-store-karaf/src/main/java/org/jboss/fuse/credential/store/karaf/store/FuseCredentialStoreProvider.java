@@ -0,0 +1,47 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.security.Provider;
+import java.util.Collections;
+
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * {@link Provider} of the Credential store implementations contained within this bundle. It is not registered with
+ * the security runtime, the Credential store algorithms it provides are looked up in it when the configured provider
+ * does not support them.
+ */
+public final class FuseCredentialStoreProvider extends Provider {
+
+    public static final String NAME = "FuseCredentialStore";
+
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("deprecation")
+    public FuseCredentialStoreProvider() {
+        super(NAME, 1.0, "Fuse Credential store implementations");
+
+        putService(new Service(this, CredentialStore.CREDENTIAL_STORE_TYPE,
+                JournalCredentialStore.JOURNAL_CREDENTIAL_STORE, JournalCredentialStore.class.getName(),
+                Collections.emptyList(), Collections.emptyMap()));
+        putService(new Service(this, CredentialStore.CREDENTIAL_STORE_TYPE, MappedCredentialStore.MAPPED_CREDENTIAL_STORE,
+                MappedCredentialStore.class.getName(), Collections.emptyList(), Collections.emptyMap()));
+        putService(new Service(this, CredentialStore.CREDENTIAL_STORE_TYPE,
+                ShardedCredentialStore.SHARDED_CREDENTIAL_STORE, ShardedCredentialStore.class.getName(),
+                Collections.emptyList(), Collections.emptyMap()));
+    }
+}
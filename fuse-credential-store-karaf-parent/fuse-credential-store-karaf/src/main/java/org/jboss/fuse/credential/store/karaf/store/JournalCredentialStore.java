@@ -0,0 +1,654 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wildfly.security.credential.Credential;
+import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.CredentialStoreSpi;
+import org.wildfly.security.credential.store.UnsupportedCredentialTypeException;
+
+/**
+ * {@link CredentialStoreSpi} keeping clear passwords in an append-only journal. Storing or removing an alias appends a
+ * single record to the journal on flush, so the cost of a write does not depend on the number of entries and a crash
+ * can at most lose the records being appended. The journal is replayed when the Credential store is opened, a partially
+ * written record at the end of the journal is ignored and overwritten on the next flush.
+ *
+ * Records are appended holding the {@link CredentialStoreLock} of the journal file, so the journal can be shared by
+ * writers within this and other processes: before appending, the records appended by other writers are replayed and
+ * merged with the loaded entries, only a trailing record failing the CRC32 check is overwritten.
+ *
+ * Once the fraction of stale records, records superseded by later records for the same alias, reaches the compaction
+ * threshold the journal is compacted in the background, holding the same lock: the live entries are written to a new
+ * journal which atomically replaces the current one. Writers notice the replacement by the changed file key and replay
+ * the new journal.
+ *
+ * Each entry is encrypted on its own using AES in GCM mode with the alias as additional authenticated data, the key is
+ * derived from the Credential store password using PBKDF2, entries are decrypted only when retrieved.
+ *
+ * Supported attributes:
+ * <ul>
+ * <li>{@code location} - path to the journal file, required</li>
+ * <li>{@code modifiable} - if the Credential store can be modified, {@code true} by default</li>
+ * <li>{@code iterations} - PBKDF2 iterations used when creating a new journal file, 100000 by default</li>
+ * <li>{@code compactionThreshold} - fraction of stale records that triggers the compaction, 0.5 by default</li>
+ * </ul>
+ *
+ * File format, all integers big endian:
+ *
+ * <pre>
+ * header:  magic (int), version (int), salt (16 bytes), iterations (int), verifier length (int), verifier
+ * records: payload length (int), payload CRC32 (int), payload
+ * payload: operation (byte, 1 store, 2 remove), alias length (int), alias (UTF-8), sealed value (IV, cipher text and
+ *          tag), empty for remove
+ * </pre>
+ */
+public final class JournalCredentialStore extends CredentialStoreSpi {
+
+    public static final String JOURNAL_CREDENTIAL_STORE = "JournalCredentialStore";
+
+    static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    static final int FORMAT_MAGIC = 0x46434a31;
+
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Journals with fewer records are not compacted regardless of the fraction of stale records.
+     */
+    static final int MINIMUM_RECORDS_TO_COMPACT = 64;
+
+    private static final int HEADER_LENGTH = 32;
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCredentialStore.class);
+
+    private static final byte REMOVE = 2;
+
+    private static final byte STORE = 1;
+
+    private static ExecutorService compactionExecutor;
+
+    /**
+     * Change not yet appended to the journal.
+     */
+    private static final class Change {
+
+        private final String alias;
+
+        private final byte[] record;
+
+        private final byte[] sealed;
+
+        private Change(final String alias, final byte[] sealed, final byte[] record) {
+            this.alias = alias;
+            this.sealed = sealed;
+            this.record = record;
+        }
+    }
+
+    private EntryCipher cipher;
+
+    private double compactionThreshold;
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+
+    /**
+     * File key of the journal file as last read or written, changes when the journal is replaced by compaction.
+     */
+    private Object fileKey;
+
+    /**
+     * Entries as recorded in the journal, i.e. without the pending changes.
+     */
+    private final Map<String, byte[]> journaled = new TreeMap<>();
+
+    private int iterations;
+
+    /**
+     * Length of the valid journal content, a partially written record past it is overwritten on next flush.
+     */
+    private long length;
+
+    private Path location;
+
+    private boolean modifiable;
+
+    private final List<Change> pending = new ArrayList<>();
+
+    private int records;
+
+    private byte[] salt;
+
+    private byte[] verifier;
+
+    static byte[] header(final byte[] salt, final int iterations, final byte[] verifier) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + verifier.length);
+        header.putInt(FORMAT_MAGIC).putInt(FORMAT_VERSION).put(salt).putInt(iterations).putInt(verifier.length)
+            .put(verifier);
+
+        return header.array();
+    }
+
+    static byte[] record(final byte operation, final String alias, final byte[] sealed) {
+        final byte[] aliasBytes = alias.getBytes(StandardCharsets.UTF_8);
+        final int payloadLength = 5 + aliasBytes.length + sealed.length;
+
+        final ByteBuffer record = ByteBuffer.allocate(8 + payloadLength);
+        record.putInt(payloadLength).putInt(0).put(operation).putInt(aliasBytes.length).put(aliasBytes).put(sealed);
+
+        final byte[] bytes = record.array();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 8, payloadLength);
+        ByteBuffer.wrap(bytes).putInt(4, (int) crc.getValue());
+
+        return bytes;
+    }
+
+    /**
+     * Stops the background compaction, waiting for the compaction in progress to complete. Called when the bundle is
+     * stopped, the compaction is started anew by the next flush reaching the compaction threshold.
+     */
+    public static void shutdownCompaction() {
+        final ExecutorService executor;
+        synchronized (JournalCredentialStore.class) {
+            executor = compactionExecutor;
+            compactionExecutor = null;
+        }
+
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the live entries. Holds the lock of the journal file throughout, so records can
+     * not be appended, by this or any other writer, to the journal being replaced.
+     *
+     * @throws CredentialStoreException
+     */
+    void compact() throws CredentialStoreException {
+        final Path absoluteLocation = location.toAbsolutePath();
+        try (CredentialStoreLock lock = CredentialStoreLock.lock(location)) {
+            final Map<String, byte[]> snapshot;
+            synchronized (this) {
+                try (FileChannel current = FileChannel.open(location, StandardOpenOption.READ)) {
+                    catchUp(current);
+                }
+
+                // pending changes are not in the journal yet, they are appended to the compacted journal on flush
+                snapshot = new TreeMap<>(journaled);
+            }
+
+            final Path temporary = Files.createTempFile(absoluteLocation.getParent(),
+                absoluteLocation.getFileName().toString(), ".tmp");
+            try {
+                final long compactedLength;
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    write(channel, header(salt, iterations, verifier));
+                    for (final Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+                        write(channel, record(STORE, entry.getKey(), entry.getValue()));
+                    }
+
+                    channel.force(false);
+                    compactedLength = channel.size();
+                }
+
+                synchronized (this) {
+                    Files.move(temporary, absoluteLocation, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+
+                    length = compactedLength;
+                    records = snapshot.size();
+                    fileKey = fileKeyOf(location);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to compact credential store journal: " + location, e);
+        }
+    }
+
+    /**
+     * Appends the records of pending changes to the journal holding the lock of the journal file, creating the journal
+     * if needed, and starts the background compaction if the fraction of stale records reached the threshold. Records
+     * appended by other writers since the journal was last read are replayed first.
+     */
+    @Override
+    public void flush() throws CredentialStoreException {
+        final boolean compact;
+        try (CredentialStoreLock lock = CredentialStoreLock.lock(location)) {
+            synchronized (this) {
+                append();
+                compact = shouldCompact();
+            }
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to write credential store journal: " + location, e);
+        }
+
+        if (compact && compacting.compareAndSet(false, true)) {
+            compactionExecutor().execute(() -> {
+                try {
+                    compact();
+                } catch (final CredentialStoreException e) {
+                    LOG.warn("Unable to compact credential store journal: {}", e.getMessage());
+                    LOG.debug("Logging exception stack trace", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Set<String> getAliases() throws CredentialStoreException {
+        return new HashSet<>(entries.keySet());
+    }
+
+    @Override
+    public synchronized void initialize(final Map<String, String> attributes,
+            final ProtectionParameter protectionParameter) throws CredentialStoreException {
+        final String givenLocation = attributes.get("location");
+        if (givenLocation == null) {
+            throw new CredentialStoreException("The `location` attribute is required");
+        }
+
+        location = Paths.get(givenLocation);
+        modifiable = !"false".equalsIgnoreCase(attributes.get("modifiable"));
+        compactionThreshold = compactionThresholdFrom(attributes);
+
+        entries.clear();
+        journaled.clear();
+        pending.clear();
+        records = 0;
+        length = 0;
+        fileKey = null;
+
+        final boolean exists = Files.exists(location);
+        if (exists) {
+            replay();
+        } else {
+            salt = EntryCipher.newSalt();
+            iterations = MappedCredentialStore.iterationsFrom(attributes);
+        }
+
+        final char[] password = Credentials.passwordFrom(protectionParameter);
+        try {
+            cipher = new EntryCipher(password, salt, iterations);
+            if (!exists) {
+                verifier = cipher.createVerifier();
+            }
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to derive the credential store key", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+
+        if (!cipher.verify(verifier)) {
+            throw new CredentialStoreException(
+                    "Unable to open credential store journal: " + location + ", invalid password");
+        }
+
+        initialized = true;
+    }
+
+    @Override
+    public boolean isModifiable() {
+        return modifiable;
+    }
+
+    @Override
+    public synchronized void remove(final String credentialAlias, final Class<? extends Credential> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec)
+            throws CredentialStoreException {
+        checkModifiable();
+
+        if (entries.remove(credentialAlias) != null) {
+            pending.add(new Change(credentialAlias, null, record(REMOVE, credentialAlias, new byte[0])));
+        }
+    }
+
+    @Override
+    public <C extends Credential> C retrieve(final String credentialAlias, final Class<C> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec,
+            final ProtectionParameter protectionParameter) throws CredentialStoreException {
+        if (!Credentials.isClearPasswordRequested(credentialType, credentialAlgorithm)) {
+            return null;
+        }
+
+        final byte[] sealed = entries.get(credentialAlias);
+        if (sealed == null) {
+            return null;
+        }
+
+        try {
+            return credentialType.cast(Credentials
+                .passwordCredential(cipher.open(credentialAlias.getBytes(StandardCharsets.UTF_8), sealed)));
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to decrypt the value of alias: " + credentialAlias, e);
+        }
+    }
+
+    @Override
+    public synchronized void store(final String credentialAlias, final Credential credential,
+            final ProtectionParameter protectionParameter)
+            throws CredentialStoreException, UnsupportedCredentialTypeException {
+        checkModifiable();
+
+        final char[] value = Credentials.valueOf(credential);
+        try {
+            final byte[] sealed = cipher.seal(credentialAlias.getBytes(StandardCharsets.UTF_8), value);
+
+            entries.put(credentialAlias, sealed);
+            pending.add(new Change(credentialAlias, sealed, record(STORE, credentialAlias, sealed)));
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to encrypt the value of alias: " + credentialAlias, e);
+        } finally {
+            Arrays.fill(value, '\0');
+        }
+    }
+
+    /**
+     * Appends the records of pending changes, must be called holding the lock of the journal file.
+     */
+    private void append() throws IOException, CredentialStoreException {
+        try (FileChannel channel = FileChannel.open(location, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            if (channel.size() == 0) {
+                write(channel, header(salt, iterations, verifier));
+                length = channel.size();
+            } else {
+                catchUp(channel);
+
+                if (channel.size() > length) {
+                    LOG.warn("Overwriting {} bytes of partially written records at the end of credential store "
+                        + "journal: {}", channel.size() - length, location);
+                    channel.truncate(length);
+                }
+            }
+
+            channel.position(length);
+            final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            for (final Change change : pending) {
+                batch.write(change.record);
+            }
+            write(channel, batch.toByteArray());
+            channel.force(false);
+
+            length = channel.size();
+        }
+
+        fileKey = fileKeyOf(location);
+
+        for (final Change change : pending) {
+            if (change.sealed == null) {
+                journaled.remove(change.alias);
+            } else {
+                journaled.put(change.alias, change.sealed);
+            }
+        }
+
+        records += pending.size();
+        pending.clear();
+    }
+
+    /**
+     * Replays the records of the journal starting at the given offset into the journaled entries, stopping at the first
+     * partially written or corrupt record.
+     *
+     * @return offset past the last valid record
+     */
+    private int applyRecords(final byte[] journal, final int start, final Set<String> changed) {
+        final ByteBuffer buffer = ByteBuffer.wrap(journal);
+        final CRC32 crc = new CRC32();
+
+        int offset = start;
+        while ((offset + 8) <= journal.length) {
+            final int payloadLength = buffer.getInt(offset);
+            if ((payloadLength < 5) || (payloadLength > (journal.length - offset - 8))) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(journal, offset + 8, payloadLength);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+
+            final byte operation = journal[offset + 8];
+            final int aliasLength = buffer.getInt(offset + 9);
+            final int aliasOffset = offset + 13;
+            final String alias = new String(journal, aliasOffset, aliasLength, StandardCharsets.UTF_8);
+
+            if (operation == STORE) {
+                journaled.put(alias,
+                    Arrays.copyOfRange(journal, aliasOffset + aliasLength, offset + 8 + payloadLength));
+            } else {
+                journaled.remove(alias);
+            }
+            changed.add(alias);
+
+            records++;
+            offset += 8 + payloadLength;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Replays the records appended by other writers since the journal was last read or written, or the whole journal
+     * if it has been replaced by compaction, and merges them with the loaded entries. Entries with pending changes keep
+     * the pending value. Must be called holding the lock of the journal file.
+     */
+    private void catchUp(final FileChannel channel) throws IOException, CredentialStoreException {
+        final long size = channel.size();
+        final boolean replaced = !Objects.equals(fileKey, fileKeyOf(location)) || (size < length);
+        if (!replaced && (size == length)) {
+            return;
+        }
+
+        final Set<String> changed = new HashSet<>();
+        final long start;
+        if (replaced) {
+            final byte[] header = header(salt, iterations, verifier);
+            if ((size < header.length) || !Arrays.equals(header, read(channel, 0, header.length))) {
+                throw new CredentialStoreException(
+                        "Credential store journal was replaced by an unrelated journal: " + location);
+            }
+
+            changed.addAll(journaled.keySet());
+            journaled.clear();
+            records = 0;
+            start = header.length;
+        } else {
+            start = length;
+        }
+
+        length = start + applyRecords(read(channel, start, (int) (size - start)), 0, changed);
+        fileKey = fileKeyOf(location);
+
+        final Set<String> pendingAliases = pending.stream().map(change -> change.alias).collect(Collectors.toSet());
+        for (final String alias : changed) {
+            if (pendingAliases.contains(alias)) {
+                continue;
+            }
+
+            final byte[] sealed = journaled.get(alias);
+            if (sealed == null) {
+                entries.remove(alias);
+            } else {
+                entries.put(alias, sealed);
+            }
+        }
+    }
+
+    private void checkModifiable() throws CredentialStoreException {
+        if (!modifiable) {
+            throw new CredentialStoreException("Credential store is not modifiable");
+        }
+    }
+
+    private void replay() throws CredentialStoreException {
+        final byte[] journal;
+        try {
+            journal = Files.readAllBytes(location);
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to read credential store journal: " + location, e);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(journal);
+        if ((journal.length < HEADER_LENGTH) || (buffer.getInt(0) != FORMAT_MAGIC)) {
+            throw new CredentialStoreException("Not a credential store journal: " + location);
+        }
+
+        final int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new CredentialStoreException("Unsupported credential store journal version: " + version);
+        }
+
+        salt = Arrays.copyOfRange(journal, 8, 8 + EntryCipher.SALT_LENGTH);
+        iterations = buffer.getInt(24);
+        final int verifierLength = buffer.getInt(28);
+        verifier = Arrays.copyOfRange(journal, HEADER_LENGTH, HEADER_LENGTH + verifierLength);
+
+        final int offset = applyRecords(journal, HEADER_LENGTH + verifierLength, new HashSet<>());
+        if (offset < journal.length) {
+            LOG.warn("Ignoring {} bytes of partially written records at the end of credential store journal: {}",
+                journal.length - offset, location);
+        }
+
+        length = offset;
+        entries.putAll(journaled);
+
+        try {
+            fileKey = fileKeyOf(location);
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to read credential store journal: " + location, e);
+        }
+    }
+
+    private boolean shouldCompact() {
+        if (records < MINIMUM_RECORDS_TO_COMPACT) {
+            return false;
+        }
+
+        final int stale = records - journaled.size();
+
+        return ((double) stale / records) >= compactionThreshold;
+    }
+
+    private static double compactionThresholdFrom(final Map<String, String> attributes)
+            throws CredentialStoreException {
+        final String givenThreshold = attributes.get("compactionThreshold");
+        if (givenThreshold == null) {
+            return DEFAULT_COMPACTION_THRESHOLD;
+        }
+
+        try {
+            final double threshold = Double.parseDouble(givenThreshold);
+            if ((threshold <= 0) || (threshold > 1)) {
+                throw new CredentialStoreException(
+                        "The `compactionThreshold` attribute must be within (0, 1], given: " + givenThreshold);
+            }
+
+            return threshold;
+        } catch (final NumberFormatException e) {
+            throw new CredentialStoreException(
+                    "The `compactionThreshold` attribute must be a number, given: " + givenThreshold, e);
+        }
+    }
+
+    private static synchronized ExecutorService compactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "credential-store-compaction");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+
+        return compactionExecutor;
+    }
+
+    private static Object fileKeyOf(final Path location) throws IOException {
+        if (!Files.exists(location)) {
+            return null;
+        }
+
+        return Files.readAttributes(location, BasicFileAttributes.class).fileKey();
+    }
+
+    private static byte[] read(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && (channel.read(buffer, position + buffer.position()) >= 0)) {
+            // reading until the given length or the end of the journal
+        }
+
+        return buffer.array();
+    }
+
+    private static void write(final FileChannel channel, final byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
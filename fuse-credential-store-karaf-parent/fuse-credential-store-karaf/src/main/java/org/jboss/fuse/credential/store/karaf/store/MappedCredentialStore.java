@@ -0,0 +1,493 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.wildfly.security.credential.Credential;
+import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.CredentialStoreSpi;
+import org.wildfly.security.credential.store.UnsupportedCredentialTypeException;
+
+/**
+ * {@link CredentialStoreSpi} keeping clear passwords in a memory-mapped file with a hashed alias index, suited for
+ * Credential stores with many entries of which only a few are used. Opening the Credential store maps the file and
+ * derives the key, no entries are read or decrypted. Looking up an alias reads a single index slot, in case of
+ * collision a few, and decrypts only the requested entry.
+ *
+ * Each entry is encrypted on its own using AES in GCM mode with the alias as additional authenticated data, the key is
+ * derived from the Credential store password using PBKDF2. Changes are kept in memory until flushed, when the file is
+ * rewritten, copying the unchanged entries without decrypting them, and atomically replaced.
+ *
+ * Supported attributes:
+ * <ul>
+ * <li>{@code location} - path to the Credential store file, required</li>
+ * <li>{@code modifiable} - if the Credential store can be modified, {@code true} by default</li>
+ * <li>{@code iterations} - PBKDF2 iterations used when creating a new Credential store file, 100000 by default</li>
+ * </ul>
+ *
+ * File format, all integers big endian:
+ *
+ * <pre>
+ * header:  magic (int), version (int), salt (16 bytes), iterations (int), bucket count (int), entry count (int),
+ *          verifier length (int), verifier
+ * index:   bucket count entry offsets (int), 0 for empty bucket, open addressing with linear probing
+ * entries: alias length (int), alias (UTF-8), sealed length (int), sealed value (IV, cipher text and tag)
+ * </pre>
+ */
+public final class MappedCredentialStore extends CredentialStoreSpi {
+
+    public static final String MAPPED_CREDENTIAL_STORE = "MappedCredentialStore";
+
+    static final int FORMAT_MAGIC = 0x46435331;
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int EMPTY_BUCKET = 0;
+
+    private static final int HEADER_LENGTH = 40;
+
+    private static final int MINIMUM_BUCKETS = 16;
+
+    /**
+     * Marks the entries removed, but not yet flushed.
+     */
+    private static final byte[] REMOVED = new byte[0];
+
+    /**
+     * Read only view of the Credential store file, the absolute reads used are safe for concurrent use.
+     */
+    static final class MappedFile {
+
+        private final int bucketCount;
+
+        private final ByteBuffer buffer;
+
+        private final int entryCount;
+
+        private final int indexOffset;
+
+        private final int iterations;
+
+        private final byte[] salt;
+
+        private final byte[] verifier;
+
+        private MappedFile(final ByteBuffer buffer) throws CredentialStoreException {
+            this.buffer = buffer;
+
+            if ((buffer.capacity() < HEADER_LENGTH) || (buffer.getInt(0) != FORMAT_MAGIC)) {
+                throw new CredentialStoreException("Not a mapped credential store file");
+            }
+
+            final int version = buffer.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new CredentialStoreException("Unsupported mapped credential store file version: " + version);
+            }
+
+            salt = bytes(buffer, 8, EntryCipher.SALT_LENGTH);
+            iterations = buffer.getInt(24);
+            bucketCount = buffer.getInt(28);
+            entryCount = buffer.getInt(32);
+            final int verifierLength = buffer.getInt(36);
+            verifier = bytes(buffer, HEADER_LENGTH, verifierLength);
+            indexOffset = HEADER_LENGTH + verifierLength;
+        }
+
+        static MappedFile open(final Path location) throws CredentialStoreException {
+            try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                return new MappedFile(buffer);
+            } catch (final IOException e) {
+                throw new CredentialStoreException("Unable to open credential store file: " + location, e);
+            }
+        }
+
+        Map<String, byte[]> entries() {
+            final Map<String, byte[]> entries = new TreeMap<>();
+
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                final int offset = buffer.getInt(indexOffset + (bucket * 4));
+
+                if (offset != EMPTY_BUCKET) {
+                    entries.put(aliasAt(offset), sealedAt(offset));
+                }
+            }
+
+            return entries;
+        }
+
+        int entryCount() {
+            return entryCount;
+        }
+
+        /**
+         * Finds the sealed value of the given alias.
+         *
+         * @return sealed value or {@code null} if there is no such alias
+         */
+        byte[] find(final String alias, final byte[] aliasBytes) {
+            int bucket = bucketOf(alias, bucketCount);
+
+            for (int probes = 0; probes < bucketCount; probes++) {
+                final int offset = buffer.getInt(indexOffset + (bucket * 4));
+
+                if (offset == EMPTY_BUCKET) {
+                    return null;
+                }
+
+                if (aliasMatches(offset, aliasBytes)) {
+                    return sealedAt(offset);
+                }
+
+                bucket = (bucket + 1) & (bucketCount - 1);
+            }
+
+            return null;
+        }
+
+        private String aliasAt(final int offset) {
+            return new String(bytes(buffer, offset + 4, buffer.getInt(offset)), StandardCharsets.UTF_8);
+        }
+
+        private boolean aliasMatches(final int offset, final byte[] aliasBytes) {
+            if (buffer.getInt(offset) != aliasBytes.length) {
+                return false;
+            }
+
+            for (int i = 0; i < aliasBytes.length; i++) {
+                if (buffer.get(offset + 4 + i) != aliasBytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private byte[] sealedAt(final int offset) {
+            final int sealedOffset = offset + 4 + buffer.getInt(offset);
+
+            return bytes(buffer, sealedOffset + 4, buffer.getInt(sealedOffset));
+        }
+    }
+
+    private EntryCipher cipher;
+
+    private int iterations;
+
+    private Path location;
+
+    private volatile MappedFile mapped;
+
+    private boolean modifiable;
+
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+
+    private byte[] salt;
+
+    private byte[] verifier;
+
+    static int bucketOf(final String alias, final int bucketCount) {
+        final int hash = alias.hashCode();
+
+        return (hash ^ (hash >>> 16)) & (bucketCount - 1);
+    }
+
+    static int bucketCountFor(final int entryCount) {
+        int bucketCount = MINIMUM_BUCKETS;
+        while (bucketCount < (entryCount * 2)) {
+            bucketCount <<= 1;
+        }
+
+        return bucketCount;
+    }
+
+    /**
+     * Formats the Credential store file content holding the given entries.
+     *
+     * @param salt
+     *            key derivation salt
+     * @param iterations
+     *            key derivation iterations
+     * @param verifier
+     *            sealed verifier
+     * @param entries
+     *            aliases and their sealed values
+     * @return the file content
+     * @throws CredentialStoreException
+     *             if the entries would not fit into a single file
+     */
+    static byte[] format(final byte[] salt, final int iterations, final byte[] verifier,
+            final Map<String, byte[]> entries) throws CredentialStoreException {
+        final int bucketCount = bucketCountFor(entries.size());
+        final int indexOffset = HEADER_LENGTH + verifier.length;
+
+        long length = indexOffset + (bucketCount * 4L);
+        final Map<String, byte[]> aliases = new TreeMap<>();
+        for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final byte[] aliasBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            aliases.put(entry.getKey(), aliasBytes);
+
+            length += 8 + aliasBytes.length + entry.getValue().length;
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new CredentialStoreException("Too many entries to store in a mapped credential store file");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(FORMAT_MAGIC).putInt(FORMAT_VERSION).put(salt).putInt(iterations).putInt(bucketCount)
+            .putInt(entries.size()).putInt(verifier.length).put(verifier);
+
+        int offset = indexOffset + (bucketCount * 4);
+        for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final String alias = entry.getKey();
+            final byte[] aliasBytes = aliases.get(alias);
+            final byte[] sealed = entry.getValue();
+
+            int bucket = bucketOf(alias, bucketCount);
+            while (buffer.getInt(indexOffset + (bucket * 4)) != EMPTY_BUCKET) {
+                bucket = (bucket + 1) & (bucketCount - 1);
+            }
+            buffer.putInt(indexOffset + (bucket * 4), offset);
+
+            buffer.putInt(offset, aliasBytes.length);
+            offset += 4;
+            for (final byte b : aliasBytes) {
+                buffer.put(offset++, b);
+            }
+            buffer.putInt(offset, sealed.length);
+            offset += 4;
+            for (final byte b : sealed) {
+                buffer.put(offset++, b);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Determines the number of PBKDF2 iterations for a new Credential store file from the {@code iterations}
+     * attribute.
+     */
+    static int iterationsFrom(final Map<String, String> attributes) throws CredentialStoreException {
+        final String givenIterations = attributes.get("iterations");
+        if (givenIterations == null) {
+            return EntryCipher.DEFAULT_ITERATIONS;
+        }
+
+        try {
+            return Integer.parseInt(givenIterations);
+        } catch (final NumberFormatException e) {
+            throw new CredentialStoreException("The `iterations` attribute must be a number, given: " + givenIterations,
+                    e);
+        }
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer, final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Writes the pending changes by rewriting the Credential store file and atomically replacing it.
+     */
+    @Override
+    public synchronized void flush() throws CredentialStoreException {
+        final MappedFile current = mapped;
+        if (pending.isEmpty() && (current != null)) {
+            return;
+        }
+
+        final Map<String, byte[]> entries = current == null ? new TreeMap<>() : current.entries();
+        pending.forEach((alias, sealed) -> {
+            if (sealed == REMOVED) {
+                entries.remove(alias);
+            } else {
+                entries.put(alias, sealed);
+            }
+        });
+
+        final byte[] content = format(salt, iterations, verifier, entries);
+
+        try {
+            final Path absoluteLocation = location.toAbsolutePath();
+            final Path directory = absoluteLocation.getParent();
+            Files.createDirectories(directory);
+
+            final Path temporary = Files.createTempFile(directory, absoluteLocation.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, content);
+                Files.move(temporary, absoluteLocation, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (final IOException e) {
+            throw new CredentialStoreException("Unable to write credential store file: " + location, e);
+        }
+
+        mapped = MappedFile.open(location);
+        pending.clear();
+    }
+
+    @Override
+    public Set<String> getAliases() throws CredentialStoreException {
+        final MappedFile current = mapped;
+
+        final Set<String> aliases = new HashSet<>();
+        if (current != null) {
+            aliases.addAll(current.entries().keySet());
+        }
+
+        pending.forEach((alias, sealed) -> {
+            if (sealed == REMOVED) {
+                aliases.remove(alias);
+            } else {
+                aliases.add(alias);
+            }
+        });
+
+        return aliases;
+    }
+
+    @Override
+    public void initialize(final Map<String, String> attributes, final ProtectionParameter protectionParameter)
+            throws CredentialStoreException {
+        final String givenLocation = attributes.get("location");
+        if (givenLocation == null) {
+            throw new CredentialStoreException("The `location` attribute is required");
+        }
+
+        location = Paths.get(givenLocation);
+        modifiable = !"false".equalsIgnoreCase(attributes.get("modifiable"));
+
+        final MappedFile existing = Files.exists(location) ? MappedFile.open(location) : null;
+        if (existing == null) {
+            salt = EntryCipher.newSalt();
+            iterations = iterationsFrom(attributes);
+        } else {
+            salt = existing.salt;
+            iterations = existing.iterations;
+        }
+
+        final char[] password = Credentials.passwordFrom(protectionParameter);
+        try {
+            cipher = new EntryCipher(password, salt, iterations);
+            verifier = existing == null ? cipher.createVerifier() : existing.verifier;
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to derive the credential store key", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+
+        if (!cipher.verify(verifier)) {
+            throw new CredentialStoreException(
+                    "Unable to open credential store file: " + location + ", invalid password");
+        }
+
+        mapped = existing;
+
+        pending.clear();
+        initialized = true;
+    }
+
+    @Override
+    public boolean isModifiable() {
+        return modifiable;
+    }
+
+    @Override
+    public synchronized void remove(final String credentialAlias, final Class<? extends Credential> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec)
+            throws CredentialStoreException {
+        checkModifiable();
+
+        pending.put(credentialAlias, REMOVED);
+    }
+
+    @Override
+    public <C extends Credential> C retrieve(final String credentialAlias, final Class<C> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec,
+            final ProtectionParameter protectionParameter) throws CredentialStoreException {
+        if (!Credentials.isClearPasswordRequested(credentialType, credentialAlgorithm)) {
+            return null;
+        }
+
+        final byte[] aliasBytes = credentialAlias.getBytes(StandardCharsets.UTF_8);
+
+        byte[] sealed = pending.get(credentialAlias);
+        if (sealed == null) {
+            final MappedFile current = mapped;
+            sealed = current == null ? null : current.find(credentialAlias, aliasBytes);
+        }
+
+        if ((sealed == null) || (sealed == REMOVED)) {
+            return null;
+        }
+
+        try {
+            return credentialType.cast(Credentials.passwordCredential(cipher.open(aliasBytes, sealed)));
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to decrypt the value of alias: " + credentialAlias, e);
+        }
+    }
+
+    @Override
+    public synchronized void store(final String credentialAlias, final Credential credential,
+            final ProtectionParameter protectionParameter)
+            throws CredentialStoreException, UnsupportedCredentialTypeException {
+        checkModifiable();
+
+        final char[] value = Credentials.valueOf(credential);
+        try {
+            pending.put(credentialAlias, cipher.seal(credentialAlias.getBytes(StandardCharsets.UTF_8), value));
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to encrypt the value of alias: " + credentialAlias, e);
+        } finally {
+            Arrays.fill(value, '\0');
+        }
+    }
+
+    private void checkModifiable() throws CredentialStoreException {
+        if (!modifiable) {
+            throw new CredentialStoreException("Credential store is not modifiable");
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.jboss.fuse.credential.store.karaf.Defaults;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.ProviderHelper;
+import org.wildfly.security.credential.Credential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.CredentialStoreSpi;
+import org.wildfly.security.credential.store.UnsupportedCredentialTypeException;
+
+/**
+ * {@link CredentialStoreSpi} spreading the aliases over a number of Credential store files, shards, by the hash of the
+ * alias. Each shard is a Credential store of its own, opened, and its integrity verified, only when an alias within it
+ * is first used. Shards that no used alias falls into are never opened, and shards needed by aliases retrieved
+ * concurrently are opened concurrently. Operations over all aliases open the shards in parallel.
+ *
+ * Supported attributes:
+ * <ul>
+ * <li>{@code location} - base path of the shard files, the shard files are named by appending the shard number, e.g.
+ * {@code credential.store.0}, required</li>
+ * <li>{@code shards} - number of shards, must not be changed once the Credential store has been created, required</li>
+ * <li>{@code shardType} - Credential store algorithm of the shards, {@code KeyStoreCredentialStore} by default</li>
+ * <li>{@code shardProvider} - provider of the shard Credential store algorithm, WildFly Elytron by default</li>
+ * </ul>
+ * All other attributes are passed on to the shards.
+ */
+public final class ShardedCredentialStore extends CredentialStoreSpi {
+
+    public static final String SHARDED_CREDENTIAL_STORE = "ShardedCredentialStore";
+
+    private static final Set<String> OWN_ATTRIBUTES = new HashSet<>(
+        Arrays.asList("location", "shards", "shardType", "shardProvider"));
+
+    /**
+     * Lazily opened shard.
+     */
+    private final class Shard {
+
+        private volatile CredentialStore credentialStore;
+
+        private final Path location;
+
+        private Shard(final Path location) {
+            this.location = location;
+        }
+
+        private CredentialStore credentialStore() throws CredentialStoreException {
+            CredentialStore current = credentialStore;
+            if (current != null) {
+                return current;
+            }
+
+            synchronized (this) {
+                current = credentialStore;
+                if (current == null) {
+                    current = open(location);
+                    credentialStore = current;
+                }
+            }
+
+            return current;
+        }
+
+        private boolean isOpen() {
+            return credentialStore != null;
+        }
+    }
+
+    /**
+     * Runs a shard operation, allowing for {@link CredentialStoreException}s to be thrown from parallel streams.
+     */
+    @FunctionalInterface
+    private interface ShardOperation {
+        void apply(Shard shard) throws CredentialStoreException;
+    }
+
+    private boolean modifiable;
+
+    private ProtectionParameter protectionParameter;
+
+    private Map<String, String> shardAttributes;
+
+    private String shardType;
+
+    private Provider shardProvider;
+
+    private Shard[] shards;
+
+    /**
+     * Returns the locations of the shard files of the Credential store configured by the given attributes.
+     *
+     * @param attributes
+     *            Credential store attributes
+     * @return locations of the shard files, empty if the attributes do not give the location and a positive number of
+     *         shards
+     */
+    public static List<Path> shardLocationsOf(final Map<String, String> attributes) {
+        final String location = attributes.get("location");
+
+        final int shardCount;
+        try {
+            shardCount = Integer.parseInt(String.valueOf(attributes.get("shards")));
+        } catch (final NumberFormatException e) {
+            return Collections.emptyList();
+        }
+
+        if (location == null) {
+            return Collections.emptyList();
+        }
+
+        return IntStream.range(0, shardCount).mapToObj(i -> shardLocation(location, i)).collect(Collectors.toList());
+    }
+
+    static int shardOf(final String alias, final int shardCount) {
+        // aliases of KeyStore based Credential stores are case insensitive
+        return Math.floorMod(alias.toLowerCase(Locale.ROOT).hashCode(), shardCount);
+    }
+
+    /**
+     * Flushes the opened shards, and creates the shards that do not exist yet.
+     */
+    @Override
+    public void flush() throws CredentialStoreException {
+        inParallel(shard -> {
+            if (shard.isOpen() || !Files.exists(shard.location)) {
+                shard.credentialStore().flush();
+            }
+        });
+    }
+
+    @Override
+    public Set<String> getAliases() throws CredentialStoreException {
+        final Set<String> aliases = Collections.synchronizedSet(new HashSet<>());
+        inParallel(shard -> aliases.addAll(shard.credentialStore().getAliases()));
+
+        return new HashSet<>(aliases);
+    }
+
+    @Override
+    public void initialize(final Map<String, String> attributes, final ProtectionParameter protectionParameter)
+            throws CredentialStoreException {
+        final String givenLocation = attributes.get("location");
+        if (givenLocation == null) {
+            throw new CredentialStoreException("The `location` attribute is required");
+        }
+
+        final String givenShards = attributes.get("shards");
+        final int shardCount;
+        try {
+            shardCount = Integer.parseInt(String.valueOf(givenShards));
+        } catch (final NumberFormatException e) {
+            throw new CredentialStoreException("The `shards` attribute must be a number, given: " + givenShards, e);
+        }
+
+        if (shardCount < 1) {
+            throw new CredentialStoreException("The `shards` attribute must be positive, given: " + givenShards);
+        }
+
+        shardType = attributes.getOrDefault("shardType", Defaults.CREDENTIAL_STORE_ALGORITHM);
+        try {
+            shardProvider = ProviderHelper.provider(attributes.getOrDefault("shardProvider", Defaults.PROVIDER));
+        } catch (final IllegalArgumentException e) {
+            throw new CredentialStoreException(e.getMessage(), e);
+        }
+
+        shardAttributes = CredentialStoreHelper.defaultCredentialStoreAttributesFor(shardType);
+        attributes.forEach((key, value) -> {
+            if (!OWN_ATTRIBUTES.contains(key)) {
+                shardAttributes.put(key, value);
+            }
+        });
+
+        modifiable = !"false".equalsIgnoreCase(attributes.get("modifiable"));
+        this.protectionParameter = protectionParameter;
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardLocation(givenLocation, i));
+        }
+
+        initialized = true;
+    }
+
+    @Override
+    public boolean isModifiable() {
+        return modifiable;
+    }
+
+    @Override
+    public void remove(final String credentialAlias, final Class<? extends Credential> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec)
+            throws CredentialStoreException {
+        shardFor(credentialAlias).remove(credentialAlias, credentialType, credentialAlgorithm, parameterSpec);
+    }
+
+    @Override
+    public <C extends Credential> C retrieve(final String credentialAlias, final Class<C> credentialType,
+            final String credentialAlgorithm, final AlgorithmParameterSpec parameterSpec,
+            final ProtectionParameter protectionParameter) throws CredentialStoreException {
+        return shardFor(credentialAlias).retrieve(credentialAlias, credentialType, credentialAlgorithm, parameterSpec,
+            protectionParameter);
+    }
+
+    @Override
+    public void store(final String credentialAlias, final Credential credential,
+            final ProtectionParameter protectionParameter)
+            throws CredentialStoreException, UnsupportedCredentialTypeException {
+        shardFor(credentialAlias).store(credentialAlias, credential, protectionParameter);
+    }
+
+    /**
+     * Number of shards opened so far.
+     */
+    int openedShards() {
+        int opened = 0;
+        for (final Shard shard : shards) {
+            if (shard.isOpen()) {
+                opened++;
+            }
+        }
+
+        return opened;
+    }
+
+    private void inParallel(final ShardOperation operation) throws CredentialStoreException {
+        final CredentialStoreException[] failure = new CredentialStoreException[1];
+
+        IntStream.range(0, shards.length).parallel().forEach(i -> {
+            try {
+                operation.apply(shards[i]);
+            } catch (final CredentialStoreException e) {
+                synchronized (failure) {
+                    if (failure[0] == null) {
+                        failure[0] = e;
+                    } else {
+                        failure[0].addSuppressed(e);
+                    }
+                }
+            }
+        });
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private CredentialStore open(final Path location) throws CredentialStoreException {
+        final Map<String, String> attributes = new HashMap<>(shardAttributes);
+        attributes.put("location", location.toString());
+
+        try {
+            final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreInstance(shardType,
+                shardProvider);
+            credentialStore.initialize(attributes, protectionParameter);
+
+            return credentialStore;
+        } catch (final GeneralSecurityException e) {
+            throw new CredentialStoreException("Unable to open credential store shard: " + location, e);
+        }
+    }
+
+    private CredentialStore shardFor(final String alias) throws CredentialStoreException {
+        return shards[shardOf(alias, shards.length)].credentialStore();
+    }
+
+    private static Path shardLocation(final String location, final int shard) {
+        return Paths.get(location + "." + shard);
+    }
+}
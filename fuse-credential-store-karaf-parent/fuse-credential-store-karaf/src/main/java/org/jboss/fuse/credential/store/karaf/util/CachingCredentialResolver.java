@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialResolver;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * {@link CredentialResolver} with a bounded cache of the resolved values. Values are kept for the time to live, aliases
+ * not found in the Credential store for the (usually shorter) negative time to live, after which they are resolved
+ * again. Concurrent lookups of the same alias that is not cached wait for a single retrieval from the Credential store.
+ * When the number of cached values exceeds the maximum size, the least recently used values are evicted. Failures to
+ * open the Credential store are not cached.
+ */
+public final class CachingCredentialResolver implements CredentialResolver {
+
+    /**
+     * Cached value of an alias, the value is {@code null} for missing aliases. The expiry is set once the value is
+     * loaded.
+     */
+    private static final class Entry {
+
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private volatile long lastAccess;
+
+        private final CompletableFuture<String> value = new CompletableFuture<>();
+
+        private Entry(final long now) {
+            lastAccess = now;
+        }
+    }
+
+    private static final String CALLER = "resolver";
+
+    /**
+     * When evicting, evict down to this fraction of the maximum size, so the eviction is not performed on every miss.
+     */
+    private static final double EVICT_TO = 0.9;
+
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final int maximumSize;
+
+    private final long negativeTimeToLiveNanos;
+
+    private final CredentialStoreRegistry registry;
+
+    private final long timeToLiveNanos;
+
+    /**
+     * Creates the resolver.
+     *
+     * @param registry
+     *            registry of the Credential stores to resolve from
+     * @param maximumSize
+     *            maximum number of cached values
+     * @param timeToLiveNanos
+     *            how long the resolved values are cached, in nanoseconds
+     * @param negativeTimeToLiveNanos
+     *            how long the aliases found missing are cached, in nanoseconds
+     */
+    public CachingCredentialResolver(final CredentialStoreRegistry registry, final int maximumSize,
+            final long timeToLiveNanos, final long negativeTimeToLiveNanos) {
+        this(registry, maximumSize, timeToLiveNanos, negativeTimeToLiveNanos, System::nanoTime);
+    }
+
+    CachingCredentialResolver(final CredentialStoreRegistry registry, final int maximumSize,
+            final long timeToLiveNanos, final long negativeTimeToLiveNanos, final LongSupplier clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum cache size must be positive, given: " + maximumSize);
+        }
+
+        this.registry = registry;
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.negativeTimeToLiveNanos = negativeTimeToLiveNanos;
+        this.clock = clock;
+    }
+
+    @Override
+    public void invalidate() {
+        entries.clear();
+    }
+
+    @Override
+    public String resolve(final String reference) throws GeneralSecurityException, IOException {
+        final String storeReference = CredentialStoreHelper.couldBeCredentialStoreAlias(reference)
+            ? CredentialStoreHelper.toCredentialStoreAlias(reference) : reference;
+
+        while (true) {
+            final long now = clock.getAsLong();
+
+            final Entry entry = entries.get(storeReference);
+            if (entry != null) {
+                if (now - entry.expiresAt >= 0) {
+                    entries.remove(storeReference, entry);
+
+                    continue;
+                }
+
+                entry.lastAccess = now;
+                CredentialStoreMetrics.metrics().cacheHit();
+
+                return await(entry);
+            }
+
+            final Entry created = new Entry(now);
+            final Entry existing = entries.putIfAbsent(storeReference, created);
+            if (existing != null) {
+                // another thread is loading it, or has just loaded it
+                continue;
+            }
+
+            CredentialStoreMetrics.metrics().cacheMiss();
+            load(storeReference, created);
+            evictIfNeeded();
+
+            return await(created);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictIfNeeded() {
+        if (entries.size() <= maximumSize) {
+            return;
+        }
+
+        synchronized (entries) {
+            final int toEvict = entries.size() - (int) (maximumSize * EVICT_TO);
+            if (toEvict <= 0) {
+                return;
+            }
+
+            final List<Map.Entry<String, Entry>> leastRecentlyUsed = new ArrayList<>(entries.entrySet());
+            leastRecentlyUsed.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+            for (int i = 0; (i < toEvict) && (i < leastRecentlyUsed.size()); i++) {
+                final Map.Entry<String, Entry> evicted = leastRecentlyUsed.get(i);
+                entries.remove(evicted.getKey(), evicted.getValue());
+            }
+        }
+    }
+
+    private void load(final String storeReference, final Entry entry) {
+        try {
+            final CredentialStore credentialStore = registry.store(registry.storeNameOf(storeReference))
+                    .credentialStore();
+
+            final long start = System.nanoTime();
+            final String value = CredentialStoreHelper.retrieve(credentialStore, registry.aliasOf(storeReference));
+            AuditLog.audit().recordSince(storeReference, null, value == null ? Outcome.missing : Outcome.retrieved,
+                start, CALLER);
+
+            entry.expiresAt = clock.getAsLong() + (value == null ? negativeTimeToLiveNanos : timeToLiveNanos);
+            entry.value.complete(value);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // not cached, the next lookup tries again
+            entries.remove(storeReference, entry);
+            entry.value.completeExceptionally(e);
+        }
+    }
+
+    private static String await(final Entry entry) throws GeneralSecurityException, IOException {
+        try {
+            return entry.value.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for the secret to be resolved");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw (RuntimeException) cause;
+        }
+    }
+}
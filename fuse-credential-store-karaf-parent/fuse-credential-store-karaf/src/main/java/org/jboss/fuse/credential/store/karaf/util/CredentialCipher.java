@@ -0,0 +1,192 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialCipherService;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.SecretKeyCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.UnsupportedCredentialTypeException;
+import org.wildfly.security.password.interfaces.ClearPassword;
+
+/**
+ * {@link CredentialCipherService} using AES in GCM mode, the encrypted value holds the random initialization vector
+ * followed by the cipher text and the authentication tag. Each thread keeps its own {@link Cipher} instance, so the
+ * provider lookup performed by {@link Cipher#getInstance(String)} is paid once per thread, and only the cipher
+ * initialization with the fresh initialization vector is performed for each value.
+ *
+ * The key is held in the Credential store as a {@link SecretKeyCredential}, or for Credential stores that hold only
+ * passwords, as a password holding the Base64 encoded key.
+ */
+public final class CredentialCipher implements CredentialCipherService {
+
+    private static final String ALGORITHM = "AES";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int KEY_SIZE = 256;
+
+    private static final int TAG_LENGTH = 128;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(CredentialCipher::newCipher);
+
+    private final SecretKey key;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public CredentialCipher(final SecretKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Generates a new key suitable for the cipher.
+     *
+     * @return new AES key
+     * @throws NoSuchAlgorithmException
+     */
+    public static SecretKey generateKey() throws NoSuchAlgorithmException {
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance(ALGORITHM);
+        keyGenerator.init(KEY_SIZE);
+
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Determines if the given value is in the inline encrypted {@code ENC:<base64>} format.
+     *
+     * @param value
+     *            value to check
+     * @return true if the value is inline encrypted
+     */
+    public static boolean isEncrypted(final String value) {
+        return (value != null) && value.startsWith(PREFIX) && (value.length() > PREFIX.length());
+    }
+
+    /**
+     * Loads the key stored in the Credential store under the given alias.
+     *
+     * @param credentialStore
+     *            Credential store holding the key
+     * @param alias
+     *            alias of the key
+     * @return the cipher using the key
+     * @throws CredentialStoreException
+     *             if there is no key stored under the alias
+     */
+    public static CredentialCipher load(final CredentialStore credentialStore, final String alias)
+            throws CredentialStoreException {
+        SecretKeyCredential secretKeyCredential = null;
+        try {
+            secretKeyCredential = credentialStore.retrieve(alias, SecretKeyCredential.class);
+        } catch (final CredentialStoreException | UnsupportedOperationException e) {
+            // Credential store holding only passwords
+        }
+
+        if (secretKeyCredential != null) {
+            return new CredentialCipher(secretKeyCredential.getSecretKey());
+        }
+
+        final PasswordCredential passwordCredential = credentialStore.retrieve(alias, PasswordCredential.class);
+        if (passwordCredential == null) {
+            throw new CredentialStoreException("Encryption key `" + alias + "` not found in the credential store");
+        }
+
+        final char[] encoded = passwordCredential.getPassword().castAs(ClearPassword.class).getPassword();
+
+        return new CredentialCipher(new SecretKeySpec(Base64.getDecoder().decode(new String(encoded)), ALGORITHM));
+    }
+
+    /**
+     * Stores the given key in the Credential store under the given alias, as a {@link SecretKeyCredential} if the
+     * Credential store supports it, otherwise as a password holding the Base64 encoded key.
+     *
+     * @param credentialStore
+     *            Credential store to hold the key
+     * @param alias
+     *            alias of the key
+     * @param key
+     *            the key
+     * @throws GeneralSecurityException
+     */
+    public static void store(final CredentialStore credentialStore, final String alias, final SecretKey key)
+            throws GeneralSecurityException {
+        try {
+            credentialStore.store(alias, new SecretKeyCredential(key));
+        } catch (final UnsupportedCredentialTypeException e) {
+            credentialStore.store(alias,
+                CredentialStoreHelper.clearPasswordCredential(Base64.getEncoder().encodeToString(key.getEncoded())));
+        }
+    }
+
+    @Override
+    public String decrypt(final String value) throws GeneralSecurityException {
+        if (!isEncrypted(value)) {
+            throw new IllegalArgumentException("Given value is not in ENC:<base64> format");
+        }
+
+        final byte[] encrypted = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+        if (encrypted.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Encrypted value is too short");
+        }
+
+        final Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, encrypted, 0, IV_LENGTH));
+
+        final byte[] clear = cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+
+        return new String(clear, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String encrypt(final String value) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        final Cipher cipher = ciphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+
+        final byte[] clear = value.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer encrypted = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(clear.length));
+        encrypted.put(iv);
+        cipher.doFinal(ByteBuffer.wrap(clear), encrypted);
+
+        return PREFIX + Base64.getEncoder().encodeToString(encrypted.array());
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("The JVM does not support " + TRANSFORMATION, e);
+        }
+    }
+}
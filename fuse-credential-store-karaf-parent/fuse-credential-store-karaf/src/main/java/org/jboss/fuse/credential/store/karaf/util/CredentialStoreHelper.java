@@ -17,21 +17,34 @@ package org.jboss.fuse.credential.store.karaf.util;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static java.lang.System.getenv;
 
 import org.jboss.fuse.credential.store.karaf.Defaults;
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.store.FuseCredentialStoreProvider;
+import org.jboss.fuse.credential.store.karaf.util.ProtectionType.CredentialSourceHandler;
+import org.wildfly.security.credential.PasswordCredential;
 import org.wildfly.security.credential.source.CredentialSource;
 import org.wildfly.security.credential.store.CredentialStore;
 import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+import org.wildfly.security.credential.store.CredentialStoreException;
 import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+import org.wildfly.security.password.Password;
+import org.wildfly.security.password.PasswordFactory;
+import org.wildfly.security.password.interfaces.ClearPassword;
+import org.wildfly.security.password.spec.ClearPasswordSpec;
 
 import static org.jboss.fuse.credential.store.karaf.util.EnvironmentHelper.attributesFromEnvironment;
 
@@ -44,17 +57,61 @@ public final class CredentialStoreHelper {
 
     private static final String CREDENTIAL_STORE_ATTR_ENV_PREFIX = "CREDENTIAL_STORE_ATTR_";
 
+    private static final String CREDENTIAL_STORE_CIPHER_KEY_ENV = "CREDENTIAL_STORE_CIPHER_KEY";
+
+    private static final String CREDENTIAL_STORE_KEYSTORES_ENV = "CREDENTIAL_STORE_KEYSTORES";
+
     private static final String CREDENTIAL_STORE_PROVIDER_ENV = "CREDENTIAL_STORE_PROVIDER";
 
+    private static final String CREDENTIAL_STORE_RESOLUTION_ENV = "CREDENTIAL_STORE_RESOLUTION";
+
+    private static final String CREDENTIAL_STORE_RESOLVER_CACHE_SIZE_ENV = "CREDENTIAL_STORE_RESOLVER_CACHE_SIZE";
+
+    private static final String CREDENTIAL_STORE_RESOLVER_CACHE_TTL_ENV = "CREDENTIAL_STORE_RESOLVER_CACHE_TTL";
+
+    private static final String CREDENTIAL_STORE_RESOLVER_NEGATIVE_CACHE_TTL_ENV =
+        "CREDENTIAL_STORE_RESOLVER_NEGATIVE_CACHE_TTL";
+
+    private static final String CREDENTIAL_STORE_WATCH_ENV = "CREDENTIAL_STORE_WATCH";
+
+    private static final Provider FUSE_PROVIDER = ProviderHelper.provider(FuseCredentialStoreProvider.class.getName());
+
     /**
-     * Regular expression that matches store reference syntax
+     * Prefix of the store reference syntax, the reference is in {@code CS:alias} format
      */
-    private static final Pattern STORE_REFERENCE_REGEX = Pattern.compile("CS:(.+)");
+    private static final String STORE_REFERENCE_PREFIX = "CS:";
 
     private CredentialStoreHelper() {
         // utility class
     }
 
+    /**
+     * Creates a {@link PasswordCredential} holding the given secret as a clear password.
+     *
+     * @param secret
+     *            the secret value
+     * @return password credential to store in the Credential store
+     * @throws GeneralSecurityException
+     */
+    public static PasswordCredential clearPasswordCredential(final String secret) throws GeneralSecurityException {
+        final PasswordFactory passwordFactory = PasswordFactory.getInstance(ClearPassword.ALGORITHM_CLEAR,
+                ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+        final Password password = passwordFactory.generatePassword(new ClearPasswordSpec(secret.toCharArray()));
+
+        return new PasswordCredential(password);
+    }
+
+    /**
+     * Returns the alias of the key decrypting the inline encrypted {@code ENC:} values, configured by the
+     * {@code CREDENTIAL_STORE_CIPHER_KEY} environment variable. The alias can be prefixed by the name of the Credential
+     * store holding the key.
+     *
+     * @return the alias or {@code null} if the inline encrypted values are not used
+     */
+    public static String cipherKeyFromEnvironment() {
+        return getenv(CREDENTIAL_STORE_CIPHER_KEY_ENV);
+    }
+
     /**
      * Determines if any values are in the format of store reference.
      *
@@ -63,11 +120,54 @@ public final class CredentialStoreHelper {
      * @return true if any value is in the format of store reference
      */
     public static boolean containsStoreReferences(final Collection<String> values) {
-        return values.stream().anyMatch(STORE_REFERENCE_REGEX.asPredicate());
+        for (final String value : values) {
+            if (couldBeCredentialStoreAlias(value)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
+    /**
+     * Determines if the given value is in the format of store reference, i.e. {@code CS:alias} with non empty alias
+     * spanning a single line. Performs a single pass over the value without allocating, most values are rejected by
+     * looking at the first character.
+     *
+     * @param value
+     *            property value
+     * @return true if the value is in the format of store reference
+     */
     public static boolean couldBeCredentialStoreAlias(final String value) {
-        return STORE_REFERENCE_REGEX.matcher(value).matches();
+        if ((value == null) || !value.startsWith(STORE_REFERENCE_PREFIX)) {
+            return false;
+        }
+
+        final int length = value.length();
+        if (length == STORE_REFERENCE_PREFIX.length()) {
+            return false;
+        }
+
+        for (int i = STORE_REFERENCE_PREFIX.length(); i < length; i++) {
+            if (isLineTerminator(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates the {@link CachingCredentialResolver} resolving from the given Credential stores, with the cache
+     * configured by the {@code CREDENTIAL_STORE_RESOLVER_CACHE_SIZE}, {@code CREDENTIAL_STORE_RESOLVER_CACHE_TTL} and
+     * {@code CREDENTIAL_STORE_RESOLVER_NEGATIVE_CACHE_TTL} environment variables, the time to live given in seconds.
+     *
+     * @param registry
+     *            registry of the Credential stores
+     * @return the resolver
+     */
+    public static CachingCredentialResolver credentialResolverFromEnvironment(final CredentialStoreRegistry registry) {
+        return credentialResolverFromEnvironment(registry, getenv());
     }
 
     /**
@@ -78,22 +178,41 @@ public final class CredentialStoreHelper {
      * @throws IOException
      */
     public static CredentialStore credentialStoreFromEnvironment() throws GeneralSecurityException, IOException {
-        final String credentialStoreAlgorithm = Optional.ofNullable(getenv(CREDENTIAL_STORE_ALGORITHM_ENV))
-                .orElse(Defaults.CREDENTIAL_STORE_ALGORITHM);
+        final Map<String, String> environment = getenv();
 
-        final Provider provider = ProviderHelper.provider(
-                Optional.ofNullable(getenv(CREDENTIAL_STORE_PROVIDER_ENV)).orElse(ProviderHelper.WILDFLY_PROVIDER));
+        final String credentialStoreAlgorithm = credentialStoreAlgorithmFromEnvironment(environment);
 
-        final CredentialStore credentialStore = CredentialStore.getInstance(credentialStoreAlgorithm, provider);
+        final Provider provider = credentialStoreProviderFromEnvironment(environment);
 
-        final Map<String, String> attributes = defaultCredentialStoreAttributesFor(credentialStoreAlgorithm);
-        attributes.putAll(attributesFromEnvironment(CREDENTIAL_STORE_ATTR_ENV_PREFIX));
+        final Map<String, String> attributes = credentialStoreAttributesFromEnvironment(environment,
+                credentialStoreAlgorithm);
 
-        final ProtectionParameter protectionParameter = createProtectionParameterFromEnvironment();
+        final ProtectionParameter protectionParameter = createProtectionParameterFromEnvironment(environment);
 
-        credentialStore.initialize(attributes, protectionParameter);
+        return createCredentialStore(credentialStoreAlgorithm, provider, attributes, protectionParameter);
+    }
 
-        return credentialStore;
+    /**
+     * Creates new {@link CredentialStore} instance of the given algorithm. If the given provider does not support the
+     * algorithm, but the {@link FuseCredentialStoreProvider} does, the Credential store implementation from this bundle
+     * is used.
+     *
+     * @param credentialStoreAlgorithm
+     *            the Credential store algorithm
+     * @param provider
+     *            the configured provider
+     * @return uninitialized Credential store
+     * @throws NoSuchAlgorithmException
+     *             if neither of the providers supports the algorithm
+     */
+    public static CredentialStore credentialStoreInstance(final String credentialStoreAlgorithm,
+            final Provider provider) throws NoSuchAlgorithmException {
+        if ((provider.getService(CredentialStore.CREDENTIAL_STORE_TYPE, credentialStoreAlgorithm) == null)
+            && (FUSE_PROVIDER.getService(CredentialStore.CREDENTIAL_STORE_TYPE, credentialStoreAlgorithm) != null)) {
+            return CredentialStore.getInstance(credentialStoreAlgorithm, FUSE_PROVIDER);
+        }
+
+        return CredentialStore.getInstance(credentialStoreAlgorithm, provider);
     }
 
     public static Map<String, String> defaultCredentialStoreAttributesFor(final String credentialStoreAlgorithm) {
@@ -106,26 +225,179 @@ public final class CredentialStoreHelper {
         return defaults;
     }
 
+    /**
+     * Determines if any Credential store is configured by the environment variables: the default Credential store by
+     * the {@code CREDENTIAL_STORE_PROTECTION} environment variable, or any named Credential store.
+     *
+     * @return true if there is a Credential store configured
+     */
+    public static boolean isCredentialStoreConfiguredFromEnvironment() {
+        return isCredentialStoreConfigured(getenv());
+    }
+
+    /**
+     * Determines if the Credential store file should be watched for changes and the changed values applied to the
+     * system properties, configured by the {@code CREDENTIAL_STORE_WATCH} environment variable, by default not.
+     *
+     * @return true if the Credential store file should be watched
+     */
+    public static boolean isWatchEnabledFromEnvironment() {
+        return Boolean.parseBoolean(getenv(CREDENTIAL_STORE_WATCH_ENV));
+    }
+
+    /**
+     * Returns the names of the key stores kept in the Credential store, configured as a comma separated list by the
+     * {@code CREDENTIAL_STORE_KEYSTORES} environment variable, by default none.
+     *
+     * @return names of the key stores
+     */
+    public static List<String> keystoresFromEnvironment() {
+        return keystoresFromEnvironment(getenv());
+    }
+
     public static String referenceForAlias(final String alias) {
-        return "CS:" + alias;
+        return STORE_REFERENCE_PREFIX + alias;
+    }
+
+    /**
+     * Determines how the Credential store references should be resolved from the configuration in environment
+     * variables, by default {@link ResolutionMode#eager}.
+     *
+     * @return the resolution mode
+     */
+    public static ResolutionMode resolutionModeFromEnvironment() {
+        return ResolutionMode.valueOf(Optional.ofNullable(getenv(CREDENTIAL_STORE_RESOLUTION_ENV))
+                .orElse(ResolutionMode.eager.name()));
     }
 
+    /**
+     * Retrieves the clear text value stored under the given alias.
+     *
+     * @param credentialStore
+     *            {@link CredentialStore} containing the secret values
+     * @param alias
+     *            alias of the secret value
+     * @return clear text value or {@code null} if there is no such alias in the Credential store
+     */
+    public static String retrieve(final CredentialStore credentialStore, final String alias) {
+        final CredentialStoreMetrics metrics = CredentialStoreMetrics.metrics();
+
+        final long start = System.nanoTime();
+        final PasswordCredential passwordCredential;
+        try {
+            passwordCredential = credentialStore.retrieve(alias, PasswordCredential.class);
+        } catch (final CredentialStoreException e) {
+            metrics.missingAlias();
+
+            return null;
+        } finally {
+            metrics.aliasRetrieval().recordSince(start);
+        }
+
+        if (passwordCredential == null) {
+            metrics.missingAlias();
+
+            return null;
+        }
+
+        final Password password = passwordCredential.getPassword();
+        final ClearPassword clearPassword = password.castAs(ClearPassword.class);
+        final char[] rawClearPassword = clearPassword.getPassword();
+
+        return String.valueOf(rawClearPassword);
+    }
+
+    /**
+     * Extracts the alias from the value given in the format of store reference.
+     *
+     * @param value
+     *            property value in the format of store reference
+     * @return the referenced alias
+     * @throws IllegalArgumentException
+     *             if the value is not in the format of store reference
+     */
     public static String toCredentialStoreAlias(final String value) {
-        final Matcher matcher = STORE_REFERENCE_REGEX.matcher(value);
+        if (!couldBeCredentialStoreAlias(value)) {
+            throw new IllegalArgumentException("Given value: `" + value + "` is not a credential store reference");
+        }
+
+        return value.substring(STORE_REFERENCE_PREFIX.length());
+    }
+
+    static CredentialStore createCredentialStore(final String credentialStoreAlgorithm, final Provider provider,
+            final Map<String, String> attributes, final ProtectionParameter protectionParameter)
+            throws GeneralSecurityException {
+        final CredentialStore credentialStore = credentialStoreInstance(credentialStoreAlgorithm, provider);
+
+        credentialStore.initialize(new HashMap<>(attributes), protectionParameter);
+
+        return credentialStore;
+    }
+
+    static CachingCredentialResolver credentialResolverFromEnvironment(final CredentialStoreRegistry registry,
+            final Map<String, String> environment) {
+        final int maximumSize = Optional.ofNullable(environment.get(CREDENTIAL_STORE_RESOLVER_CACHE_SIZE_ENV))
+                .map(Integer::parseInt).orElse(Defaults.RESOLVER_CACHE_SIZE);
+        final long timeToLive = Optional.ofNullable(environment.get(CREDENTIAL_STORE_RESOLVER_CACHE_TTL_ENV))
+                .map(Long::parseLong).orElse(Defaults.RESOLVER_CACHE_TTL);
+        final long negativeTimeToLive = Optional
+                .ofNullable(environment.get(CREDENTIAL_STORE_RESOLVER_NEGATIVE_CACHE_TTL_ENV)).map(Long::parseLong)
+                .orElse(Defaults.RESOLVER_NEGATIVE_CACHE_TTL);
 
-        matcher.matches();
+        return new CachingCredentialResolver(registry, maximumSize, TimeUnit.SECONDS.toNanos(timeToLive),
+                TimeUnit.SECONDS.toNanos(negativeTimeToLive));
+    }
 
-        return matcher.group(1);
+    static String credentialStoreAlgorithmFromEnvironment(final Map<String, String> environment) {
+        return Optional.ofNullable(environment.get(CREDENTIAL_STORE_ALGORITHM_ENV))
+                .orElse(Defaults.CREDENTIAL_STORE_ALGORITHM);
     }
 
-    static ProtectionParameter createProtectionParameterFromEnvironment() throws GeneralSecurityException, IOException {
-        final String credentialTypeParam = Optional.ofNullable(getenv("CREDENTIAL_STORE_PROTECTION_TYPE"))
+    static Map<String, String> credentialStoreAttributesFromEnvironment(final Map<String, String> environment,
+            final String credentialStoreAlgorithm) {
+        final Map<String, String> attributes = defaultCredentialStoreAttributesFor(credentialStoreAlgorithm);
+        attributes.putAll(attributesFromEnvironment(environment, CREDENTIAL_STORE_ATTR_ENV_PREFIX));
+
+        return attributes;
+    }
+
+    static boolean isCredentialStoreConfigured(final Map<String, String> environment) {
+        return environment.containsKey(CredentialSourceHandler.CREDENTIAL_STORE_PROTECTION)
+            || !CredentialStoreRegistry.storeNamesIn(environment).isEmpty();
+    }
+
+    static List<String> keystoresFromEnvironment(final Map<String, String> environment) {
+        final String keystores = environment.get(CREDENTIAL_STORE_KEYSTORES_ENV);
+        if (keystores == null) {
+            return Collections.emptyList();
+        }
+
+        return Arrays.stream(keystores.split(",")).map(String::trim).filter(n -> !n.isEmpty()).distinct()
+                .collect(Collectors.toList());
+    }
+
+    static Provider credentialStoreProviderFromEnvironment(final Map<String, String> environment) {
+        return ProviderHelper.provider(Optional.ofNullable(environment.get(CREDENTIAL_STORE_PROVIDER_ENV))
+                .orElse(ProviderHelper.WILDFLY_PROVIDER));
+    }
+
+    static ProtectionParameter createProtectionParameterFromEnvironment(final Map<String, String> environment)
+            throws GeneralSecurityException, IOException {
+        final String credentialTypeParam = Optional.ofNullable(environment.get("CREDENTIAL_STORE_PROTECTION_TYPE"))
                 .orElse(Defaults.CREDENTIAL_TYPE.name());
         final ProtectionType credentialType = ProtectionType.valueOf(credentialTypeParam);
 
-        final CredentialSource credentialSource = credentialType.createCredentialSource(getenv());
+        final CredentialSource credentialSource = credentialType.createCredentialSource(environment);
 
         return new CredentialStore.CredentialSourceProtectionParameter(credentialSource);
     }
 
+    /**
+     * Line terminators as understood by {@link java.util.regex.Pattern}, references spanning multiple lines are not
+     * considered valid.
+     */
+    private static boolean isLineTerminator(final char ch) {
+        return (ch == '\n') || (ch == '\r') || (ch == '\u0085') || (ch == '\u2028') || (ch == '\u2029');
+    }
+
 }
@@ -0,0 +1,278 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialStoreKeystore;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.password.interfaces.ClearPassword;
+
+/**
+ * Key stores kept in the Credential stores of the {@link CredentialStoreRegistry}. For the key store named
+ * {@code name} the Credential store holds the Base64 encoded key store under {@code name.keystore}, the key store
+ * password under {@code name.password}, and optionally the key password under {@code name.key.password}, by default
+ * the key store password, and the key store type under {@code name.type}, by default {@code PKCS12}. The name can be
+ * prefixed by the name of the Credential store, i.e. {@code team/server}.
+ *
+ * The key stores are loaded and the key and trust manager factories and SSL contexts are built once, on
+ * {@link #refresh()} they are rebuilt only if the Credential store has been reloaded since and any of the secrets
+ * changed.
+ */
+public final class CredentialStoreKeystores {
+
+    /**
+     * Loaded key store, with its key and trust manager factories and SSL context.
+     */
+    static final class Keystore implements CredentialStoreKeystore {
+
+        private final KeyManagerFactory keyManagerFactory;
+
+        private final KeyStore keyStore;
+
+        private final String name;
+
+        private final SSLContext sslContext;
+
+        private final TrustManagerFactory trustManagerFactory;
+
+        Keystore(final String name, final KeyStore keyStore, final KeyManagerFactory keyManagerFactory,
+                final TrustManagerFactory trustManagerFactory, final SSLContext sslContext) {
+            this.name = name;
+            this.keyStore = keyStore;
+            this.keyManagerFactory = keyManagerFactory;
+            this.trustManagerFactory = trustManagerFactory;
+            this.sslContext = sslContext;
+        }
+
+        @Override
+        public KeyManagerFactory getKeyManagerFactory() {
+            return keyManagerFactory;
+        }
+
+        @Override
+        public KeyStore getKeystore() {
+            return keyStore;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public SSLContext getSSLContext() {
+            return sslContext;
+        }
+
+        @Override
+        public TrustManagerFactory getTrustManagerFactory() {
+            return trustManagerFactory;
+        }
+    }
+
+    private static final String CALLER = "keystore";
+
+    private static final String DEFAULT_TYPE = "PKCS12";
+
+    private static final String KEY_PASSWORD_SUFFIX = ".key.password";
+
+    private static final String KEYSTORE_SUFFIX = ".keystore";
+
+    private static final String PASSWORD_SUFFIX = ".password";
+
+    private static final String TLS_PROTOCOL = "TLS";
+
+    private static final String TYPE_SUFFIX = ".type";
+
+    private final Map<String, Keystore> keystores = new ConcurrentHashMap<>();
+
+    private final Map<String, CredentialStore> loadedFrom = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> loadedSecrets = new ConcurrentHashMap<>();
+
+    private final List<String> names;
+
+    private final CredentialStoreRegistry registry;
+
+    /**
+     * Creates the key stores with the given names, nothing is loaded until {@link #refresh()} is invoked.
+     *
+     * @param registry
+     *            registry of the Credential stores holding the key stores
+     * @param names
+     *            names of the key stores
+     */
+    public CredentialStoreKeystores(final CredentialStoreRegistry registry, final Collection<String> names) {
+        this.registry = registry;
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * Builds the key store, key and trust manager factories and the SSL context from the given secrets.
+     *
+     * @param name
+     *            name of the key store
+     * @param type
+     *            key store type
+     * @param keystoreBase64
+     *            Base64 encoded key store
+     * @param password
+     *            key store password
+     * @param keyPassword
+     *            password of the keys within the key store
+     * @return the loaded key store
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    static Keystore load(final String name, final String type, final String keystoreBase64, final String password,
+            final String keyPassword) throws GeneralSecurityException, IOException {
+        final KeyStore keyStore = KeyStore.getInstance(type);
+        keyStore.load(new ByteArrayInputStream(Base64.getMimeDecoder().decode(keystoreBase64)),
+            password.toCharArray());
+
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory
+                .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, keyPassword.toCharArray());
+
+        final TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        final SSLContext sslContext = SSLContext.getInstance(TLS_PROTOCOL);
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+        return new Keystore(name, keyStore, keyManagerFactory, trustManagerFactory, sslContext);
+    }
+
+    /**
+     * Returns the loaded key store with the given name.
+     *
+     * @param name
+     *            name of the key store
+     * @return the key store or {@code null} if it has not been loaded
+     */
+    public CredentialStoreKeystore keystore(final String name) {
+        return keystores.get(name);
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    /**
+     * Loads the key stores that have not been loaded, and reloads those whose secrets changed in the Credential store.
+     * Secrets are read again only from the Credential stores that have been reloaded since the last refresh.
+     *
+     * @return the key stores that were (re)loaded, by name
+     * @throws GeneralSecurityException
+     *             if a key store could not be loaded, the key stores loaded before it are kept
+     * @throws IOException
+     */
+    public synchronized Map<String, CredentialStoreKeystore> refresh() throws GeneralSecurityException, IOException {
+        final Map<String, CredentialStoreKeystore> refreshed = new LinkedHashMap<>();
+
+        for (final String name : names) {
+            final String storeName = registry.storeNameOf(name + KEYSTORE_SUFFIX);
+            final CredentialStore credentialStore = registry.store(storeName).credentialStore();
+
+            if (credentialStore == loadedFrom.get(name)) {
+                continue;
+            }
+
+            final String keystoreBase64 = required(credentialStore, name, KEYSTORE_SUFFIX);
+            final String password = required(credentialStore, name, PASSWORD_SUFFIX);
+            final String keyPassword = Objects.toString(secret(credentialStore, name, KEY_PASSWORD_SUFFIX), password);
+            final String type = Objects.toString(secret(credentialStore, name, TYPE_SUFFIX), DEFAULT_TYPE);
+
+            final List<String> secrets = Arrays.asList(keystoreBase64, password, keyPassword, type);
+            if (!secrets.equals(loadedSecrets.get(name))) {
+                keystores.put(name, load(name, type, keystoreBase64, password, keyPassword));
+                loadedSecrets.put(name, secrets);
+                refreshed.put(name, keystores.get(name));
+            }
+
+            loadedFrom.put(name, credentialStore);
+        }
+
+        return refreshed;
+    }
+
+    /**
+     * Returns the names of the Credential stores holding the key stores.
+     *
+     * @return names of the Credential stores
+     */
+    public Set<String> storeNames() {
+        final Set<String> storeNames = new TreeSet<>();
+        for (final String name : names) {
+            storeNames.add(registry.storeNameOf(name + KEYSTORE_SUFFIX));
+        }
+
+        return storeNames;
+    }
+
+    private String required(final CredentialStore credentialStore, final String name, final String suffix)
+            throws CredentialStoreException {
+        final String value = secret(credentialStore, name, suffix);
+        if (value == null) {
+            throw new CredentialStoreException(
+                "Alias `" + name + suffix + "` of key store `" + name + "` not found in the credential store");
+        }
+
+        return value;
+    }
+
+    private String secret(final CredentialStore credentialStore, final String name, final String suffix)
+            throws CredentialStoreException {
+        final String reference = name + suffix;
+
+        final long start = System.nanoTime();
+        final PasswordCredential credential = credentialStore.retrieve(registry.aliasOf(reference),
+            PasswordCredential.class);
+        AuditLog.audit().recordSince(reference, name, credential == null ? Outcome.missing : Outcome.retrieved, start,
+            CALLER);
+
+        if (credential == null) {
+            return null;
+        }
+
+        return String.valueOf(credential.getPassword().castAs(ClearPassword.class).getPassword());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock of the {@code .lock} file next to the Credential store file, excluding writers within this and other
+ * processes. File locks are held by the process, so writers within this process are excluded by an in-process lock
+ * first and only the outermost acquisition locks the file. The lock is reentrant, so a Credential store implementation
+ * can lock its file while writing even if the caller already holds the lock.
+ */
+public final class CredentialStoreLock implements Closeable {
+
+    /**
+     * Lock state shared by all holders of the lock of a single lock file.
+     */
+    private static final class Holder {
+
+        private FileChannel channel;
+
+        private FileLock fileLock;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Path lockFile;
+
+        private Holder(final Path lockFile) {
+            this.lockFile = lockFile;
+        }
+    }
+
+    private static final Map<Path, Holder> HOLDERS = new ConcurrentHashMap<>();
+
+    private final Holder holder;
+
+    private CredentialStoreLock(final Holder holder) {
+        this.holder = holder;
+    }
+
+    /**
+     * Acquires the lock of the given Credential store file, waiting for other writers to release it.
+     *
+     * @param location
+     *            path to the Credential store file
+     * @return the acquired lock, released by {@link #close()}
+     * @throws IOException
+     */
+    public static CredentialStoreLock lock(final Path location) throws IOException {
+        final Path lockFile = lockFileOf(location.toAbsolutePath().normalize());
+        final Holder holder = HOLDERS.computeIfAbsent(lockFile, Holder::new);
+
+        holder.lock.lock();
+        try {
+            if (holder.lock.getHoldCount() == 1) {
+                Files.createDirectories(lockFile.getParent());
+
+                final FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                try {
+                    holder.fileLock = channel.lock();
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+                holder.channel = channel;
+            }
+        } catch (IOException | RuntimeException e) {
+            holder.lock.unlock();
+            throw e;
+        }
+
+        return new CredentialStoreLock(holder);
+    }
+
+    /**
+     * Returns the path of the file locked while updating the Credential store.
+     *
+     * @param location
+     *            path to the Credential store file
+     * @return path to the lock file
+     */
+    public static Path lockFileOf(final Path location) {
+        return location.resolveSibling(location.getFileName() + ".lock");
+    }
+
+    /**
+     * Releases the lock, the file lock is released once the outermost acquisition is released.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (holder.lock.getHoldCount() == 1) {
+                try {
+                    holder.fileLock.release();
+                } finally {
+                    holder.fileLock = null;
+                    holder.channel.close();
+                    holder.channel = null;
+                }
+            }
+        } finally {
+            holder.lock.unlock();
+        }
+    }
+}
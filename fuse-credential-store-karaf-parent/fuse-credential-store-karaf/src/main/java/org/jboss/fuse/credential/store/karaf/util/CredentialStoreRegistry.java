@@ -0,0 +1,295 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.wildfly.security.credential.store.CredentialStore;
+
+/**
+ * Registry of the default Credential store, configured by the {@code CREDENTIAL_STORE_*} environment variables, and
+ * the named Credential stores, each configured by the {@code CREDENTIAL_STORE_<name>_*} environment variables. A named
+ * Credential store is defined by specifying at least one attribute, i.e. {@code CREDENTIAL_STORE_<name>_ATTR_location},
+ * the rest of the configuration follows the default Credential store variables with the name inserted after the
+ * {@code CREDENTIAL_STORE_} prefix.
+ *
+ * References in the {@code CS:name/alias} format reference the alias in the named Credential store, if there is no
+ * Credential store with that name the whole {@code name/alias} is the alias within the default Credential store. The
+ * Credential stores are opened only when the references to them are resolved.
+ */
+public final class CredentialStoreRegistry {
+
+    /**
+     * Name under which the default Credential store is registered.
+     */
+    public static final String DEFAULT_STORE_NAME = "";
+
+    private static final String ATTR_INFIX = "_ATTR_";
+
+    private static final String ENVIRONMENT_PREFIX = "CREDENTIAL_STORE_";
+
+    private static final char STORE_SEPARATOR = '/';
+
+    private final SharedCredentialStore defaultStore;
+
+    private final Map<String, SharedCredentialStore> namedStores;
+
+    /**
+     * Creates the registry of the Credential stores configured by the environment variables.
+     */
+    public CredentialStoreRegistry() {
+        this(System.getenv());
+    }
+
+    /**
+     * Creates the registry with only the given default Credential store.
+     *
+     * @param defaultStore
+     *            the default Credential store
+     */
+    public CredentialStoreRegistry(final SharedCredentialStore defaultStore) {
+        this(defaultStore, Collections.emptyMap());
+    }
+
+    /**
+     * Creates the registry with the given default and named Credential stores.
+     *
+     * @param defaultStore
+     *            the default Credential store
+     * @param namedStores
+     *            the named Credential stores keyed by name
+     */
+    public CredentialStoreRegistry(final SharedCredentialStore defaultStore,
+            final Map<String, SharedCredentialStore> namedStores) {
+        this.defaultStore = defaultStore;
+        this.namedStores = new HashMap<>(namedStores);
+    }
+
+    CredentialStoreRegistry(final Map<String, String> environment) {
+        defaultStore = new SharedCredentialStore(environment);
+
+        namedStores = new HashMap<>();
+        for (final String name : storeNamesIn(environment)) {
+            namedStores.put(name, new SharedCredentialStore(environmentOf(name, environment)));
+        }
+    }
+
+    /**
+     * Returns the environment variables of the named Credential store as they would be given for the default
+     * Credential store, i.e. {@code CREDENTIAL_STORE_<name>_ATTR_location} is returned as
+     * {@code CREDENTIAL_STORE_ATTR_location}.
+     *
+     * @param name
+     *            Credential store name
+     * @param environment
+     *            all environment variables
+     * @return environment variables configuring the named Credential store
+     */
+    static Map<String, String> environmentOf(final String name, final Map<String, String> environment) {
+        final String prefix = ENVIRONMENT_PREFIX + name + "_";
+
+        final Map<String, String> storeEnvironment = new HashMap<>();
+        environment.forEach((k, v) -> {
+            if (k.startsWith(prefix)) {
+                storeEnvironment.put(ENVIRONMENT_PREFIX + k.substring(prefix.length()), v);
+            }
+        });
+
+        return storeEnvironment;
+    }
+
+    /**
+     * Finds the names of the Credential stores configured by the {@code CREDENTIAL_STORE_<name>_ATTR_*} environment
+     * variables.
+     *
+     * @param environment
+     *            all environment variables
+     * @return names of the named Credential stores
+     */
+    static Set<String> storeNamesIn(final Map<String, String> environment) {
+        final Set<String> names = new TreeSet<>();
+
+        for (final String key : environment.keySet()) {
+            if (!key.startsWith(ENVIRONMENT_PREFIX)) {
+                continue;
+            }
+
+            final String rest = key.substring(ENVIRONMENT_PREFIX.length());
+            final int attr = rest.indexOf(ATTR_INFIX);
+
+            // CREDENTIAL_STORE_ATTR_* configure the default Credential store
+            if ((attr > 0) && !rest.startsWith(ATTR_INFIX.substring(1))) {
+                names.add(rest.substring(0, attr));
+            }
+        }
+
+        return names;
+    }
+
+    private static GeneralSecurityException rethrow(final CompletionException e)
+            throws GeneralSecurityException, IOException {
+        final Throwable cause = e.getCause();
+
+        if (cause instanceof GeneralSecurityException) {
+            throw (GeneralSecurityException) cause;
+        }
+
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+
+        throw e;
+    }
+
+    /**
+     * Returns the alias within the Credential store of the given reference.
+     *
+     * @param reference
+     *            reference without the {@code CS:} prefix, in {@code name/alias} or {@code alias} format
+     * @return the alias within the Credential store
+     */
+    public String aliasOf(final String reference) {
+        final String name = storeNameOf(reference);
+
+        if (DEFAULT_STORE_NAME.equals(name)) {
+            return reference;
+        }
+
+        return reference.substring(name.length() + 1);
+    }
+
+    public SharedCredentialStore defaultStore() {
+        return defaultStore;
+    }
+
+    /**
+     * Opens the Credential stores referenced by the given references, and only those. When more than one Credential
+     * store is referenced, the Credential stores are opened concurrently using the common {@link ForkJoinPool}.
+     *
+     * @param references
+     *            references without the {@code CS:} prefix
+     * @return opened Credential stores keyed by name, the default Credential store under {@link #DEFAULT_STORE_NAME}
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public Map<String, CredentialStore> open(final Collection<String> references)
+            throws GeneralSecurityException, IOException {
+        final Set<String> names = references.stream().map(this::storeNameOf).collect(Collectors.toSet());
+
+        if (names.size() <= 1) {
+            final Map<String, CredentialStore> opened = new HashMap<>();
+            for (final String name : names) {
+                opened.put(name, openStore(name));
+            }
+
+            return opened;
+        }
+
+        final Map<String, CompletableFuture<CredentialStore>> opening = new HashMap<>();
+        for (final String name : names) {
+            opening.put(name, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return openStore(name);
+                } catch (GeneralSecurityException | IOException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+
+        final Map<String, CredentialStore> opened = new HashMap<>();
+        for (final Map.Entry<String, CompletableFuture<CredentialStore>> store : opening.entrySet()) {
+            try {
+                opened.put(store.getKey(), store.getValue().join());
+            } catch (final CompletionException e) {
+                throw rethrow(e);
+            }
+        }
+
+        return opened;
+    }
+
+    /**
+     * Returns the Credential store registered under the given name.
+     *
+     * @param name
+     *            Credential store name, {@link #DEFAULT_STORE_NAME} for the default Credential store
+     * @return the Credential store or {@code null} if there is no Credential store with the given name
+     */
+    public SharedCredentialStore store(final String name) {
+        if (DEFAULT_STORE_NAME.equals(name)) {
+            return defaultStore;
+        }
+
+        return namedStores.get(name);
+    }
+
+    public Set<String> storeNames() {
+        return Collections.unmodifiableSet(namedStores.keySet());
+    }
+
+    /**
+     * Returns the name of the Credential store the given reference references.
+     *
+     * @param reference
+     *            reference without the {@code CS:} prefix, in {@code name/alias} or {@code alias} format
+     * @return the Credential store name, {@link #DEFAULT_STORE_NAME} if the reference is to the default Credential
+     *         store
+     */
+    public String storeNameOf(final String reference) {
+        final int separator = reference.indexOf(STORE_SEPARATOR);
+
+        if (separator > 0) {
+            final String name = reference.substring(0, separator);
+
+            if (namedStores.containsKey(name)) {
+                return name;
+            }
+        }
+
+        return DEFAULT_STORE_NAME;
+    }
+
+    private CredentialStore openStore(final String name) throws GeneralSecurityException, IOException {
+        final SharedCredentialStore store = store(name);
+
+        if (DEFAULT_STORE_NAME.equals(name)) {
+            return store.credentialStore();
+        }
+
+        try {
+            return store.credentialStore();
+        } catch (final GeneralSecurityException e) {
+            throw new GeneralSecurityException("Credential store `" + name + "`: " + e.getMessage(), e);
+        } catch (final IOException e) {
+            throw new IOException("Credential store `" + name + "`: " + e.getMessage(), e);
+        }
+    }
+}
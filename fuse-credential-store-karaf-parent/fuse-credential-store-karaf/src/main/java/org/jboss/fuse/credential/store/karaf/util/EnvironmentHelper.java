@@ -18,8 +18,6 @@ package org.jboss.fuse.credential.store.karaf.util;
 import java.util.HashMap;
 import java.util.Map;
 
-import static java.lang.System.getenv;
-
 /**
  * Utility class with methods to access environment variables.
  */
@@ -34,15 +32,17 @@ final class EnvironmentHelper {
      * are with the prefix removed and the case preserved, the values are equal to the corresponding values in the
      * environment.
      *
+     * @param environment
+     *            the environment variables
      * @param prefix
      *            the prefix to filter by
      * @return map of environment variables matching the requested prefix
      */
-    static Map<String, String> attributesFromEnvironment(final String prefix) {
+    static Map<String, String> attributesFromEnvironment(final Map<String, String> environment, final String prefix) {
         final Map<String, String> attributes = new HashMap<>();
 
         final int attributeKeyStart = prefix.length();
-        getenv().forEach((k, v) -> {
+        environment.forEach((k, v) -> {
             if (k.startsWith(prefix)) {
                 attributes.put(k.substring(attributeKeyStart), v);
             }
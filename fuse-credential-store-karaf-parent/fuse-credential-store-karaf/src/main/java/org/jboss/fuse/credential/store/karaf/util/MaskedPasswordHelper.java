@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.security.AlgorithmParameters;
 import java.security.GeneralSecurityException;
 import java.security.Provider;
-import java.security.Security;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 import java.util.Base64;
@@ -31,6 +30,7 @@ import java.util.Optional;
 
 import static java.lang.Integer.parseInt;
 
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
 import org.jboss.fuse.credential.store.karaf.util.ProtectionType.CredentialSourceHandler;
 import org.wildfly.security.auth.server.IdentityCredentials;
 import org.wildfly.security.credential.PasswordCredential;
@@ -55,16 +55,6 @@ final class MaskedPasswordHelper implements CredentialSourceHandler {
 
     private static final String[] OPTIONS = {"provider", "algorithm", "password", "salt", "iterations"};
 
-    private final String[] supportedMaskedAlgorithms;
-
-    public MaskedPasswordHelper() {
-        final String passwordFactoryType = PasswordFactory.class.getSimpleName();
-
-        supportedMaskedAlgorithms = Arrays.stream(Security.getProviders()).flatMap(p -> p.getServices().stream())
-                .filter(s -> passwordFactoryType.equals(s.getType())).map(s -> s.getAlgorithm())
-                .filter(a -> a.startsWith("masked-")).toArray(String[]::new);
-    }
-
     @Override
     public Map<String, String> createConfiguration(final Map<String, String> attributes)
             throws GeneralSecurityException, IOException {
@@ -117,6 +107,44 @@ final class MaskedPasswordHelper implements CredentialSourceHandler {
     @Override
     public CredentialSource createCredentialSource(final Map<String, String> configuration)
             throws GeneralSecurityException, IOException {
+        final long start = System.nanoTime();
+        try {
+            return deriveCredentialSource(configuration);
+        } finally {
+            CredentialStoreMetrics.metrics().maskedPasswordDerivation().recordSince(start);
+        }
+    }
+
+    @Override
+    public String[] getOptionValuesFor(final String option) {
+        switch (option) {
+            case "provider":
+                return ProviderCatalog.providerNames();
+            case "algorithm":
+                return Arrays.stream(ProviderCatalog.algorithms(PasswordFactory.class.getSimpleName()))
+                        .filter(a -> a.startsWith("masked-")).toArray(String[]::new);
+        }
+
+        return new String[0];
+    }
+
+    @Override
+    public String[] getSupportedOptions() {
+        return OPTIONS.clone();
+    }
+
+    private String option(final Map<String, String> attributes, final String key, final String defaultValue) {
+        final String value = attributes.get(key);
+
+        if ((value == null) && (defaultValue == null)) {
+            throw new IllegalArgumentException("Parameter `" + key + "` is required");
+        }
+
+        return Optional.ofNullable(value).orElse(defaultValue).trim();
+    }
+
+    private CredentialSource deriveCredentialSource(final Map<String, String> configuration)
+            throws GeneralSecurityException, IOException {
         final String algorithmParamsBase64 = option(configuration, CREDENTIAL_STORE_PROTECTION_PARAMS, "");
 
         final Decoder decoder = Base64.getDecoder();
@@ -159,31 +187,4 @@ final class MaskedPasswordHelper implements CredentialSourceHandler {
 
         return IdentityCredentials.NONE.withCredential(passwordCredential);
     }
-
-    @Override
-    public String[] getOptionValuesFor(final String option) {
-        switch (option) {
-            case "provider":
-                return Arrays.stream(Security.getProviders()).map(p -> p.getName()).toArray(String[]::new);
-            case "algorithm":
-                return supportedMaskedAlgorithms;
-        }
-
-        return new String[0];
-    }
-
-    @Override
-    public String[] getSupportedOptions() {
-        return OPTIONS.clone();
-    }
-
-    private String option(final Map<String, String> attributes, final String key, final String defaultValue) {
-        final String value = attributes.get(key);
-
-        if ((value == null) && (defaultValue == null)) {
-            throw new IllegalArgumentException("Parameter `" + key + "` is required");
-        }
-
-        return Optional.ofNullable(value).orElse(defaultValue).trim();
-    }
 }
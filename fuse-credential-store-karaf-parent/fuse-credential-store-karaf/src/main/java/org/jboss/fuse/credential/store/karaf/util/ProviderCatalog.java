@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.security.Provider;
+import java.security.Provider.Service;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.jboss.fuse.credential.store.karaf.store.FuseCredentialStoreProvider;
+
+/**
+ * Utility class holding the index of the security providers and the algorithms they provide. The index is built on
+ * first use, algorithms of each service type are indexed when first asked for, and kept until a provider is added to
+ * or removed from {@link Security}, which is detected by comparing the installed providers on each use.
+ *
+ * Algorithms are looked up in the installed providers and in the providers bundled with this bundle (WildFly Elytron
+ * and {@link FuseCredentialStoreProvider}), as those are used when the installed providers do not provide the
+ * algorithm.
+ */
+public final class ProviderCatalog {
+
+    /**
+     * Immutable index of the given installed providers.
+     */
+    private static final class Catalog {
+
+        private final Map<String, String[]> algorithmsByType = new ConcurrentHashMap<>();
+
+        private final Provider[] installed;
+
+        private final String[] providerNames;
+
+        private Catalog(final Provider[] installed) {
+            this.installed = installed;
+            providerNames = Arrays.stream(installed).map(Provider::getName).toArray(String[]::new);
+        }
+
+        private String[] algorithms(final String type) {
+            return algorithmsByType.computeIfAbsent(type, this::scan);
+        }
+
+        private boolean isOf(final Provider[] current) {
+            if (current.length != installed.length) {
+                return false;
+            }
+
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != installed[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private String[] scan(final String type) {
+            final Stream<Provider> bundled = Stream.of(ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER),
+                ProviderHelper.provider(FuseCredentialStoreProvider.class.getName()));
+
+            return Stream.concat(Arrays.stream(installed), bundled).flatMap(p -> p.getServices().stream())
+                .filter(s -> type.equals(s.getType())).map(Service::getAlgorithm).distinct().sorted()
+                .toArray(String[]::new);
+        }
+    }
+
+    private static volatile Catalog catalog;
+
+    private ProviderCatalog() {
+        // utility class
+    }
+
+    /**
+     * Returns the algorithms of the given service type, e.g. {@code PasswordFactory} or {@code CredentialStore}.
+     *
+     * @param type
+     *            service type
+     * @return sorted algorithms provided by the installed and bundled providers
+     */
+    public static String[] algorithms(final String type) {
+        return current().algorithms(type).clone();
+    }
+
+    /**
+     * Returns the names of the providers installed in {@link Security}.
+     *
+     * @return names of the installed providers, in order of preference
+     */
+    public static String[] providerNames() {
+        return current().providerNames.clone();
+    }
+
+    private static Catalog current() {
+        final Provider[] installed = Security.getProviders();
+
+        final Catalog existing = catalog;
+        if ((existing != null) && existing.isOf(installed)) {
+            return existing;
+        }
+
+        final Catalog rebuilt = new Catalog(installed);
+        catalog = rebuilt;
+
+        return rebuilt;
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.jboss.fuse.credential.store.karaf.util;
 
-import java.lang.ref.WeakReference;
 import java.security.Provider;
 import java.security.Security;
 import java.util.Map;
@@ -30,7 +29,10 @@ public final class ProviderHelper {
 
     public static final String WILDFLY_PROVIDER = WildFlyElytronProvider.class.getName();
 
-    private static final Map<String, WeakReference<Provider>> PROVIDERS_CACHE = new ConcurrentHashMap<>();
+    /**
+     * Instantiated providers, kept for the lifetime of the bundle so they are not instantiated again.
+     */
+    private static final Map<String, Provider> PROVIDERS_CACHE = new ConcurrentHashMap<>();
 
     private ProviderHelper() {
         // utility class
@@ -43,13 +45,10 @@ public final class ProviderHelper {
             return installedProvider;
         }
 
-        final WeakReference<Provider> provider = PROVIDERS_CACHE.compute(classOrName,
-                (c, v) -> (v == null) || (v.get() == null) ? instantiateProvider(c) : v);
-
-        return provider.get();
+        return PROVIDERS_CACHE.computeIfAbsent(classOrName, ProviderHelper::instantiateProvider);
     }
 
-    private static WeakReference<Provider> instantiateProvider(final String className) {
+    private static Provider instantiateProvider(final String className) {
         try {
             @SuppressWarnings("unchecked")
             final Class<Provider> providerClass = (Class<Provider>) Class.forName(className);
@@ -59,9 +58,7 @@ public final class ProviderHelper {
                         "The specified class: `" + className + "` is derived from java.security.Provider");
             }
 
-            final Provider provider = providerClass.newInstance();
-
-            return new WeakReference<>(provider);
+            return providerClass.newInstance();
         } catch (final ReflectiveOperationException e) {
             throw new IllegalArgumentException(
                     "Unable to load or instantiate the specified provider class `" + className + "`", e);
@@ -0,0 +1,41 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+/**
+ * Supported ways of resolving the Credential store references in system properties.
+ */
+public enum ResolutionMode {
+
+    /**
+     * All references are resolved and replaced with the values from the Credential store when the bundle starts.
+     */
+    eager,
+
+    /**
+     * References are kept in the system properties and resolved from the Credential store the first time the property
+     * value is read.
+     */
+    lazy,
+
+    /**
+     * All references are resolved and replaced as in the {@link #eager} mode, but on a background thread so the bundle
+     * start does not wait for the Credential store to be opened. The {@code CredentialStoreReady} service is registered
+     * once the values have been replaced.
+     */
+    async
+
+}
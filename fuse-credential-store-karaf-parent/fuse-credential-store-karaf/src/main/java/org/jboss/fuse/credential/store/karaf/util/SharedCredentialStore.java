@@ -0,0 +1,353 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.store.ShardedCredentialStore;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStore.ProtectionParameter;
+
+/**
+ * A long lived, initialized {@link CredentialStore} configured by the environment variables, registered as an OSGI
+ * service by the {@code Activator} and shared with the shell commands. The configuration, including the protection
+ * parameter derived from the masked password, is read from the environment only once. The Credential store is loaded
+ * on first use and reloaded only if the fingerprint of the Credential store files, their modification time, size and
+ * file key, changes. The {@link ShardedCredentialStore} is kept in its shard files, not in a file at its location, so
+ * the fingerprint covers all of the shard files.
+ *
+ * Updates performed through {@link #update(CredentialStoreUpdate)} are safe with multiple writers, within this and
+ * other processes: the update is performed holding the {@link CredentialStoreLock} of the Credential store file, the
+ * Credential store is reloaded if it was changed by another writer, the changes are applied to it and written out
+ * before the lock is released. If the changes can not be applied or written out they are discarded and the Credential
+ * store is reloaded on next use. Credential store implementations either replace the Credential store file atomically
+ * or, as the {@code JournalCredentialStore} appending to its file in place, take the same lock while writing.
+ */
+public final class SharedCredentialStore {
+
+    /**
+     * Creates new, initialized {@link CredentialStore} instances.
+     */
+    @FunctionalInterface
+    public interface CredentialStoreFactory {
+        CredentialStore create() throws GeneralSecurityException, IOException;
+    }
+
+    /**
+     * Performs changes to the Credential store.
+     */
+    @FunctionalInterface
+    public interface CredentialStoreUpdate {
+        void apply(CredentialStore credentialStore) throws GeneralSecurityException, IOException;
+    }
+
+    /**
+     * Time taken by the phases of an update, in nanoseconds.
+     */
+    public static final class UpdateTimes {
+
+        private final long applyTime;
+
+        private final long flushTime;
+
+        private final long lockWaitTime;
+
+        UpdateTimes(final long lockWaitTime, final long applyTime, final long flushTime) {
+            this.lockWaitTime = lockWaitTime;
+            this.applyTime = applyTime;
+            this.flushTime = flushTime;
+        }
+
+        public long applyTime() {
+            return applyTime;
+        }
+
+        public long flushTime() {
+            return flushTime;
+        }
+
+        public long lockWaitTime() {
+            return lockWaitTime;
+        }
+    }
+
+    private CredentialStore credentialStore;
+
+    private final Map<String, String> environment;
+
+    private CredentialStoreFactory factory;
+
+    private List<Path> files = Collections.emptyList();
+
+    private List<Object> fingerprint;
+
+    private Path location;
+
+    /**
+     * Creates the shared Credential store that will be configured from the environment variables on first use.
+     */
+    public SharedCredentialStore() {
+        this(System.getenv());
+    }
+
+    /**
+     * Creates the shared Credential store that will be configured from the given environment variables on first use.
+     *
+     * @param environment
+     *            environment variables configuring the Credential store
+     */
+    SharedCredentialStore(final Map<String, String> environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Creates the shared Credential store that will be created by the given factory, and reloaded when the given
+     * Credential store file changes.
+     *
+     * @param location
+     *            path to the Credential store file, can be {@code null} if the Credential store is not kept in a file
+     * @param factory
+     *            creates new, initialized, Credential store instances
+     */
+    public SharedCredentialStore(final Path location, final CredentialStoreFactory factory) {
+        this(location, location == null ? Collections.emptyList() : Collections.singletonList(location), factory);
+    }
+
+    /**
+     * Creates the shared Credential store that will be created by the given factory, and reloaded when any of the
+     * given files the Credential store is kept in changes.
+     *
+     * @param location
+     *            path to the Credential store file, or the base path of its files, the lock file is derived from, can
+     *            be {@code null} if the Credential store is not kept in files
+     * @param files
+     *            paths to the files the Credential store is kept in, e.g. the shard files of a sharded Credential
+     *            store
+     * @param factory
+     *            creates new, initialized, Credential store instances
+     */
+    public SharedCredentialStore(final Path location, final List<Path> files, final CredentialStoreFactory factory) {
+        this.location = location;
+        this.files = files;
+        this.factory = factory;
+        environment = null;
+    }
+
+    /**
+     * Returns the fingerprint of the Credential store file, consisting of the last modified time, size and file key.
+     *
+     * @param location
+     *            path to the Credential store file, can be {@code null}
+     * @return the fingerprint or {@code null} if there is no Credential store file
+     * @throws IOException
+     */
+    static List<Object> fingerprintOf(final Path location) throws IOException {
+        if ((location == null) || !Files.exists(location)) {
+            return null;
+        }
+
+        final BasicFileAttributes attributes = Files.readAttributes(location, BasicFileAttributes.class);
+
+        return Arrays.asList(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+    }
+
+    /**
+     * Returns the fingerprint of the Credential store files, consisting of the fingerprints of each of the files.
+     *
+     * @param files
+     *            paths to the files the Credential store is kept in
+     * @return the fingerprint or {@code null} if none of the files exist
+     * @throws IOException
+     */
+    static List<Object> fingerprintOf(final List<Path> files) throws IOException {
+        final List<Object> fingerprints = new ArrayList<>(files.size());
+
+        boolean exists = false;
+        for (final Path file : files) {
+            final List<Object> fingerprint = fingerprintOf(file);
+            exists |= fingerprint != null;
+            fingerprints.add(fingerprint);
+        }
+
+        return exists ? fingerprints : null;
+    }
+
+    /**
+     * Returns the initialized Credential store, loading it if it has not been loaded before or if the Credential store
+     * file changed since it was loaded.
+     *
+     * @return the Credential store
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public synchronized CredentialStore credentialStore() throws GeneralSecurityException, IOException {
+        if (factory == null) {
+            configureFromEnvironment();
+        }
+
+        final List<Object> currentFingerprint = fingerprintOf(files);
+
+        if ((credentialStore == null) || !Objects.equals(fingerprint, currentFingerprint)) {
+            final long start = System.nanoTime();
+            try {
+                credentialStore = factory.create();
+            } finally {
+                CredentialStoreMetrics.metrics().storeOpen().recordSince(start);
+            }
+            fingerprint = currentFingerprint;
+        }
+
+        return credentialStore;
+    }
+
+    /**
+     * Flushes the changes made to the loaded Credential store and records the fingerprint of the written Credential
+     * store file, so the changes we made ourselves do not cause a reload.
+     *
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public synchronized void flush() throws GeneralSecurityException, IOException {
+        if (credentialStore == null) {
+            throw new IllegalStateException("Credential store has not been loaded");
+        }
+
+        final long start = System.nanoTime();
+        try {
+            credentialStore.flush();
+        } finally {
+            CredentialStoreMetrics.metrics().flush().recordSince(start);
+        }
+
+        fingerprint = fingerprintOf(files);
+    }
+
+    /**
+     * Returns the location of the Credential store file. The location configured by the environment variables is
+     * determined without loading the Credential store.
+     *
+     * @return path to the Credential store file or {@code null} if not known or not stored in a file
+     */
+    public synchronized Path location() {
+        if (factory == null) {
+            final String algorithm = CredentialStoreHelper.credentialStoreAlgorithmFromEnvironment(environment);
+
+            return locationOf(CredentialStoreHelper.credentialStoreAttributesFromEnvironment(environment, algorithm));
+        }
+
+        return location;
+    }
+
+    /**
+     * Applies the given changes to the Credential store and writes it out holding the lock excluding other writers. If
+     * the Credential store file has been changed by another writer it is reloaded before the changes are applied, so
+     * the changes of other writers are kept. If the changes can not be written out they are discarded.
+     *
+     * @param update
+     *            the changes to apply
+     * @return time spent waiting for the lock, applying the changes and writing the Credential store
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public synchronized UpdateTimes update(final CredentialStoreUpdate update)
+            throws GeneralSecurityException, IOException {
+        if (factory == null) {
+            configureFromEnvironment();
+        }
+
+        if (location == null) {
+            return applyAndFlush(update, 0);
+        }
+
+        final long lockStart = System.nanoTime();
+        try (CredentialStoreLock lock = CredentialStoreLock.lock(location)) {
+            return applyAndFlush(update, System.nanoTime() - lockStart);
+        }
+    }
+
+    private UpdateTimes applyAndFlush(final CredentialStoreUpdate update, final long lockWaitTime)
+            throws GeneralSecurityException, IOException {
+        final long applyStart = System.nanoTime();
+        final CredentialStore current = credentialStore();
+        try {
+            update.apply(current);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // discard the partially applied changes
+            credentialStore = null;
+            throw e;
+        }
+        final long applyTime = System.nanoTime() - applyStart;
+
+        final long flushStart = System.nanoTime();
+        try {
+            flush();
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // the changes have not been written, discard them so the Credential store is reloaded on next use
+            credentialStore = null;
+            throw e;
+        }
+        final long flushTime = System.nanoTime() - flushStart;
+
+        return new UpdateTimes(lockWaitTime, applyTime, flushTime);
+    }
+
+    private void configureFromEnvironment() throws GeneralSecurityException, IOException {
+        final String algorithm = CredentialStoreHelper.credentialStoreAlgorithmFromEnvironment(environment);
+
+        final Provider provider = CredentialStoreHelper.credentialStoreProviderFromEnvironment(environment);
+
+        final Map<String, String> attributes = CredentialStoreHelper
+                .credentialStoreAttributesFromEnvironment(environment, algorithm);
+
+        final ProtectionParameter protectionParameter = CredentialStoreHelper
+                .createProtectionParameterFromEnvironment(environment);
+
+        location = locationOf(attributes);
+        files = filesOf(algorithm, attributes);
+
+        factory = () -> CredentialStoreHelper.createCredentialStore(algorithm, provider, attributes,
+                protectionParameter);
+    }
+
+    private static List<Path> filesOf(final String algorithm, final Map<String, String> attributes) {
+        if (ShardedCredentialStore.SHARDED_CREDENTIAL_STORE.equals(algorithm)) {
+            return ShardedCredentialStore.shardLocationsOf(attributes);
+        }
+
+        final Path location = locationOf(attributes);
+
+        return location == null ? Collections.emptyList() : Collections.singletonList(location);
+    }
+
+    private static Path locationOf(final Map<String, String> attributes) {
+        final String locationAttribute = attributes.get("location");
+
+        return locationAttribute == null ? null : Paths.get(locationAttribute);
+    }
+}
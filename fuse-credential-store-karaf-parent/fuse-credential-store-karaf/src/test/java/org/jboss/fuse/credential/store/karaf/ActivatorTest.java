@@ -16,10 +16,19 @@
 package org.jboss.fuse.credential.store.karaf;
 
 import java.io.File;
+import java.io.IOException;
 import java.security.Security;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jboss.fuse.credential.store.karaf.metrics.CredentialStoreMetrics;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -38,6 +47,7 @@ import org.wildfly.security.password.interfaces.ClearPassword;
 import org.wildfly.security.password.spec.ClearPasswordSpec;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 public class ActivatorTest {
 
@@ -55,8 +65,6 @@ public class ActivatorTest {
 
     @Before
     public void initializeCredentialStore() throws Exception {
-        activator.start(null);
-
         final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
         Security.addProvider(elytron);
 
@@ -86,16 +94,157 @@ public class ActivatorTest {
         credentialStore.flush();
     }
 
+    @Test
+    public void shouldCollectOnlyCredentialStoreReferences() {
+        final Properties properties = new Properties();
+        properties.setProperty("key", "value");
+        properties.setProperty("reference", "CS:alias");
+
+        assertThat(Activator.referencesIn(properties)).containsOnly(entry("reference", "alias"));
+    }
+
+    @Test
+    public void shouldInstallResolvingPropertiesWithoutOpeningCredentialStores() {
+        final Properties original = System.getProperties();
+        final Properties properties = new Properties();
+        properties.putAll(original);
+        properties.setProperty("reference", "CS:alias");
+
+        final AtomicInteger opened = new AtomicInteger();
+        try {
+            final ResolvingProperties installed = ResolvingProperties.install(properties,
+                new CredentialStoreRegistry(new SharedCredentialStore(null, () -> {
+                    opened.incrementAndGet();
+
+                    return credentialStore;
+                })));
+
+            assertThat(System.getProperties()).isSameAs(installed);
+            assertThat(opened.get()).isEqualTo(0);
+
+            assertThat(System.getProperty("reference")).isEqualTo("this is a password");
+            assertThat(opened.get()).isEqualTo(1);
+        } finally {
+            System.setProperties(original);
+        }
+    }
+
+    @Test
+    public void shouldMaskReplacedAndReferencingProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("key", "value");
+        properties.setProperty("replaced", "this is a password");
+        properties.setProperty("reference", "CS:alias");
+
+        assertThat(Activator.maskedSystemProperties(properties, Collections.singleton("replaced"))).containsOnly(
+                entry("key", "value"), entry("replaced", "<sensitive>"), entry("reference", "<sensitive>"));
+    }
+
     @Test
     public void shouldNotReplaceSystemPropertiesNotInCredentialStoreFormat() {
-        assertThat(activator.replaced(credentialStore, "key", "value")).isFalse();
+        final Properties properties = new Properties();
+        properties.setProperty("key", "value");
+
+        final Map<String, String> references = Activator.referencesIn(properties);
+
+        assertThat(Activator.replace(properties, references,
+                resolve(new HashSet<>(references.values())))).isEmpty();
+        assertThat(properties.getProperty("key")).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldNotReplaceSystemPropertiesReferencingMissingAliases() {
+        final Properties properties = new Properties();
+        properties.setProperty("key", "CS:missing");
+
+        final Map<String, String> references = Activator.referencesIn(properties);
+
+        assertThat(Activator.replace(properties, references,
+                resolve(new HashSet<>(references.values())))).isEmpty();
+        assertThat(properties.getProperty("key")).isEqualTo("CS:missing");
+    }
+
+    @Test
+    public void shouldNotRetryFailuresUntilReloaded() {
+        final Properties properties = new Properties();
+        properties.setProperty("reference", "CS:alias");
+        properties.setProperty("missing", "CS:missing");
+        properties.setProperty("failing", "CS:failing/alias");
+
+        final AtomicInteger failingOpens = new AtomicInteger();
+        final Map<String, SharedCredentialStore> namedStores = Collections.singletonMap("failing",
+            new SharedCredentialStore(null, () -> {
+                failingOpens.incrementAndGet();
+
+                throw new IOException("corrupt credential store");
+            }));
+
+        final ResolvingProperties resolvingProperties = new ResolvingProperties(properties,
+                new CredentialStoreRegistry(new SharedCredentialStore(null, () -> credentialStore), namedStores));
+
+        final CredentialStoreMetrics metrics = CredentialStoreMetrics.metrics();
+        final long missingAliases = metrics.getMissingAliases();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(resolvingProperties.getProperty("failing")).isEqualTo("CS:failing/alias");
+            assertThat(resolvingProperties.getProperty("missing")).isEqualTo("CS:missing");
+        }
+
+        assertThat(failingOpens.get()).isEqualTo(1);
+        assertThat(metrics.getMissingAliases()).isEqualTo(missingAliases + 1);
+
+        resolvingProperties.reloaded();
+
+        assertThat(resolvingProperties.getProperty("failing")).isEqualTo("CS:failing/alias");
+        assertThat(resolvingProperties.getProperty("missing")).isEqualTo("CS:missing");
+        assertThat(resolvingProperties.getProperty("reference")).isEqualTo("this is a password");
+
+        assertThat(failingOpens.get()).isEqualTo(2);
+        assertThat(metrics.getMissingAliases()).isEqualTo(missingAliases + 2);
     }
 
     @Test
     public void shouldReplaceSystemPropertiesInCredentialStoreFormat() {
-        assertThat(activator.replaced(credentialStore, "key", "CS:alias")).isTrue();
+        final Properties properties = new Properties();
+        properties.setProperty("key", "CS:alias");
+        properties.setProperty("another", "CS:alias");
+
+        final Map<String, String> references = Activator.referencesIn(properties);
+
+        assertThat(Activator.replace(properties, references,
+                resolve(new HashSet<>(references.values()))))
+                        .containsOnly(entry("key", "CS:alias"), entry("another", "CS:alias"));
+
+        assertThat(properties.getProperty("key")).isEqualTo("this is a password");
+        assertThat(properties.getProperty("another")).isEqualTo("this is a password");
+    }
+
+    @Test
+    public void shouldResolvePropertiesLazily() {
+        final Properties properties = new Properties();
+        properties.setProperty("key", "value");
+        properties.setProperty("reference", "CS:alias");
+        properties.setProperty("missing", "CS:missing");
+
+        final ResolvingProperties resolvingProperties = new ResolvingProperties(properties,
+                new CredentialStoreRegistry(new SharedCredentialStore(null, () -> credentialStore)));
+
+        assertThat(resolvingProperties.getProperty("key")).isEqualTo("value");
+        assertThat(resolvingProperties.getProperty("reference")).isEqualTo("this is a password");
+        assertThat(resolvingProperties.get("reference")).isEqualTo("this is a password");
+        assertThat(resolvingProperties.getProperty("missing")).isEqualTo("CS:missing");
+        assertThat(resolvingProperties.getProperty("nonexistant", "default")).isEqualTo("default");
+
+        resolvingProperties.setProperty("added", "CS:alias");
+        assertThat(resolvingProperties.getProperty("added")).isEqualTo("this is a password");
+
+        // references are kept as set
+        assertThat(resolvingProperties.entrySet()).contains(entry("reference", "CS:alias"));
+    }
 
-        assertThat(System.getProperty("key")).isEqualTo("this is a password");
+    Map<String, String> resolve(final Set<String> references) {
+        return Activator.resolve(new CredentialStoreRegistry(new SharedCredentialStore(null, () -> credentialStore)),
+                Collections.singletonMap(CredentialStoreRegistry.DEFAULT_STORE_NAME, credentialStore), references);
     }
 
     @After
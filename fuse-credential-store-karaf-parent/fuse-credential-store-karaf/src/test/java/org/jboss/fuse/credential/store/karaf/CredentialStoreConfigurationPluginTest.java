@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialCipher;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CredentialStoreConfigurationPluginTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    Path location;
+
+    CredentialStoreConfigurationPlugin plugin;
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+    }
+
+    @Before
+    public void createPlugin() throws Exception {
+        location = new File(tmp.getRoot(), "credential.store").toPath();
+
+        final CredentialStore credentialStore = credentialStore();
+        credentialStore.store("alias", CredentialStoreHelper.clearPasswordCredential("secret"));
+        credentialStore.flush();
+
+        plugin = new CredentialStoreConfigurationPlugin(
+                new CredentialStoreRegistry(new SharedCredentialStore(location, () -> {
+                    loads.incrementAndGet();
+
+                    return credentialStore();
+                })));
+    }
+
+    @Test
+    public void shouldDecryptInlineEncryptedValues() throws Exception {
+        final CredentialCipher cipher = new CredentialCipher(CredentialCipher.generateKey());
+
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("password", cipher.encrypt("secret"));
+        configuration.put("corrupt", "ENC:AAAA");
+
+        plugin.modifyConfiguration(null, configuration);
+        // not decrypted until the cipher is available
+        assertThat((String) configuration.get("password")).startsWith("ENC:");
+
+        plugin.cipher(cipher);
+        plugin.modifyConfiguration(null, configuration);
+
+        assertThat(configuration.get("password")).isEqualTo("secret");
+        assertThat(configuration.get("corrupt")).isEqualTo("ENC:AAAA");
+        assertThat(loads.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldLeaveConfigurationsWithoutReferencesAlone() {
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("key", "value");
+        configuration.put("number", 1);
+
+        plugin.modifyConfiguration(null, configuration);
+
+        assertThat(configuration.get("key")).isEqualTo("value");
+        assertThat(configuration.get("number")).isEqualTo(1);
+        assertThat(loads.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotReplaceReferencesToInvalidlyConfiguredCredentialStore() {
+        final CredentialStoreConfigurationPlugin invalid = new CredentialStoreConfigurationPlugin(
+            new CredentialStoreRegistry(new SharedCredentialStore(null, () -> {
+                throw new IllegalArgumentException("No enum constant");
+            })));
+
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("password", "CS:alias");
+
+        invalid.modifyConfiguration(null, configuration);
+
+        assertThat(configuration.get("password")).isEqualTo("CS:alias");
+    }
+
+    @Test
+    public void shouldNotReplaceReferencesToMissingAliases() {
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("password", "CS:missing");
+
+        plugin.modifyConfiguration(null, configuration);
+
+        assertThat(configuration.get("password")).isEqualTo("CS:missing");
+    }
+
+    @Test
+    public void shouldResolveReferencesAgainAfterReload() throws Exception {
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("password", "CS:alias");
+        plugin.modifyConfiguration(null, configuration);
+
+        final CredentialStore changed = credentialStore();
+        changed.store("alias", CredentialStoreHelper.clearPasswordCredential("changed"));
+        changed.flush();
+        // make sure the modification is noticed regardless of the file system timestamp granularity
+        Files.setLastModifiedTime(location, FileTime.fromMillis(0));
+
+        final Dictionary<String, Object> delivered = new Hashtable<>();
+        delivered.put("password", "CS:alias");
+        plugin.modifyConfiguration(null, delivered);
+
+        assertThat(configuration.get("password")).isEqualTo("secret");
+        assertThat(delivered.get("password")).isEqualTo("changed");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldResolveReferencesInConfiguration() {
+        final Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("user", "admin");
+        configuration.put("password", "CS:alias");
+
+        plugin.modifyConfiguration(null, configuration);
+
+        assertThat(configuration.get("user")).isEqualTo("admin");
+        assertThat(configuration.get("password")).isEqualTo("secret");
+    }
+
+    @Test
+    public void shouldShareResolvedValuesBetweenConfigurations() {
+        for (int i = 0; i < 100; i++) {
+            final Dictionary<String, Object> configuration = new Hashtable<>();
+            configuration.put("password", "CS:alias");
+
+            plugin.modifyConfiguration(null, configuration);
+
+            assertThat(configuration.get("password")).isEqualTo("secret");
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    CredentialStore credentialStore() throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("keyStoreType", "JCEKS");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential("password"))));
+
+        return credentialStore;
+    }
+}
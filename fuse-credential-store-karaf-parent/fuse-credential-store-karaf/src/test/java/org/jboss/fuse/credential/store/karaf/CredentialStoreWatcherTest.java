@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CredentialStoreWatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void shouldCoalesceChangesWithinDebouncePeriod() throws Exception {
+        final Path location = new File(tmp.getRoot(), "credential.store").toPath();
+        Files.write(location, "initial".getBytes(StandardCharsets.UTF_8));
+
+        final AtomicInteger reloads = new AtomicInteger();
+        final CountDownLatch reloaded = new CountDownLatch(1);
+
+        try (CredentialStoreWatcher watcher = new CredentialStoreWatcher(location, 500, () -> {
+            reloads.incrementAndGet();
+            reloaded.countDown();
+        })) {
+            for (int i = 0; i < 5; i++) {
+                Files.write(location, ("change " + i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertThat(reloaded.await(30, TimeUnit.SECONDS)).isTrue();
+
+            Thread.sleep(1000);
+
+            assertThat(reloads.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldMatchOnlyCredentialStoreAndShardFiles() {
+        final Path fileName = Paths.get("credential.store");
+
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("credential.store"))).isTrue();
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("credential.store.0"))).isTrue();
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("credential.store.15"))).isTrue();
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("credential.store."))).isFalse();
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("credential.store.lock")))
+            .isFalse();
+        assertThat(CredentialStoreWatcher.isCredentialStoreFile(fileName, Paths.get("other"))).isFalse();
+    }
+
+    @Test
+    public void shouldNotReactToOtherFilesInTheDirectory() throws Exception {
+        final Path location = new File(tmp.getRoot(), "credential.store").toPath();
+        Files.write(location, "initial".getBytes(StandardCharsets.UTF_8));
+
+        final CountDownLatch reloaded = new CountDownLatch(1);
+
+        try (CredentialStoreWatcher watcher = new CredentialStoreWatcher(location, 100, reloaded::countDown)) {
+            Files.write(new File(tmp.getRoot(), "other").toPath(), "other".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(reloaded.await(1, TimeUnit.SECONDS)).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldReactToChangedShardFiles() throws Exception {
+        final Path location = new File(tmp.getRoot(), "credential.store").toPath();
+        final Path shard = new File(tmp.getRoot(), "credential.store.3").toPath();
+        Files.write(shard, "initial".getBytes(StandardCharsets.UTF_8));
+
+        final CountDownLatch reloaded = new CountDownLatch(1);
+
+        try (CredentialStoreWatcher watcher = new CredentialStoreWatcher(location, 100, reloaded::countDown)) {
+            Files.write(shard, "changed".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(reloaded.await(30, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+}
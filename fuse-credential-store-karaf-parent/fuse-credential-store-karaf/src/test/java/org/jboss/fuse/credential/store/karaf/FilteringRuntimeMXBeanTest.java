@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreRegistry;
+import org.jboss.fuse.credential.store.karaf.util.SharedCredentialStore;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilteringRuntimeMXBeanTest {
+
+    final RuntimeMXBean original = ManagementFactory.getRuntimeMXBean();
+
+    final FilteringRuntimeMXBean filtering = new FilteringRuntimeMXBean(original,
+        Collections.singleton("filtering.replaced"));
+
+    @After
+    public void clearProperties() {
+        System.clearProperty("filtering.replaced");
+        System.clearProperty("filtering.reference");
+        System.clearProperty("filtering.plain");
+    }
+
+    @Test
+    public void shouldDelegateToOriginalBean() {
+        assertThat(filtering.getName()).isEqualTo(original.getName());
+        assertThat(filtering.getStartTime()).isEqualTo(original.getStartTime());
+        assertThat(filtering.getInputArguments()).isEqualTo(original.getInputArguments());
+        assertThat(filtering.getObjectName()).isEqualTo(original.getObjectName());
+    }
+
+    @Test
+    public void shouldBeRegistrableAsMXBean() throws Exception {
+        System.setProperty("filtering.replaced", "secret");
+
+        final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = ObjectName.getInstance("java.lang", "type", "Runtime");
+        mbeanServer.registerMBean(filtering, name);
+
+        final TabularData systemProperties = (TabularData) mbeanServer.getAttribute(name, "SystemProperties");
+        final CompositeData replaced = systemProperties.get(new Object[] {"filtering.replaced"});
+
+        assertThat(replaced.get("value")).isEqualTo("<sensitive>");
+        assertThat(mbeanServer.getAttribute(name, "VmName")).isEqualTo(original.getVmName());
+    }
+
+    @Test
+    public void shouldMaskSensitiveValues() {
+        System.setProperty("filtering.replaced", "secret");
+        System.setProperty("filtering.reference", "CS:alias");
+        System.setProperty("filtering.plain", "value");
+
+        final Map<String, String> systemProperties = filtering.getSystemProperties();
+
+        assertThat(systemProperties).containsEntry("filtering.replaced", "<sensitive>")
+            .containsEntry("filtering.reference", "<sensitive>").containsEntry("filtering.plain", "value");
+    }
+
+    @Test
+    public void shouldRebuildSnapshotWhenSystemPropertiesChange() {
+        final Map<String, String> before = filtering.getSystemProperties();
+
+        System.setProperty("filtering.plain", "value");
+
+        final Map<String, String> after = filtering.getSystemProperties();
+
+        assertThat(after).isNotSameAs(before).containsEntry("filtering.plain", "value");
+        assertThat(before).doesNotContainKey("filtering.plain");
+    }
+
+    @Test
+    public void shouldRebuildSnapshotWhenValuesAreReplaced() {
+        System.setProperty("filtering.plain", "CS:alias");
+        final Map<String, String> before = filtering.getSystemProperties();
+
+        Activator.replace(System.getProperties(), Collections.singletonMap("filtering.plain", "alias"),
+            Collections.singletonMap("alias", "value"));
+
+        final Map<String, String> after = filtering.getSystemProperties();
+
+        assertThat(before).containsEntry("filtering.plain", "<sensitive>");
+        assertThat(after).isNotSameAs(before).containsEntry("filtering.plain", "value");
+    }
+
+    @Test
+    public void shouldRebuildSnapshotWhenValueChanges() {
+        System.setProperty("filtering.plain", "value");
+        final Map<String, String> before = filtering.getSystemProperties();
+
+        System.setProperty("filtering.plain", "changed");
+
+        final Map<String, String> after = filtering.getSystemProperties();
+
+        assertThat(after).hasSameSizeAs(before).containsEntry("filtering.plain", "changed");
+        assertThat(before).containsEntry("filtering.plain", "value");
+    }
+
+    @Test
+    public void shouldRebuildSnapshotWhenValueOfResolvingPropertiesChanges() {
+        withResolvingProperties(() -> {
+            System.setProperty("filtering.plain", "value");
+            final Map<String, String> before = filtering.getSystemProperties();
+
+            System.setProperty("filtering.plain", "changed");
+
+            final Map<String, String> after = filtering.getSystemProperties();
+
+            assertThat(after).isNotSameAs(before).hasSameSizeAs(before).containsEntry("filtering.plain", "changed");
+        });
+    }
+
+    @Test
+    public void shouldReuseSnapshotWhileResolvingPropertiesAreUnchanged() {
+        withResolvingProperties(
+            () -> assertThat(filtering.getSystemProperties()).isSameAs(filtering.getSystemProperties()));
+    }
+
+    static void withResolvingProperties(final Runnable test) {
+        final Properties original = System.getProperties();
+
+        System.setProperties(new ResolvingProperties(original, new CredentialStoreRegistry(
+            new SharedCredentialStore(null, () -> {
+                throw new IOException("Not expected to be opened");
+            }))));
+        try {
+            test.run();
+        } finally {
+            System.setProperties(original);
+        }
+    }
+}
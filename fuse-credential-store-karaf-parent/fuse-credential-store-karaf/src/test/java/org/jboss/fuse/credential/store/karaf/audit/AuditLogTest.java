@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.audit;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditLogTest {
+
+    @Test
+    public void shouldExposeEventsThroughJmx() throws Exception {
+        final AuditLog log = new AuditLog(4);
+        log.record("db.password", "javax.net.ssl.keyStorePassword", Outcome.replaced, 0, AuditLog.SYSTEM_PROPERTIES);
+
+        final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = ObjectName.getInstance(AuditLog.OBJECT_NAME);
+        mbeanServer.registerMBean(log, name);
+
+        final CompositeData[] events = (CompositeData[]) mbeanServer.getAttribute(name, "Events");
+
+        assertThat(events).hasSize(1);
+        assertThat(events[0].get("alias")).isEqualTo("db.password");
+        assertThat(events[0].get("subject")).isEqualTo("javax.net.ssl.keyStorePassword");
+        assertThat(events[0].get("outcome")).isEqualTo("replaced");
+        assertThat(events[0].get("caller")).isEqualTo(AuditLog.SYSTEM_PROPERTIES);
+    }
+
+    @Test
+    public void shouldKeepOnlyTheMostRecentEvents() {
+        final AuditLog log = new AuditLog(4);
+
+        for (int i = 0; i < 10; i++) {
+            log.record("alias" + i, null, Outcome.retrieved, i, "test");
+        }
+
+        final List<AuditEvent> events = log.getEvents();
+
+        assertThat(events).extracting(AuditEvent::getAlias).containsExactly("alias6", "alias7", "alias8", "alias9");
+        assertThat(events).extracting(AuditEvent::getSequence).containsExactly(6L, 7L, 8L, 9L);
+        assertThat(log.getRecordedEvents()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldNotOverwriteNewerEventsWithDelayedOnes() {
+        final AuditLog log = new AuditLog(4);
+
+        for (int i = 0; i < 7; i++) {
+            log.record("alias" + i, null, Outcome.retrieved, 0, "test");
+        }
+
+        // a writer that claimed sequence 2 but publishes only now, after sequence 6 took the same slot
+        log.publish(new AuditEvent(2, System.currentTimeMillis(), "alias2", null, Outcome.retrieved, 0, "test"));
+
+        assertThat(log.getEvents()).extracting(AuditEvent::getSequence).containsExactly(3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    public void shouldRecordConcurrently() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            final AuditLog log = new AuditLog(64);
+
+            final Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                final String caller = "thread" + t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        log.record("alias", null, Outcome.retrieved, 0, caller);
+                    }
+                });
+                threads[t].start();
+            }
+
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            final List<AuditEvent> events = log.getEvents();
+            assertThat(log.getRecordedEvents()).isEqualTo(8_000);
+            assertThat(events).hasSize(64);
+            assertThat(events.stream().map(AuditEvent::getSequence).collect(Collectors.toList()))
+                    .isSorted().allMatch(sequence -> sequence >= 8_000 - 64);
+        }
+    }
+
+    @Test
+    public void shouldRoundCapacityToPowerOfTwo() {
+        assertThat(new AuditLog(1).getCapacity()).isEqualTo(2);
+        assertThat(new AuditLog(64).getCapacity()).isEqualTo(64);
+        assertThat(new AuditLog(100).getCapacity()).isEqualTo(128);
+    }
+}
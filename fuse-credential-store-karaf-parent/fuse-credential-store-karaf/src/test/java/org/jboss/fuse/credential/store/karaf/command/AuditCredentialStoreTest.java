@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent;
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditCredentialStoreTest {
+
+    private final List<AuditEvent> events = Arrays.asList(event(0, "db.password", Outcome.retrieved),
+        event(1, "db.user", Outcome.missing), event(2, "ldap.password", Outcome.retrieved),
+        event(3, "db.password", Outcome.stored));
+
+    @Test
+    public void shouldFilterByAliasAndOutcome() {
+        assertThat(AuditCredentialStore.select(events, "db.*", null, -1)).extracting(AuditEvent::getSequence)
+                .containsExactly(0L, 1L, 3L);
+        assertThat(AuditCredentialStore.select(events, null, Outcome.retrieved, -1))
+                .extracting(AuditEvent::getSequence).containsExactly(0L, 2L);
+        assertThat(AuditCredentialStore.select(events, "*.password", Outcome.retrieved, -1))
+                .extracting(AuditEvent::getSequence).containsExactly(0L, 2L);
+    }
+
+    @Test
+    public void shouldKeepMostRecentEventsWithinLimit() {
+        assertThat(AuditCredentialStore.select(events, null, null, 2)).extracting(AuditEvent::getSequence)
+                .containsExactly(2L, 3L);
+        assertThat(AuditCredentialStore.select(events, null, null, 10)).hasSize(4);
+        assertThat(AuditCredentialStore.select(events, null, null, 0)).isEmpty();
+    }
+
+    private static AuditEvent event(final long sequence, final String alias, final Outcome outcome) {
+        return new AuditEvent(sequence, 0, alias, null, outcome, 0, "test");
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.karaf.shell.support.CommandException;
+import org.jboss.fuse.credential.store.karaf.command.ImportToCredentialStore.Format;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class ImportToCredentialStoreTest {
+
+    @Test
+    public void shouldNotCloseStandardInput() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final ByteArrayInputStream stdin = new ByteArrayInputStream("alias=secret\n".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+            }
+        };
+
+        try (Reader reader = ImportToCredentialStore.input(null, stdin)) {
+            assertThat(ImportToCredentialStore.read(reader, Format.properties)).containsOnly(entry("alias", "secret"));
+        }
+
+        assertThat(closed.get()).isFalse();
+    }
+
+    @Test
+    public void shouldReadCsv() throws Exception {
+        final String csv = "# comment\n" + "alias1,secret\n" + "\n" + " alias2 ,secret, with comma\n";
+
+        assertThat(ImportToCredentialStore.read(new StringReader(csv), Format.csv))
+                .containsExactly(entry("alias1", "secret"), entry("alias2", "secret, with comma"));
+    }
+
+    @Test
+    public void shouldReadProperties() throws Exception {
+        final String properties = "# comment\n" + "alias1=secret\n" + "alias2 = secret=with equals\n";
+
+        assertThat(ImportToCredentialStore.read(new StringReader(properties), Format.properties))
+                .containsOnly(entry("alias1", "secret"), entry("alias2", "secret=with equals"));
+    }
+
+    @Test(expected = CommandException.class)
+    public void shouldRejectInvalidCsv() throws Exception {
+        ImportToCredentialStore.read(new StringReader("alias without secret\n"), Format.csv);
+    }
+}
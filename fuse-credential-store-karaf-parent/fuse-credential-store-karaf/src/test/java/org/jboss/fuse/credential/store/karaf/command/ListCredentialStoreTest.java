@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.command;
+
+import java.io.StringWriter;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jboss.fuse.credential.store.karaf.command.ListCredentialStore.Format;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ListCredentialStoreTest {
+
+    private static String write(final Format format, final String... aliases) throws Exception {
+        final StringWriter out = new StringWriter();
+
+        ListCredentialStore.write(Stream.of(aliases), format, out);
+
+        return out.toString();
+    }
+
+    @Test
+    public void shouldFilterByGlob() {
+        final Predicate<String> filter = ListCredentialStore.filter("db.*.pass?", null);
+
+        assertThat(filter).accepts("db.orders.passw", "db..pass1").rejects("db.orders.password", "xdb.a.pass1",
+            "db.orders.pass");
+    }
+
+    @Test
+    public void shouldFilterByGlobAndRegex() {
+        final Predicate<String> filter = ListCredentialStore.filter("db.*", ".*[0-9]");
+
+        assertThat(filter).accepts("db.a1").rejects("db.a", "x.a1");
+    }
+
+    @Test
+    public void shouldNotTreatGlobLiteralsAsRegex() {
+        assertThat(ListCredentialStore.filter("a+b(c)", null)).accepts("a+b(c)").rejects("aab(c)");
+    }
+
+    @Test
+    public void shouldPageSortedAliases() {
+        assertThat(ListCredentialStore.select(Stream.of("d", "b", "a", "c", "e"), a -> true, 1, 2)
+            .collect(Collectors.toList())).containsExactly("b", "c");
+
+        assertThat(ListCredentialStore.select(Stream.of("d", "b", "a"), a -> !"b".equals(a), 0, -1)
+            .collect(Collectors.toList())).containsExactly("a", "d");
+    }
+
+    @Test
+    public void shouldWriteCsv() throws Exception {
+        assertThat(write(Format.csv, "a", "with,comma", "with\"quote")).isEqualTo("alias,reference\n" + "a,CS:a\n"
+            + "\"with,comma\",\"CS:with,comma\"\n" + "\"with\"\"quote\",\"CS:with\"\"quote\"\n");
+    }
+
+    @Test
+    public void shouldWriteJson() throws Exception {
+        assertThat(write(Format.json)).isEqualTo("[]\n");
+
+        assertThat(write(Format.json, "a", "with\"quote\\")).isEqualTo("[\n"
+            + "  {\"alias\": \"a\", \"reference\": \"CS:a\"},\n"
+            + "  {\"alias\": \"with\\\"quote\\\\\", \"reference\": \"CS:with\\\"quote\\\\\"}\n" + "]\n");
+    }
+
+    @Test
+    public void shouldWriteTableAsShellTable() throws Exception {
+        assertThat(write(Format.table, "a", "longer.alias")).isEqualTo("Alias        | Reference\n"
+            + "------------------------------\n" + "a            | CS:a\n" + "longer.alias | CS:longer.alias\n");
+    }
+}
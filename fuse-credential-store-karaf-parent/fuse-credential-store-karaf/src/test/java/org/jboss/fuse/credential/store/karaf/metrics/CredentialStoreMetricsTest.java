@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CredentialStoreMetricsTest {
+
+    @Test
+    public void shouldExposeMetricsThroughJmx() throws Exception {
+        final CredentialStoreMetrics metrics = new CredentialStoreMetrics();
+        metrics.storeOpen().record(2_000_000);
+        metrics.cacheHit();
+        metrics.cacheHit();
+        metrics.cacheMiss();
+        metrics.missingAlias();
+
+        final Map<String, Long> phases = new LinkedHashMap<>();
+        phases.put("snapshot", 1_000_000L);
+        phases.put("storeOpen", 2_000_000L);
+        metrics.started(phases, 3);
+
+        final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = ObjectName.getInstance(CredentialStoreMetrics.OBJECT_NAME);
+        mbeanServer.registerMBean(metrics, name);
+
+        assertThat(mbeanServer.getAttribute(name, "CacheHits")).isEqualTo(2L);
+        assertThat(mbeanServer.getAttribute(name, "CacheMisses")).isEqualTo(1L);
+        assertThat(mbeanServer.getAttribute(name, "MissingAliases")).isEqualTo(1L);
+        assertThat(mbeanServer.getAttribute(name, "ResolvedReferences")).isEqualTo(3L);
+
+        final CompositeData storeOpen = (CompositeData) mbeanServer.getAttribute(name, "StoreOpen");
+        assertThat(storeOpen.get("count")).isEqualTo(1L);
+        assertThat(storeOpen.get("maxMicros")).isEqualTo(2000L);
+
+        final TabularData startupPhases = (TabularData) mbeanServer.getAttribute(name, "StartupPhases");
+        assertThat(startupPhases.get(new Object[] {"storeOpen"}).get("value")).isEqualTo(2000L);
+
+        mbeanServer.invoke(name, "reset", null, null);
+
+        assertThat(mbeanServer.getAttribute(name, "CacheHits")).isEqualTo(0L);
+        assertThat(((CompositeData) mbeanServer.getAttribute(name, "StoreOpen")).get("count")).isEqualTo(0L);
+        assertThat(mbeanServer.getAttribute(name, "ResolvedReferences")).isEqualTo(0L);
+        assertThat(((TabularData) mbeanServer.getAttribute(name, "StartupPhases")).isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.metrics;
+
+import org.jboss.fuse.credential.store.karaf.metrics.LatencyHistogram.Snapshot;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldApproximatePercentilesWithBucketUpperBounds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 98; i++) {
+            histogram.record(1_500_000); // 1.5 ms, bucket up to 2^21 - 1 ns
+        }
+        histogram.record(3_000_000); // 3 ms, bucket up to 2^22 - 1 ns
+        histogram.record(100_000_000); // 100 ms
+
+        final Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getP50Micros()).isEqualTo(2097);
+        assertThat(snapshot.getP90Micros()).isEqualTo(2097);
+        assertThat(snapshot.getP99Micros()).isEqualTo(4194);
+        assertThat(snapshot.getMaxMicros()).isEqualTo(100_000);
+        assertThat(snapshot.getTotalMicros()).isEqualTo(98 * 1500 + 3000 + 100_000);
+        assertThat(snapshot.getMeanMicros()).isEqualTo(2500);
+    }
+
+    @Test
+    public void shouldPlaceLatenciesInPowerOfTwoBuckets() {
+        assertThat(LatencyHistogram.bucketOf(0)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucketOf(1)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucketOf(2)).isEqualTo(2);
+        assertThat(LatencyHistogram.bucketOf(3)).isEqualTo(2);
+        assertThat(LatencyHistogram.bucketOf(4)).isEqualTo(3);
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE)).isEqualTo(63);
+
+        assertThat(LatencyHistogram.upperBoundOf(2)).isEqualTo(3);
+        assertThat(LatencyHistogram.upperBoundOf(63)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldRecordConcurrently() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(histogram.snapshot().getCount()).isEqualTo(40_000);
+    }
+
+    @Test
+    public void shouldReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+
+        histogram.reset();
+
+        final Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getMaxMicros()).isZero();
+        assertThat(snapshot.getP99Micros()).isZero();
+        assertThat(snapshot.getMeanMicros()).isZero();
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jboss.fuse.credential.store.karaf.store.MappedCredentialStoreTest.valueOf;
+
+public class JournalCredentialStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Path location;
+
+    @Before
+    public void determineLocation() {
+        location = new File(tmp.getRoot(), "credential.journal").toPath();
+    }
+
+    @Test
+    public void shouldAppendOnlyTheChangedEntries() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        for (int i = 0; i < 100; i++) {
+            credentialStore.store("alias" + i, CredentialStoreHelper.clearPasswordCredential("secret" + i));
+        }
+        credentialStore.flush();
+
+        final long before = Files.size(location);
+        credentialStore.store("alias0", CredentialStoreHelper.clearPasswordCredential("changed"));
+        credentialStore.flush();
+        final long appended = Files.size(location) - before;
+
+        assertThat(appended).isLessThan(before / 50);
+        assertThat(valueOf(open("password"), "alias0")).isEqualTo("changed");
+    }
+
+    @Test
+    public void shouldCompactStaleRecords() throws Exception {
+        final JournalCredentialStore journal = new JournalCredentialStore();
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("iterations", "1000");
+        attributes.put("compactionThreshold", "1");
+        journal.initialize(attributes, protection("password"));
+
+        for (int i = 0; i < 100; i++) {
+            journal.store("alias", CredentialStoreHelper.clearPasswordCredential("secret" + i), null);
+            journal.flush();
+        }
+        journal.store("removed", CredentialStoreHelper.clearPasswordCredential("removed"), null);
+        journal.remove("removed", PasswordCredential.class, null, null);
+        journal.store("another", CredentialStoreHelper.clearPasswordCredential("another"), null);
+        journal.flush();
+
+        final long before = Files.size(location);
+        journal.compact();
+
+        assertThat(Files.size(location)).isLessThan(before / 10);
+
+        journal.store("later", CredentialStoreHelper.clearPasswordCredential("later"), null);
+        journal.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("alias", "another", "later");
+        assertThat(valueOf(reopened, "alias")).isEqualTo("secret99");
+    }
+
+    @Test
+    public void shouldIgnorePartiallyWrittenRecords() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        credentialStore.store("alias", CredentialStoreHelper.clearPasswordCredential("secret"));
+        credentialStore.flush();
+
+        Files.write(location, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        final CredentialStore recovered = open("password");
+        assertThat(valueOf(recovered, "alias")).isEqualTo("secret");
+
+        recovered.store("another", CredentialStoreHelper.clearPasswordCredential("another secret"));
+        recovered.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("alias", "another");
+        assertThat(valueOf(reopened, "another")).isEqualTo("another secret");
+    }
+
+    @Test
+    public void shouldMergeRecordsAppendedByAnotherWriter() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        credentialStore.store("first", CredentialStoreHelper.clearPasswordCredential("first"));
+        credentialStore.flush();
+
+        final CredentialStore another = open("password");
+        another.store("second", CredentialStoreHelper.clearPasswordCredential("second"));
+        another.remove("first", PasswordCredential.class);
+        another.flush();
+
+        credentialStore.store("third", CredentialStoreHelper.clearPasswordCredential("third"));
+        credentialStore.flush();
+
+        assertThat(credentialStore.getAliases()).containsOnly("second", "third");
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("second", "third");
+        assertThat(valueOf(reopened, "second")).isEqualTo("second");
+    }
+
+    @Test
+    public void shouldNotOpenWithInvalidPassword() throws Exception {
+        open("password").flush();
+
+        assertThatThrownBy(() -> open("invalid")).isInstanceOf(CredentialStoreException.class)
+            .hasMessageContaining("invalid password");
+    }
+
+    @Test
+    public void shouldReplayJournalCompactedByAnotherWriter() throws Exception {
+        final JournalCredentialStore journal = new JournalCredentialStore();
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("iterations", "1000");
+        journal.initialize(attributes, protection("password"));
+        for (int i = 0; i < 10; i++) {
+            journal.store("alias", CredentialStoreHelper.clearPasswordCredential("secret" + i), null);
+            journal.flush();
+        }
+
+        final CredentialStore another = open("password");
+        another.store("another", CredentialStoreHelper.clearPasswordCredential("another"));
+        another.flush();
+
+        journal.compact();
+
+        another.store("later", CredentialStoreHelper.clearPasswordCredential("later"));
+        another.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("alias", "another", "later");
+        assertThat(valueOf(reopened, "alias")).isEqualTo("secret9");
+    }
+
+    @Test
+    public void shouldReplayStoresAndRemovals() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        credentialStore.store("kept", CredentialStoreHelper.clearPasswordCredential("first"));
+        credentialStore.store("removed", CredentialStoreHelper.clearPasswordCredential("removed"));
+        credentialStore.flush();
+        credentialStore.store("kept", CredentialStoreHelper.clearPasswordCredential("second"));
+        credentialStore.remove("removed", PasswordCredential.class);
+        credentialStore.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("kept");
+        assertThat(valueOf(reopened, "kept")).isEqualTo("second");
+        assertThat(reopened.retrieve("removed", PasswordCredential.class)).isNull();
+    }
+
+    CredentialStore open(final String password) throws Exception {
+        final CredentialStore credentialStore = CredentialStore
+            .getInstance(JournalCredentialStore.JOURNAL_CREDENTIAL_STORE, new FuseCredentialStoreProvider());
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("iterations", "1000");
+
+        credentialStore.initialize(attributes, protection(password));
+
+        return credentialStore;
+    }
+
+    static CredentialStore.ProtectionParameter protection(final String password) throws Exception {
+        return new CredentialStore.CredentialSourceProtectionParameter(
+            IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential(password)));
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.jboss.fuse.credential.store.karaf.util.ProviderHelper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.password.interfaces.ClearPassword;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedCredentialStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Path location;
+
+    @Before
+    public void determineLocation() {
+        location = new File(tmp.getRoot(), "credential.store").toPath();
+    }
+
+    @Test
+    public void shouldBeCreatedThroughHelperWithDefaultProvider() throws Exception {
+        final CredentialStore credentialStore = CredentialStoreHelper.credentialStoreInstance(
+            MappedCredentialStore.MAPPED_CREDENTIAL_STORE, ProviderHelper.provider(ProviderHelper.WILDFLY_PROVIDER));
+
+        assertThat(credentialStore.getProvider().getName()).isEqualTo(FuseCredentialStoreProvider.NAME);
+    }
+
+    @Test
+    public void shouldDetectSwappedEntries() throws Exception {
+        final byte[] salt = EntryCipher.newSalt();
+        final EntryCipher cipher = new EntryCipher("password".toCharArray(), salt, 1000);
+
+        final Map<String, byte[]> entries = new TreeMap<>();
+        entries.put("a", cipher.seal("b".getBytes("UTF-8"), "secret".toCharArray()));
+        Files.write(location, MappedCredentialStore.format(salt, 1000, cipher.createVerifier(), entries));
+
+        final CredentialStore credentialStore = open("password");
+
+        assertThatThrownBy(() -> credentialStore.retrieve("a", PasswordCredential.class))
+            .isInstanceOf(CredentialStoreException.class);
+    }
+
+    @Test
+    public void shouldNotOpenWithInvalidPassword() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        credentialStore.store("alias", CredentialStoreHelper.clearPasswordCredential("secret"));
+        credentialStore.flush();
+
+        assertThatThrownBy(() -> open("invalid")).isInstanceOf(CredentialStoreException.class)
+            .hasMessageContaining("invalid password");
+    }
+
+    @Test
+    public void shouldNotStoreInUnmodifiableCredentialStore() throws Exception {
+        open("password").flush();
+
+        final CredentialStore credentialStore = open("password", Collections.singletonMap("modifiable", "false"));
+
+        assertThatThrownBy(
+            () -> credentialStore.store("alias", CredentialStoreHelper.clearPasswordCredential("secret")))
+                .isInstanceOf(CredentialStoreException.class);
+    }
+
+    @Test
+    public void shouldRemoveEntries() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        credentialStore.store("kept", CredentialStoreHelper.clearPasswordCredential("kept secret"));
+        credentialStore.store("removed", CredentialStoreHelper.clearPasswordCredential("removed secret"));
+        credentialStore.flush();
+
+        credentialStore.remove("removed", PasswordCredential.class);
+        assertThat(credentialStore.getAliases()).containsOnly("kept");
+        credentialStore.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).containsOnly("kept");
+        assertThat(reopened.retrieve("removed", PasswordCredential.class)).isNull();
+        assertThat(valueOf(reopened, "kept")).isEqualTo("kept secret");
+    }
+
+    @Test
+    public void shouldStoreAndRetrieveManyEntries() throws Exception {
+        final CredentialStore credentialStore = open("password");
+        for (int i = 0; i < 1000; i++) {
+            credentialStore.store("alias" + i, CredentialStoreHelper.clearPasswordCredential("secret" + i));
+        }
+
+        assertThat(valueOf(credentialStore, "alias7")).isEqualTo("secret7");
+
+        credentialStore.flush();
+
+        final CredentialStore reopened = open("password");
+        assertThat(reopened.getAliases()).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(valueOf(reopened, "alias" + i)).isEqualTo("secret" + i);
+        }
+        assertThat(reopened.retrieve("missing", PasswordCredential.class)).isNull();
+    }
+
+    CredentialStore open(final String password) throws Exception {
+        return open(password, Collections.emptyMap());
+    }
+
+    CredentialStore open(final String password, final Map<String, String> additional) throws Exception {
+        final CredentialStore credentialStore = CredentialStore
+            .getInstance(MappedCredentialStore.MAPPED_CREDENTIAL_STORE, new FuseCredentialStoreProvider());
+
+        final Map<String, String> attributes = new HashMap<>(additional);
+        attributes.put("location", location.toString());
+        attributes.put("iterations", "1000");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+            IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential(password))));
+
+        return credentialStore;
+    }
+
+    static String valueOf(final CredentialStore credentialStore, final String alias) throws Exception {
+        final PasswordCredential credential = credentialStore.retrieve(alias, PasswordCredential.class);
+
+        return String.valueOf(credential.getPassword(ClearPassword.class).getPassword());
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.store;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.fuse.credential.store.karaf.util.CredentialStoreHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.password.interfaces.ClearPassword;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jboss.fuse.credential.store.karaf.store.JournalCredentialStoreTest.protection;
+
+public class ShardedCredentialStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    String location;
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+
+        location = new File(tmp.getRoot(), "credential.store").getPath();
+    }
+
+    @Test
+    public void shouldCreateAllShards() throws Exception {
+        open().flush();
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(Files.exists(new File(location + "." + i).toPath())).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldOpenOnlyTheShardsNeeded() throws Exception {
+        final ShardedCredentialStore sharded = open();
+        for (int i = 0; i < 100; i++) {
+            sharded.store("alias" + i, CredentialStoreHelper.clearPasswordCredential("secret" + i), null);
+        }
+        sharded.flush();
+
+        final ShardedCredentialStore reopened = open();
+        assertThat(reopened.openedShards()).isEqualTo(0);
+
+        final PasswordCredential credential = reopened.retrieve("alias42", PasswordCredential.class, null, null,
+            null);
+        assertThat(credential.getPassword(ClearPassword.class).getPassword()).isEqualTo("secret42".toCharArray());
+        assertThat(reopened.openedShards()).isEqualTo(1);
+
+        assertThat(reopened.getAliases()).hasSize(100);
+        assertThat(reopened.openedShards()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldSpreadAliasesOverShards() {
+        final int[] perShard = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            perShard[ShardedCredentialStore.shardOf("alias" + i, 4)]++;
+        }
+
+        assertThat(perShard).doesNotContain(0);
+        assertThat(ShardedCredentialStore.shardOf("Alias", 4)).isEqualTo(ShardedCredentialStore.shardOf("alias", 4));
+    }
+
+    ShardedCredentialStore open() throws Exception {
+        final ShardedCredentialStore sharded = new ShardedCredentialStore();
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location);
+        attributes.put("shards", "4");
+        attributes.put("keyStoreType", "JCEKS");
+
+        sharded.initialize(attributes, protection("password"));
+
+        return sharded;
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.fuse.credential.store.karaf.audit.AuditEvent.Outcome;
+import org.jboss.fuse.credential.store.karaf.audit.AuditLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingCredentialResolverTest {
+
+    static final long NEGATIVE_TTL = 10;
+
+    static final long TTL = 100;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final AtomicLong clock = new AtomicLong();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    final AtomicBoolean failing = new AtomicBoolean();
+
+    Path location;
+
+    CachingCredentialResolver resolver;
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+    }
+
+    @Before
+    public void createResolver() {
+        location = new File(tmp.getRoot(), "credential.store").toPath();
+
+        final SharedCredentialStore sharedCredentialStore = new SharedCredentialStore(location, () -> {
+            if (failing.get()) {
+                throw new CredentialStoreException("unavailable");
+            }
+
+            return credentialStore();
+        });
+
+        resolver = new CachingCredentialResolver(new CredentialStoreRegistry(sharedCredentialStore), 10, TTL,
+                NEGATIVE_TTL, clock::get);
+    }
+
+    @Test
+    public void shouldBoundTheNumberOfCachedValues() throws Exception {
+        store("alias", "secret");
+
+        for (int i = 0; i < 100; i++) {
+            resolver.resolve("missing" + i);
+            assertThat(resolver.resolve("alias")).isEqualTo("secret");
+        }
+
+        assertThat(resolver.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    public void shouldCacheMissingAliasesForNegativeTimeToLive() throws Exception {
+        assertThat(resolver.resolve("alias")).isNull();
+
+        store("alias", "secret");
+        forceReload(1000);
+
+        clock.addAndGet(NEGATIVE_TTL - 1);
+        assertThat(resolver.resolve("alias")).isNull();
+
+        clock.addAndGet(1);
+        assertThat(resolver.resolve("alias")).isEqualTo("secret");
+    }
+
+    @Test
+    public void shouldCacheValuesForTimeToLive() throws Exception {
+        store("alias", "secret");
+
+        assertThat(resolver.resolve("CS:alias")).isEqualTo("secret");
+
+        store("alias", "changed");
+        forceReload(1000);
+
+        clock.addAndGet(TTL - 1);
+        assertThat(resolver.resolve("CS:alias")).isEqualTo("secret");
+
+        clock.addAndGet(1);
+        assertThat(resolver.resolve("CS:alias")).isEqualTo("changed");
+    }
+
+    @Test
+    public void shouldLoadConcurrentlyResolvedAliasOnce() throws Exception {
+        store("single.flight", "secret");
+
+        final long retrievalsBefore = retrievalsOf("single.flight");
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit((Callable<String>) () -> {
+                    start.await();
+
+                    return resolver.resolve("single.flight");
+                }));
+            }
+
+            start.countDown();
+
+            for (final Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("secret");
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(retrievalsOf("single.flight") - retrievalsBefore).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCacheCredentialStoreFailures() throws Exception {
+        store("alias", "secret");
+        failing.set(true);
+
+        assertThatThrownBy(() -> resolver.resolve("alias")).isInstanceOf(CredentialStoreException.class)
+                .hasMessage("unavailable");
+        assertThat(resolver.size()).isZero();
+
+        failing.set(false);
+
+        assertThat(resolver.resolve("alias")).isEqualTo("secret");
+    }
+
+    @Test
+    public void shouldResolveAgainAfterInvalidation() throws Exception {
+        store("alias", "secret");
+        assertThat(resolver.resolve("alias")).isEqualTo("secret");
+
+        store("alias", "changed");
+        forceReload(1000);
+        resolver.invalidate();
+
+        assertThat(resolver.resolve("alias")).isEqualTo("changed");
+    }
+
+    CredentialStore credentialStore() throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("keyStoreType", "JCEKS");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential("password"))));
+
+        return credentialStore;
+    }
+
+    void forceReload(final long millis) throws Exception {
+        Files.setLastModifiedTime(location, FileTime.fromMillis(millis));
+    }
+
+    static long retrievalsOf(final String alias) {
+        return AuditLog.audit().getEvents().stream()
+                .filter(e -> alias.equals(e.getAlias()) && (e.getOutcome() == Outcome.retrieved)).count();
+    }
+
+    void store(final String alias, final String secret) throws Exception {
+        final CredentialStore credentialStore = credentialStore();
+        credentialStore.store(alias, CredentialStoreHelper.clearPasswordCredential(secret));
+        credentialStore.flush();
+    }
+}
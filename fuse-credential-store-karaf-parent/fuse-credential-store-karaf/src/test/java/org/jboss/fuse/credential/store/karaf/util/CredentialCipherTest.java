@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CredentialCipherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+    }
+
+    @Test
+    public void shouldDecryptConcurrently() throws Exception {
+        final CredentialCipher cipher = new CredentialCipher(CredentialCipher.generateKey());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Future<?>[] decryptions = new Future<?>[8];
+            for (int i = 0; i < decryptions.length; i++) {
+                final String value = "secret" + i;
+                decryptions[i] = executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        assertThat(cipher.decrypt(cipher.encrypt(value))).isEqualTo(value);
+                    }
+
+                    return null;
+                });
+            }
+
+            for (final Future<?> decryption : decryptions) {
+                decryption.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDetectInlineEncryptedValues() {
+        assertThat(CredentialCipher.isEncrypted("ENC:AAAA")).isTrue();
+        assertThat(CredentialCipher.isEncrypted("ENC:")).isFalse();
+        assertThat(CredentialCipher.isEncrypted("CS:alias")).isFalse();
+        assertThat(CredentialCipher.isEncrypted(null)).isFalse();
+    }
+
+    @Test
+    public void shouldEncryptWithRandomInitializationVector() throws Exception {
+        final CredentialCipher cipher = new CredentialCipher(CredentialCipher.generateKey());
+
+        final String encrypted = cipher.encrypt("secret");
+
+        assertThat(encrypted).startsWith("ENC:").isNotEqualTo(cipher.encrypt("secret"));
+        assertThat(cipher.decrypt(encrypted)).isEqualTo("secret");
+    }
+
+    @Test
+    public void shouldLoadKeyFromCredentialStore() throws Exception {
+        final SecretKey key = CredentialCipher.generateKey();
+
+        final CredentialStore credentialStore = credentialStore();
+        CredentialCipher.store(credentialStore, "cipher.key", key);
+
+        final String encrypted = new CredentialCipher(key).encrypt("secret");
+
+        assertThat(CredentialCipher.load(credentialStore, "cipher.key").decrypt(encrypted)).isEqualTo("secret");
+        assertThatThrownBy(() -> CredentialCipher.load(credentialStore, "missing"))
+                .isInstanceOf(CredentialStoreException.class);
+    }
+
+    @Test
+    public void shouldLoadKeyStoredAsPassword() throws Exception {
+        final CredentialStore credentialStore = credentialStore();
+        credentialStore.store("cipher.key",
+            CredentialStoreHelper.clearPasswordCredential("AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8="));
+
+        final CredentialCipher cipher = CredentialCipher.load(credentialStore, "cipher.key");
+
+        assertThat(cipher.decrypt(cipher.encrypt("secret"))).isEqualTo("secret");
+    }
+
+    @Test
+    public void shouldRejectTamperedValues() throws Exception {
+        final CredentialCipher cipher = new CredentialCipher(CredentialCipher.generateKey());
+
+        final String encrypted = cipher.encrypt("secret");
+        final String tampered = encrypted.substring(0, encrypted.length() - 2)
+            + (encrypted.charAt(encrypted.length() - 2) == 'A' ? "B=" : "A=");
+
+        assertThatThrownBy(() -> cipher.decrypt(tampered)).isInstanceOf(GeneralSecurityException.class);
+        assertThatThrownBy(() -> new CredentialCipher(CredentialCipher.generateKey()).decrypt(encrypted))
+                .isInstanceOf(GeneralSecurityException.class);
+    }
+
+    CredentialStore credentialStore() throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", new File(tmp.getRoot(), "credential.store").toString());
+        attributes.put("keyStoreType", "JCEKS");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential("password"))));
+
+        return credentialStore;
+    }
+}
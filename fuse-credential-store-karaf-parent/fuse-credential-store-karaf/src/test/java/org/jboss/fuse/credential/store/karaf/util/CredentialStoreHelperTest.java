@@ -15,12 +15,92 @@
  */
 package org.jboss.fuse.credential.store.karaf.util;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
+@RunWith(Enclosed.class)
 public class CredentialStoreHelperTest {
 
-    @Test
-    public void shouldCreateProtectionParameter() {
+    public static class EnvironmentTests {
+
+        @Test
+        public void shouldDetermineIfCredentialStoreIsConfigured() {
+            assertThat(CredentialStoreHelper.isCredentialStoreConfigured(Collections.emptyMap())).isFalse();
+            assertThat(CredentialStoreHelper.isCredentialStoreConfigured(
+                Collections.singletonMap("CREDENTIAL_STORE_RESOLUTION", "lazy"))).isFalse();
+            assertThat(CredentialStoreHelper.isCredentialStoreConfigured(
+                Collections.singletonMap("CREDENTIAL_STORE_PROTECTION", "Sf6sYy7gNpygs311zcQh8Q=="))).isTrue();
+            assertThat(CredentialStoreHelper.isCredentialStoreConfigured(
+                Collections.singletonMap("CREDENTIAL_STORE_team_ATTR_location", "team.store"))).isTrue();
+        }
+
+        @Test
+        public void shouldParseKeystoreNames() {
+            assertThat(CredentialStoreHelper.keystoresFromEnvironment(Collections.emptyMap())).isEmpty();
+            assertThat(CredentialStoreHelper.keystoresFromEnvironment(
+                Collections.singletonMap("CREDENTIAL_STORE_KEYSTORES", "server, team/client,,server")))
+                        .containsExactly("server", "team/client");
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class ReferenceScannerTests {
+
+        private static final Pattern STORE_REFERENCE_REGEX = Pattern.compile("CS:(.+)");
+
+        @Parameter
+        public String value;
+
+        @Parameters(name = "{0}")
+        public static Iterable<? extends Object> values() {
+            return Arrays.asList("", "C", "CS", "CS:", "CS:a", "CS:alias", "CS: ", "CS:a:b", "CS:CS:a", "cs:alias",
+                "CR:alias", " CS:alias", "xCS:alias", "CS:al\nias", "CS:alias\r", "CS:\u2028", "CS:a\u0085",
+                "CS:javax.net.ssl.keyStorePassword", "value", "CS:\u00e9\u00e8");
+        }
+
+        @Test
+        public void shouldAgreeWithRegularExpressionOnReferenceExtraction() {
+            final Matcher matcher = STORE_REFERENCE_REGEX.matcher(value);
+            final boolean matches = matcher.matches();
+
+            assertThat(CredentialStoreHelper.couldBeCredentialStoreAlias(value)).isEqualTo(matches);
+            assertThat(CredentialStoreHelper.containsStoreReferences(Collections.singleton(value)))
+                    .isEqualTo(matches);
+
+            if (matches) {
+                assertThat(CredentialStoreHelper.toCredentialStoreAlias(value)).isEqualTo(matcher.group(1));
+            }
+        }
+    }
+
+    public static class ReferenceTests {
+
+        @Test
+        public void shouldNotConsiderNullValuesAsReferences() {
+            assertThat(CredentialStoreHelper.couldBeCredentialStoreAlias(null)).isFalse();
+        }
+
+        @Test
+        public void shouldRoundTripAliasesThroughReferences() {
+            assertThat(CredentialStoreHelper
+                    .toCredentialStoreAlias(CredentialStoreHelper.referenceForAlias("javax.net.ssl.keyStorePassword")))
+                            .isEqualTo("javax.net.ssl.keyStorePassword");
+        }
 
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldNotExtractAliasesFromNonReferences() {
+            CredentialStoreHelper.toCredentialStoreAlias("value");
+        }
     }
 }
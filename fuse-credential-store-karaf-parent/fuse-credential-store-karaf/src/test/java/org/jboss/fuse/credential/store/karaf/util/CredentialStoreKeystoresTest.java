@@ -0,0 +1,168 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStore.PasswordProtection;
+import java.security.KeyStore.SecretKeyEntry;
+import java.security.Security;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jboss.fuse.credential.store.karaf.api.CredentialStoreKeystore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.CredentialStoreException;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CredentialStoreKeystoresTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    CredentialStoreKeystores keystores;
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    Path location;
+
+    SharedCredentialStore sharedCredentialStore;
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+    }
+
+    @Before
+    public void createKeystores() throws Exception {
+        location = new File(tmp.getRoot(), "credential.store").toPath();
+
+        sharedCredentialStore = new SharedCredentialStore(location, () -> {
+            loads.incrementAndGet();
+
+            return credentialStore();
+        });
+
+        keystores = new CredentialStoreKeystores(new CredentialStoreRegistry(sharedCredentialStore),
+            Collections.singletonList("server"));
+    }
+
+    @Test
+    public void shouldFailOnMissingKeystore() {
+        assertThatThrownBy(keystores::refresh).isInstanceOf(CredentialStoreException.class)
+                .hasMessageContaining("server.keystore");
+    }
+
+    @Test
+    public void shouldLoadKeystoreFromCredentialStore() throws Exception {
+        storeKeystore("server", "keystore password", "key");
+
+        final Map<String, CredentialStoreKeystore> loaded = keystores.refresh();
+
+        assertThat(loaded).containsOnlyKeys("server");
+
+        final CredentialStoreKeystore keystore = keystores.keystore("server");
+        assertThat(keystore.getKeystore().containsAlias("key")).isTrue();
+        assertThat(keystore.getSSLContext().getProtocol()).isEqualTo("TLS");
+        assertThat(keystore.getKeyManagerFactory().getKeyManagers()).isNotEmpty();
+        assertThat(keystore.getTrustManagerFactory().getTrustManagers()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldReloadKeystoreOnlyWhenChanged() throws Exception {
+        storeKeystore("server", "keystore password", "key");
+        keystores.refresh();
+        final CredentialStoreKeystore loaded = keystores.keystore("server");
+
+        // Credential store not reloaded
+        assertThat(keystores.refresh()).isEmpty();
+
+        // Credential store reloaded, but the key store secrets are the same
+        final CredentialStore another = credentialStore();
+        another.store("unrelated", CredentialStoreHelper.clearPasswordCredential("secret"));
+        another.flush();
+        Files.setLastModifiedTime(location, FileTime.fromMillis(0));
+
+        assertThat(keystores.refresh()).isEmpty();
+        assertThat(keystores.keystore("server")).isSameAs(loaded);
+
+        // key store changed
+        storeKeystore("server", "new keystore password", "new key");
+        Files.setLastModifiedTime(location, FileTime.fromMillis(1000));
+
+        assertThat(keystores.refresh()).containsOnlyKeys("server");
+        assertThat(keystores.keystore("server")).isNotSameAs(loaded);
+        assertThat(keystores.keystore("server").getKeystore().containsAlias("new key")).isTrue();
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    CredentialStore credentialStore() throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("keyStoreType", "JCEKS");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(CredentialStoreHelper.clearPasswordCredential("password"))));
+
+        return credentialStore;
+    }
+
+    void storeKeystore(final String name, final String password, final String keyAlias) throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setEntry(keyAlias, new SecretKeyEntry(new SecretKeySpec(new byte[16], "AES")),
+            new PasswordProtection(password.toCharArray()));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        keyStore.store(bytes, password.toCharArray());
+
+        final CredentialStore credentialStore = credentialStore();
+        credentialStore.store(name + ".keystore",
+            CredentialStoreHelper.clearPasswordCredential(Base64.getEncoder().encodeToString(bytes.toByteArray())));
+        credentialStore.store(name + ".password", CredentialStoreHelper.clearPasswordCredential(password));
+        credentialStore.flush();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class CredentialStoreRegistryTest {
+
+    final AtomicInteger defaultLoads = new AtomicInteger();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    final AtomicInteger teamLoads = new AtomicInteger();
+
+    CredentialStore defaultStore;
+
+    CredentialStoreRegistry registry;
+
+    CredentialStore teamStore;
+
+    static void awaitBothOpening(final CountDownLatch bothOpening) throws InterruptedIOException {
+        bothOpening.countDown();
+
+        try {
+            assertThat(bothOpening.await(10, TimeUnit.SECONDS)).as("Opening the other store concurrently").isTrue();
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Before
+    public void createRegistry() throws Exception {
+        defaultStore = CredentialStore.getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+        teamStore = CredentialStore.getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        registry = new CredentialStoreRegistry(new SharedCredentialStore(null, () -> {
+            defaultLoads.incrementAndGet();
+
+            return defaultStore;
+        }), Collections.singletonMap("team", new SharedCredentialStore(null, () -> {
+            teamLoads.incrementAndGet();
+
+            return teamStore;
+        })));
+    }
+
+    @Test
+    public void shouldFindNamedStoresInEnvironment() {
+        final Map<String, String> environment = new HashMap<>();
+        environment.put("CREDENTIAL_STORE_ATTR_location", "default.store");
+        environment.put("CREDENTIAL_STORE_ATTR_with_ATTR_infix", "value");
+        environment.put("CREDENTIAL_STORE_TEAM_A_ATTR_location", "team-a.store");
+        environment.put("CREDENTIAL_STORE_TEAM_A_PROTECTION", "secret");
+        environment.put("CREDENTIAL_STORE_OPS_ATTR_location", "ops.store");
+        environment.put("PATH", "/bin");
+
+        assertThat(CredentialStoreRegistry.storeNamesIn(environment)).containsExactly("OPS", "TEAM_A");
+    }
+
+    @Test
+    public void shouldMapEnvironmentOfNamedStore() {
+        final Map<String, String> environment = new HashMap<>();
+        environment.put("CREDENTIAL_STORE_ATTR_location", "default.store");
+        environment.put("CREDENTIAL_STORE_TEAM_ATTR_location", "team.store");
+        environment.put("CREDENTIAL_STORE_TEAM_PROTECTION", "secret");
+
+        assertThat(CredentialStoreRegistry.environmentOf("TEAM", environment)).containsOnly(
+            entry("CREDENTIAL_STORE_ATTR_location", "team.store"), entry("CREDENTIAL_STORE_PROTECTION", "secret"));
+    }
+
+    @Test
+    public void shouldOpenOnlyReferencedStores() throws Exception {
+        assertThat(registry.open(Collections.singleton("team/alias")))
+            .containsOnly(entry("team", teamStore));
+
+        assertThat(teamLoads.get()).isEqualTo(1);
+        assertThat(defaultLoads.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldOpenReferencedStoresConcurrently() throws Exception {
+        final CountDownLatch bothOpening = new CountDownLatch(2);
+
+        final CredentialStoreRegistry concurrent = new CredentialStoreRegistry(new SharedCredentialStore(null, () -> {
+            awaitBothOpening(bothOpening);
+
+            return defaultStore;
+        }), Collections.singletonMap("team", new SharedCredentialStore(null, () -> {
+            awaitBothOpening(bothOpening);
+
+            return teamStore;
+        })));
+
+        assertThat(concurrent.open(Arrays.asList("alias", "team/alias"))).containsOnly(
+            entry(CredentialStoreRegistry.DEFAULT_STORE_NAME, defaultStore), entry("team", teamStore));
+    }
+
+    @Test
+    public void shouldRouteReferencesToStores() {
+        assertThat(registry.storeNameOf("team/alias")).isEqualTo("team");
+        assertThat(registry.aliasOf("team/alias")).isEqualTo("alias");
+
+        assertThat(registry.storeNameOf("alias")).isEqualTo(CredentialStoreRegistry.DEFAULT_STORE_NAME);
+        assertThat(registry.aliasOf("alias")).isEqualTo("alias");
+
+        // not a configured store, the whole reference is the alias in the default store
+        assertThat(registry.storeNameOf("other/alias")).isEqualTo(CredentialStoreRegistry.DEFAULT_STORE_NAME);
+        assertThat(registry.aliasOf("other/alias")).isEqualTo("other/alias");
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.security.Provider;
+import java.security.Security;
+
+import org.jboss.fuse.credential.store.karaf.store.MappedCredentialStore;
+import org.junit.After;
+import org.junit.Test;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProviderCatalogTest {
+
+    private static final class TestProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+
+        // the non deprecated Provider(String, String, String) constructor is not available on Java 8
+        @SuppressWarnings("deprecation")
+        private TestProvider() {
+            super("ProviderCatalogTest", 1.0, "Provider used in tests");
+
+            putService(new Service(this, "TestService", "test-algorithm", Object.class.getName(), null, null));
+        }
+    }
+
+    @After
+    public void removeTestProvider() {
+        Security.removeProvider("ProviderCatalogTest");
+    }
+
+    @Test
+    public void shouldIncludeAlgorithmsOfBundledProviders() {
+        assertThat(ProviderCatalog.algorithms(CredentialStore.CREDENTIAL_STORE_TYPE)).contains(
+            KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, MappedCredentialStore.MAPPED_CREDENTIAL_STORE);
+    }
+
+    @Test
+    public void shouldListInstalledProviders() {
+        final String[] expected = new String[Security.getProviders().length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = Security.getProviders()[i].getName();
+        }
+
+        assertThat(ProviderCatalog.providerNames()).containsExactly(expected);
+    }
+
+    @Test
+    public void shouldReflectAddedAndRemovedProviders() {
+        assertThat(ProviderCatalog.algorithms("TestService")).isEmpty();
+        assertThat(ProviderCatalog.providerNames()).doesNotContain("ProviderCatalogTest");
+
+        Security.addProvider(new TestProvider());
+
+        assertThat(ProviderCatalog.algorithms("TestService")).containsExactly("test-algorithm");
+        assertThat(ProviderCatalog.providerNames()).contains("ProviderCatalogTest");
+
+        Security.removeProvider("ProviderCatalogTest");
+
+        assertThat(ProviderCatalog.algorithms("TestService")).isEmpty();
+        assertThat(ProviderCatalog.providerNames()).doesNotContain("ProviderCatalogTest");
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ *  Copyright 2016-2017 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.jboss.fuse.credential.store.karaf.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.fuse.credential.store.karaf.store.FuseCredentialStoreProvider;
+import org.jboss.fuse.credential.store.karaf.store.ShardedCredentialStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.security.WildFlyElytronProvider;
+import org.wildfly.security.auth.server.IdentityCredentials;
+import org.wildfly.security.credential.PasswordCredential;
+import org.wildfly.security.credential.store.CredentialStore;
+import org.wildfly.security.credential.store.impl.KeyStoreCredentialStore;
+import org.wildfly.security.password.PasswordFactory;
+import org.wildfly.security.password.interfaces.ClearPassword;
+import org.wildfly.security.password.spec.ClearPasswordSpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SharedCredentialStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    final WildFlyElytronProvider elytron = new WildFlyElytronProvider();
+
+    Path location;
+
+    SharedCredentialStore sharedCredentialStore;
+
+    @After
+    public void deregisterElytronProvider() {
+        Security.removeProvider(elytron.getName());
+    }
+
+    @Before
+    public void registerElytronProvider() {
+        Security.addProvider(elytron);
+    }
+
+    @Before
+    public void createSharedCredentialStore() throws Exception {
+        location = new File(tmp.getRoot(), "credential.store").toPath();
+
+        sharedCredentialStore = new SharedCredentialStore(location, () -> {
+            loads.incrementAndGet();
+
+            return credentialStore();
+        });
+    }
+
+    @Test
+    public void shouldLoadCredentialStoreOnlyOnce() throws Exception {
+        final CredentialStore credentialStore = sharedCredentialStore.credentialStore();
+
+        assertThat(sharedCredentialStore.credentialStore()).isSameAs(credentialStore);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotReloadAfterFlushingOwnChanges() throws Exception {
+        final CredentialStore credentialStore = sharedCredentialStore.credentialStore();
+        credentialStore.store("alias", passwordCredential("secret"));
+        sharedCredentialStore.flush();
+
+        assertThat(sharedCredentialStore.credentialStore()).isSameAs(credentialStore);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDiscardChangesFailedToBeWritten() throws Exception {
+        final Path notDirectory = tmp.newFile().toPath();
+        final SharedCredentialStore failing = new SharedCredentialStore(location,
+            () -> credentialStore(notDirectory.resolve("credential.store")));
+
+        assertThatThrownBy(() -> failing
+            .update(credentialStore -> credentialStore.store("alias", passwordCredential("secret"))))
+                .isInstanceOf(GeneralSecurityException.class);
+
+        assertThat(failing.credentialStore().getAliases()).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepChangesOfConcurrentWriters() throws Exception {
+        final SharedCredentialStore another = new SharedCredentialStore(location, this::credentialStore);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> updates = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final String alias = "alias" + i;
+                final SharedCredentialStore writer = (i % 2) == 0 ? sharedCredentialStore : another;
+
+                updates.add(executor.submit(() -> writer
+                    .update(credentialStore -> credentialStore.store(alias, passwordCredential(alias)))));
+            }
+
+            for (final Future<?> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(credentialStore().getAliases()).hasSize(20);
+    }
+
+    @Test
+    public void shouldMergeChangesOfAnotherWriter() throws Exception {
+        final SharedCredentialStore another = new SharedCredentialStore(location, this::credentialStore);
+
+        sharedCredentialStore.update(credentialStore -> credentialStore.store("first", passwordCredential("first")));
+        // loaded before the other writer stored its alias
+        another.credentialStore();
+        sharedCredentialStore.update(credentialStore -> credentialStore.store("second", passwordCredential("second")));
+        // make sure the modification is noticed regardless of the file system timestamp granularity
+        Files.setLastModifiedTime(location, FileTime.fromMillis(0));
+
+        final SharedCredentialStore.UpdateTimes times = another
+            .update(credentialStore -> credentialStore.store("third", passwordCredential("third")));
+
+        assertThat(times.lockWaitTime()).isGreaterThanOrEqualTo(0);
+        assertThat(credentialStore().getAliases()).containsOnly("first", "second", "third");
+        assertThat(CredentialStoreLock.lockFileOf(location)).exists();
+    }
+
+    @Test
+    public void shouldReloadWhenCredentialStoreFileChanges() throws Exception {
+        sharedCredentialStore.credentialStore().store("alias", passwordCredential("secret"));
+        sharedCredentialStore.flush();
+
+        final CredentialStore another = credentialStore();
+        another.store("another", passwordCredential("another secret"));
+        another.flush();
+        // make sure the modification is noticed regardless of the file system timestamp granularity
+        Files.setLastModifiedTime(location, FileTime.fromMillis(0));
+
+        assertThat(sharedCredentialStore.credentialStore().getAliases()).containsOnly("alias", "another");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldMergeChangesOfAnotherWriterToShardedCredentialStore() throws Exception {
+        final SharedCredentialStore shared = new SharedCredentialStore(location,
+            ShardedCredentialStore.shardLocationsOf(shardedAttributes()), this::shardedCredentialStore);
+
+        shared.update(credentialStore -> credentialStore.store("first", passwordCredential("first")));
+
+        final CredentialStore another = shardedCredentialStore();
+        another.store("second", passwordCredential("second"));
+        another.flush();
+        touchShards();
+
+        shared.update(credentialStore -> credentialStore.store("third", passwordCredential("third")));
+
+        assertThat(shardedCredentialStore().getAliases()).containsOnly("first", "second", "third");
+    }
+
+    @Test
+    public void shouldReloadWhenShardOfShardedCredentialStoreChanges() throws Exception {
+        final List<Path> shards = ShardedCredentialStore.shardLocationsOf(shardedAttributes());
+        final SharedCredentialStore shared = new SharedCredentialStore(location, shards, () -> {
+            loads.incrementAndGet();
+
+            return shardedCredentialStore();
+        });
+
+        shared.update(credentialStore -> credentialStore.store("alias", passwordCredential("secret")));
+        assertThat(shards).allMatch(Files::exists);
+        assertThat(location).doesNotExist();
+
+        final CredentialStore another = shardedCredentialStore();
+        another.store("another", passwordCredential("another secret"));
+        another.flush();
+        touchShards();
+
+        assertThat(shared.credentialStore().getAliases()).containsOnly("alias", "another");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    CredentialStore credentialStore() throws GeneralSecurityException {
+        return credentialStore(location);
+    }
+
+    CredentialStore credentialStore(final Path location) throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(KeyStoreCredentialStore.KEY_STORE_CREDENTIAL_STORE, elytron);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("keyStoreType", "JCEKS");
+
+        credentialStore.initialize(attributes, new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(passwordCredential("store password"))));
+
+        return credentialStore;
+    }
+
+    Map<String, String> shardedAttributes() {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("location", location.toString());
+        attributes.put("shards", "4");
+        attributes.put("keyStoreType", "JCEKS");
+
+        return attributes;
+    }
+
+    CredentialStore shardedCredentialStore() throws GeneralSecurityException {
+        final CredentialStore credentialStore = CredentialStore
+                .getInstance(ShardedCredentialStore.SHARDED_CREDENTIAL_STORE, new FuseCredentialStoreProvider());
+
+        credentialStore.initialize(shardedAttributes(), new CredentialStore.CredentialSourceProtectionParameter(
+                IdentityCredentials.NONE.withCredential(passwordCredential("store password"))));
+
+        return credentialStore;
+    }
+
+    void touchShards() throws IOException {
+        // make sure the modification is noticed regardless of the file system timestamp granularity
+        for (final Path shard : ShardedCredentialStore.shardLocationsOf(shardedAttributes())) {
+            Files.setLastModifiedTime(shard, FileTime.fromMillis(0));
+        }
+    }
+
+    PasswordCredential passwordCredential(final String value) throws GeneralSecurityException {
+        final PasswordFactory passwordFactory = PasswordFactory.getInstance(ClearPassword.ALGORITHM_CLEAR, elytron);
+
+        return new PasswordCredential(passwordFactory.generatePassword(new ClearPasswordSpec(value.toCharArray())));
+    }
+}